@@ -0,0 +1,234 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// A byte buffer indexed using 64 bit offsets, stored outside the Java heap
+// as a sequence of direct (or memory-mapped) buffers, because a single buffer
+// can't be larger than 2GB. An aligned value never spans two chunks,
+// unaligned values near the end of a chunk must be read one byte at a time.
+final class ChunkedBuffer implements Closeable {
+    // The size of a chunk, expressed as a shift amount.
+    // All chunks, except the last one, have the same size.
+    static final int CHUNK_SHIFT = 30;
+    static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    // Used to release the native memory of a direct buffer when it's closed,
+    // instead of waiting for the Garbage Collector to find it unreachable.
+    // Not available on all platforms, the buffer is then released by the GC.
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+
+    static {
+        Object foundUnsafe = null;
+        Method foundMethod = null;
+
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            foundUnsafe = field.get(null);
+            foundMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch(Exception e) {
+            foundUnsafe = null;
+            foundMethod = null;
+        }
+
+        unsafe = foundUnsafe;
+        invokeCleaner = foundMethod;
+    }
+
+    private ByteBuffer[] chunks;
+    private long capacity;
+
+    // Most buffers have a single chunk, it is accessed
+    // directly, without selecting the chunk first.
+    private ByteBuffer firstChunk;
+    private long firstChunkSize;
+
+    ChunkedBuffer(long capacity) {
+        // Direct buffers are allocated filled with zeros.
+        this.capacity = capacity;
+        chunks = new ByteBuffer[getChunkCount(capacity)];
+
+        for(int i = 0; i < chunks.length; i++) {
+            long chunkCapacity = Math.min(CHUNK_SIZE, capacity - ((long)i << CHUNK_SHIFT));
+            chunks[i] = ByteBuffer.allocateDirect((int)chunkCapacity);
+            chunks[i].order(ByteOrder.nativeOrder());
+        }
+
+        initializeFirstChunk();
+    }
+
+    ChunkedBuffer(ByteBuffer[] chunks, long capacity) {
+        // Uses existing buffers, for example memory-mapped regions of a file.
+        // Each buffer, except the last one, must have CHUNK_SIZE bytes.
+        this.chunks = chunks;
+        this.capacity = capacity;
+        initializeFirstChunk();
+    }
+
+    private void initializeFirstChunk() {
+        firstChunk = chunks.length > 0 ? chunks[0] : null;
+        firstChunkSize = chunks.length > 0 ? chunks[0].capacity() : 0;
+    }
+
+    static ChunkedBuffer map(FileChannel channel, FileChannel.MapMode mode,
+                             long capacity, ByteOrder order) throws IOException {
+        // Maps the first capacity bytes of the file, one chunk at a time.
+        // The pages are loaded by the operating system when accessed
+        // and are shared by all processes that map the same file.
+        ByteBuffer[] chunks = new ByteBuffer[getChunkCount(capacity)];
+
+        for(int i = 0; i < chunks.length; i++) {
+            long chunkOffset = (long)i << CHUNK_SHIFT;
+            long chunkCapacity = Math.min(CHUNK_SIZE, capacity - chunkOffset);
+            chunks[i] = channel.map(mode, chunkOffset, chunkCapacity);
+            chunks[i].order(order);
+        }
+
+        return new ChunkedBuffer(chunks, capacity);
+    }
+
+    static int getChunkCount(long capacity) {
+        return (int)((capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    byte getByte(long offset) {
+        if(offset < firstChunkSize) {
+            return firstChunk.get((int)offset);
+        }
+        else return chunks[(int)(offset >>> CHUNK_SHIFT)].get((int)(offset & CHUNK_MASK));
+    }
+
+    void putByte(long offset, byte value) {
+        if(offset < firstChunkSize) {
+            firstChunk.put((int)offset, value);
+        }
+        else chunks[(int)(offset >>> CHUNK_SHIFT)].put((int)(offset & CHUNK_MASK), value);
+    }
+
+    int getInt(long offset) {
+        if(offset < firstChunkSize) {
+            return firstChunk.getInt((int)offset);
+        }
+        else return chunks[(int)(offset >>> CHUNK_SHIFT)].getInt((int)(offset & CHUNK_MASK));
+    }
+
+    void putInt(long offset, int value) {
+        if(offset < firstChunkSize) {
+            firstChunk.putInt((int)offset, value);
+        }
+        else chunks[(int)(offset >>> CHUNK_SHIFT)].putInt((int)(offset & CHUNK_MASK), value);
+    }
+
+    long getLong(long offset) {
+        if(offset < firstChunkSize) {
+            return firstChunk.getLong((int)offset);
+        }
+        else return chunks[(int)(offset >>> CHUNK_SHIFT)].getLong((int)(offset & CHUNK_MASK));
+    }
+
+    void putLong(long offset, long value) {
+        if(offset < firstChunkSize) {
+            firstChunk.putLong((int)offset, value);
+        }
+        else chunks[(int)(offset >>> CHUNK_SHIFT)].putLong((int)(offset & CHUNK_MASK), value);
+    }
+
+    void fillInt(long offset, long count, int value) {
+        for(long i = 0; i < count; i++) {
+            putInt(offset + (i << 2), value);
+        }
+    }
+
+    void copyTo(ChunkedBuffer target, long length) {
+        // Copies the first length bytes into the target buffer,
+        // one chunk at a time (the chunks of both buffers have the same size).
+        for(int i = 0; length > 0; i++) {
+            int chunkLength = (int)Math.min(CHUNK_SIZE, length);
+            ByteBuffer source = chunks[i].duplicate();
+            source.position(0);
+            source.limit(chunkLength);
+
+            ByteBuffer destination = target.chunks[i].duplicate();
+            destination.position(0);
+            destination.put(source);
+            length -= chunkLength;
+        }
+    }
+
+    void force() {
+        // Writes the modified pages of a memory-mapped buffer to the file.
+        for(ByteBuffer chunk : chunks) {
+            if(chunk instanceof MappedByteBuffer) {
+                ((MappedByteBuffer)chunk).force();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if(chunks == null) {
+            return;
+        }
+
+        if(invokeCleaner != null) {
+            for(ByteBuffer chunk : chunks) {
+                try {
+                    invokeCleaner.invoke(unsafe, chunk);
+                }
+                catch(Exception e) {
+                    // The buffer will be released by the Garbage Collector.
+                }
+            }
+        }
+
+        chunks = null;
+        firstChunk = null;
+        firstChunkSize = 0;
+        capacity = 0;
+    }
+}
@@ -0,0 +1,600 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import compactcollections.functions.IntIntConsumer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ConcurrentIntHashMap extends AbstractMap<Integer, Integer> {
+    public static class MapEntry implements Map.Entry<Integer, Integer> {
+        private int key;
+        private int value;
+
+        public MapEntry(int key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Integer getKey() {
+            return key;
+        }
+
+        public Integer getValue() {
+            return value;
+        }
+
+        public Integer setValue(Integer newValue) {
+            Integer oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof MapEntry)) {
+                return false;
+            }
+
+            MapEntry other = (MapEntry)object;
+            return key ==  other.getKey() &&
+                   value == other.getValue();
+        }
+
+        public int hashCode() {
+            return key ^ value;
+        }
+    }
+
+    // The number of segments. Each segment is a separate hash table
+    // having its own lock, so writers that modify different segments
+    // don't block each other. Readers never take the lock.
+    private static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    // The maximum number of segments. The segment is selected
+    // using the upper bits of the hash code, the slot using the lower ones.
+    private static final int MAX_SEGMENT_COUNT = 1 << 16;
+
+    // The initial number of slots of a segment. Each slot stores
+    // a key and its value packed in a single long, which is written
+    // atomically, so a reader never sees a key without its value.
+    private static final int DEFAULT_SLOT_COUNT = 16;
+
+    // The maximum number of slots of a segment.
+    private static final int MAX_SLOT_COUNT = 1 << 30;
+
+    // The fraction of unused slots that triggers the growth of a segment,
+    // expressed as a shift amount: the segment grows when less than
+    // slotCount / 4 slots are free (load factor 0.75). Plain linear probing
+    // is used, because displacing entries would make lock-free reads unsafe.
+    private static final int FREE_SLOTS_SHIFT = 2;
+
+    // The key that marks an unused slot. An entry having
+    // this key is not stored in a segment, but in a separate field.
+    private static final int FREE_KEY = 0;
+
+    // Marks that the FREE_KEY entry is in the map, it is stored
+    // above the 32 bits of the associated value.
+    private static final long FREE_KEY_PRESENT = 1L << 32;
+
+    @SuppressWarnings("serial") // The segments are never serialized.
+    private static final class Segment extends ReentrantLock {
+        // The slots are replaced, never modified, when the segment grows.
+        // A reader that still uses the old slots sees the segment
+        // as it was before the entries that are being added.
+        volatile AtomicLongArray slots;
+        volatile int count; // Written only while the lock is held.
+        int maxCount;
+
+        Segment(int slotCount) {
+            allocateSlots(slotCount);
+        }
+
+        void allocateSlots(int slotCount) {
+            slots = new AtomicLongArray(slotCount);
+            maxCount = getMaxCount(slotCount);
+        }
+
+        long findEntry(int key, int hash) {
+            // Returns the entry having the key, or 0 if the key is not found
+            // (an entry is never 0, because FREE_KEY is not stored in the slots).
+            AtomicLongArray currentSlots = slots;
+            int slotMask = currentSlots.length() - 1;
+            int slot = hash & slotMask;
+
+            while(true) {
+                long entry = currentSlots.get(slot);
+                int entryKey = extractKey(entry);
+
+                if(entryKey == key) {
+                    return entry;
+                }
+                else if(entryKey == FREE_KEY) {
+                    return 0;
+                }
+
+                slot = (slot + 1) & slotMask;
+            }
+        }
+
+        int findSlot(int key, int hash) {
+            // Returns the slot having the key, or the free slot
+            // where the key should be added. The lock must be held.
+            AtomicLongArray currentSlots = slots;
+            int slotMask = currentSlots.length() - 1;
+            int slot = hash & slotMask;
+
+            while(true) {
+                int entryKey = extractKey(currentSlots.get(slot));
+
+                if((entryKey == key) || (entryKey == FREE_KEY)) {
+                    return slot;
+                }
+
+                slot = (slot + 1) & slotMask;
+            }
+        }
+
+        int findFreeSlot(int key, int hash) {
+            // The key is known to be missing, grow the segment if needed
+            // and return the free slot where the key should be added.
+            if(count >= maxCount) {
+                resizeSlots();
+            }
+
+            return findSlot(key, hash);
+        }
+
+        void resizeSlots() {
+            AtomicLongArray oldSlots = slots;
+            int slotCount = oldSlots.length();
+
+            if(slotCount >= MAX_SLOT_COUNT) {
+                throw new IllegalStateException("Map is full!");
+            }
+
+            // The entries are reinserted into a plain array, which is then
+            // published; readers continue to use the old slots until then.
+            long[] newSlots = new long[slotCount * 2];
+            int slotMask = newSlots.length - 1;
+
+            for(int i = 0; i < slotCount; i++) {
+                long entry = oldSlots.get(i);
+                int key = extractKey(entry);
+
+                if(key != FREE_KEY) {
+                    int slot = computeHash(key) & slotMask;
+
+                    while(newSlots[slot] != 0) {
+                        slot = (slot + 1) & slotMask;
+                    }
+
+                    newSlots[slot] = entry;
+                }
+            }
+
+            maxCount = getMaxCount(newSlots.length);
+            slots = new AtomicLongArray(newSlots);
+        }
+
+        int put(int key, int hash, int value, boolean onlyIfAbsent) {
+            lock();
+
+            try {
+                int slot = findSlot(key, hash);
+                long entry = slots.get(slot);
+
+                if(extractKey(entry) == key) {
+                    // The same key has been found.
+                    if(!onlyIfAbsent) {
+                        slots.set(slot, packEntry(key, value));
+                    }
+
+                    return extractValue(entry);
+                }
+
+                slot = findFreeSlot(key, hash);
+                slots.set(slot, packEntry(key, value));
+                count++;
+                return Integer.MIN_VALUE;
+            }
+            finally {
+                unlock();
+            }
+        }
+
+        int addTo(int key, int hash, int delta) {
+            lock();
+
+            try {
+                int slot = findSlot(key, hash);
+                long entry = slots.get(slot);
+
+                if(extractKey(entry) == key) {
+                    int newValue = extractValue(entry) + delta;
+                    slots.set(slot, packEntry(key, newValue));
+                    return newValue;
+                }
+
+                slot = findFreeSlot(key, hash);
+                slots.set(slot, packEntry(key, delta));
+                count++;
+                return delta;
+            }
+            finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+
+            try {
+                allocateSlots(DEFAULT_SLOT_COUNT);
+                count = 0;
+            }
+            finally {
+                unlock();
+            }
+        }
+    }
+
+    private Segment[] segments;
+    private int segmentShift;         // Moves the upper bits of the hash code used to select the segment.
+    private int segmentMask;          // The number of segments - 1 (always a power of two).
+    private AtomicLong freeKeyEntry;  // The value of the FREE_KEY key and FREE_KEY_PRESENT, or 0.
+
+    public ConcurrentIntHashMap() {
+        this(0, DEFAULT_SEGMENT_COUNT);
+    }
+
+    public ConcurrentIntHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_SEGMENT_COUNT);
+    }
+
+    public ConcurrentIntHashMap(int expectedSize, int concurrencyLevel) {
+        if((expectedSize < 0) || (concurrencyLevel <= 0)) {
+            throw new IllegalArgumentException("Invalid size or concurrency level!");
+        }
+
+        // Use a number of segments that is a power of two
+        // at least equal to the number of concurrent writers.
+        int segmentCount = 1;
+        int segmentBits = 0;
+
+        while((segmentCount < concurrencyLevel) && (segmentCount < MAX_SEGMENT_COUNT)) {
+            segmentCount *= 2;
+            segmentBits++;
+        }
+
+        segmentShift = 32 - segmentBits;
+        segmentMask = segmentCount - 1;
+        segments = new Segment[segmentCount];
+        int slotCount = getSlotCountFor(expectedSize / segmentCount + 1);
+
+        for(int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(slotCount);
+        }
+
+        freeKeyEntry = new AtomicLong();
+    }
+
+    public ConcurrentIntHashMap(Set<Entry<Integer, Integer>> values) {
+        this(values.size());
+        for(Entry<Integer, Integer> pair : values) {
+            put(pair.getKey(), pair.getValue());
+        }
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if(!(key instanceof Integer)) {
+            throw new IllegalArgumentException("Key is not an Integer!");
+        }
+
+        int temp = (Integer)key;
+        int value = get(temp);
+        return value != Integer.MIN_VALUE ? value : null;
+    }
+
+    @Override
+    public Integer put(Integer key, Integer value) {
+        int tempKey = (Integer)key;
+        int tempValue = (Integer)value;
+        int previousValue = put(tempKey, tempValue);
+        return previousValue != Integer.MIN_VALUE ? previousValue : null;
+    }
+
+    @Override
+    public void clear() {
+        for(Segment segment : segments) {
+            segment.clear();
+        }
+
+        freeKeyEntry.set(0);
+    }
+
+    @Override
+    public int size() {
+        // The entries added or removed while counting
+        // may or may not be included in the result.
+        int size = 0;
+
+        for(Segment segment : segments) {
+            size += segment.count;
+        }
+
+        return freeKeyEntry.get() != 0 ? size + 1 : size;
+    }
+
+    private class EntryIterator implements Iterator<Entry<Integer, Integer>> {
+        // The entries are read from the slots of each segment as they were
+        // when the iterator reached the segment; entries added later
+        // may or may not be returned.
+        private int segmentIndex;
+        private AtomicLongArray slots;
+        private int slot;
+        private boolean hasNextEntry;
+        private int nextKey;
+        private int nextValue;
+
+        EntryIterator() {
+            slots = segments[0].slots;
+            findNextEntry();
+        }
+
+        private void findNextEntry() {
+            while(slots != null) {
+                while(slot < slots.length()) {
+                    long entry = slots.get(slot++);
+
+                    if(extractKey(entry) != FREE_KEY) {
+                        nextKey = extractKey(entry);
+                        nextValue = extractValue(entry);
+                        hasNextEntry = true;
+                        return;
+                    }
+                }
+
+                segmentIndex++;
+                slot = 0;
+
+                if(segmentIndex < segments.length) {
+                    slots = segments[segmentIndex].slots;
+                }
+                else {
+                    // The FREE_KEY entry is returned last.
+                    slots = null;
+                    long freeEntry = freeKeyEntry.get();
+
+                    if(freeEntry != 0) {
+                        nextKey = FREE_KEY;
+                        nextValue = (int)freeEntry;
+                        hasNextEntry = true;
+                        return;
+                    }
+                }
+            }
+
+            hasNextEntry = false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNextEntry;
+        }
+
+        @Override
+        public Entry<Integer, Integer> next() {
+            if(!hasNextEntry) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<Integer, Integer> entry = new MapEntry(nextKey, nextValue);
+            findNextEntry();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    public Set<Entry<Integer, Integer>> entrySet() {
+        return new AbstractSet<Entry<Integer, Integer>>() {
+            @Override
+            public Iterator<Entry<Integer, Integer>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentIntHashMap.this.size();
+            }
+        };
+    }
+
+    public void forEachEntry(IntIntConsumer consumer) {
+        for(Segment segment : segments) {
+            AtomicLongArray slots = segment.slots;
+
+            for(int i = 0; i < slots.length(); i++) {
+                long entry = slots.get(i);
+
+                if(extractKey(entry) != FREE_KEY) {
+                    consumer.accept(extractKey(entry), extractValue(entry));
+                }
+            }
+        }
+
+        long freeEntry = freeKeyEntry.get();
+
+        if(freeEntry != 0) {
+            consumer.accept(FREE_KEY, (int)freeEntry);
+        }
+    }
+
+    private static int getMaxCount(int slotCount) {
+        // When the segment can't grow anymore at least one slot
+        // must remain free, otherwise searching could loop forever.
+        return slotCount < MAX_SLOT_COUNT ?
+               slotCount - (slotCount >> FREE_SLOTS_SHIFT) :
+               slotCount - 1;
+    }
+
+    private static int getSlotCountFor(int expectedSize) {
+        int slotCount = DEFAULT_SLOT_COUNT;
+
+        while((getMaxCount(slotCount) < expectedSize) && (slotCount < MAX_SLOT_COUNT)) {
+            slotCount *= 2;
+        }
+
+        return slotCount;
+    }
+
+    private static long packEntry(int key, int value) {
+        return ((long)value << 32) | ((long)key & 0xFFFFFFFFL);
+    }
+
+    private static int extractKey(long entry) {
+        return (int)entry;
+    }
+
+    private static int extractValue(long entry) {
+        return (int)(entry >>> 32);
+    }
+
+    private static int computeHash(int key) {
+        // All bits of the key should influence both the segment (upper bits)
+        // and the slot (lower bits), so the key is always mixed.
+        return MurmurIntHashStrategy.mix(key);
+    }
+
+    private Segment getSegment(int hash) {
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    public int get(int key) {
+        if(key == FREE_KEY) {
+            long freeEntry = freeKeyEntry.get();
+            return freeEntry != 0 ? (int)freeEntry : Integer.MIN_VALUE;
+        }
+
+        int hash = computeHash(key);
+        long entry = getSegment(hash).findEntry(key, hash);
+        return entry != 0 ? extractValue(entry) : Integer.MIN_VALUE;
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        if(key == FREE_KEY) {
+            long freeEntry = freeKeyEntry.get();
+            return freeEntry != 0 ? (int)freeEntry : defaultValue;
+        }
+
+        int hash = computeHash(key);
+        long entry = getSegment(hash).findEntry(key, hash);
+        return entry != 0 ? extractValue(entry) : defaultValue;
+    }
+
+    public int put(int key, int value) {
+        if(key == FREE_KEY) {
+            long oldEntry = freeKeyEntry.getAndSet(FREE_KEY_PRESENT | ((long)value & 0xFFFFFFFFL));
+            return oldEntry != 0 ? (int)oldEntry : Integer.MIN_VALUE;
+        }
+
+        int hash = computeHash(key);
+        return getSegment(hash).put(key, hash, value, false /* onlyIfAbsent */);
+    }
+
+    public int putIfAbsent(int key, int value) {
+        // Returns the value already associated with the key,
+        // or Integer.MIN_VALUE if the new value was added.
+        if(key == FREE_KEY) {
+            long newEntry = FREE_KEY_PRESENT | ((long)value & 0xFFFFFFFFL);
+
+            if(freeKeyEntry.compareAndSet(0, newEntry)) {
+                return Integer.MIN_VALUE;
+            }
+            else return (int)freeKeyEntry.get();
+        }
+
+        int hash = computeHash(key);
+        return getSegment(hash).put(key, hash, value, true /* onlyIfAbsent */);
+    }
+
+    public int addTo(int key, int delta) {
+        // Atomically adds delta to the value associated with the key, or associates
+        // delta with the key if it is not found. Returns the new value.
+        if(key == FREE_KEY) {
+            while(true) {
+                long oldEntry = freeKeyEntry.get();
+                int newValue = oldEntry != 0 ? (int)oldEntry + delta : delta;
+                long newEntry = FREE_KEY_PRESENT | ((long)newValue & 0xFFFFFFFFL);
+
+                if(freeKeyEntry.compareAndSet(oldEntry, newEntry)) {
+                    return newValue;
+                }
+            }
+        }
+
+        int hash = computeHash(key);
+        return getSegment(hash).addTo(key, hash, delta);
+    }
+
+    public boolean containsKey(int key) {
+        if(key == FREE_KEY) {
+            return freeKeyEntry.get() != 0;
+        }
+
+        int hash = computeHash(key);
+        return getSegment(hash).findEntry(key, hash) != 0;
+    }
+
+    public boolean containsValue(int value) {
+        for(Segment segment : segments) {
+            AtomicLongArray slots = segment.slots;
+
+            for(int i = 0; i < slots.length(); i++) {
+                long entry = slots.get(i);
+
+                if((extractKey(entry) != FREE_KEY) && (extractValue(entry) == value)) {
+                    return true;
+                }
+            }
+        }
+
+        long freeEntry = freeKeyEntry.get();
+        return (freeEntry != 0) && ((int)freeEntry == value);
+    }
+}
@@ -0,0 +1,233 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import compactcollections.functions.IntIntConsumer;
+import java.util.*;
+
+public class FrozenIntHashMap extends AbstractMap<Integer, Integer> {
+    public static class MapEntry implements Map.Entry<Integer, Integer> {
+        private int key;
+        private int value;
+
+        public MapEntry(int key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Integer getKey() {
+            return key;
+        }
+
+        public Integer getValue() {
+            return value;
+        }
+
+        public Integer setValue(Integer newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof MapEntry)) {
+                return false;
+            }
+
+            MapEntry other = (MapEntry)object;
+            return key ==  other.getKey() &&
+                   value == other.getValue();
+        }
+
+        public int hashCode() {
+            return key ^ value;
+        }
+    }
+
+    private int[] seeds;  // The seed of each bucket of the perfect hash function.
+    private int[] keys;   // The key found in each slot.
+    private int[] data;   // The value associated with the key of each slot.
+
+    FrozenIntHashMap(int[] entryKeys, int[] entryValues, int count) {
+        // Each key gets its own slot, so there is no unused space
+        // and a lookup checks a single key.
+        seeds = new int[PerfectHashBuilder.getBucketCount(count)];
+        int[] slotEntries = PerfectHashBuilder.build(entryKeys, count, seeds);
+        keys = new int[count];
+        data = new int[count];
+
+        for(int i = 0; i < count; i++) {
+            keys[i] = entryKeys[slotEntries[i]];
+            data[i] = entryValues[slotEntries[i]];
+        }
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if(!(key instanceof Integer)) {
+            throw new IllegalArgumentException("Key is not an Integer!");
+        }
+
+        int temp = (Integer)key;
+        int value = get(temp);
+        return value != Integer.MIN_VALUE ? value : null;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    private class EntryIterator implements Iterator<Entry<Integer, Integer>> {
+        private int slot; // The slot of the next entry.
+
+        @Override
+        public boolean hasNext() {
+            return slot < keys.length;
+        }
+
+        @Override
+        public Entry<Integer, Integer> next() {
+            if(slot >= keys.length) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<Integer, Integer> entry = new MapEntry(keys[slot], data[slot]);
+            slot++;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class EntryCursor implements IntIntCursor {
+        private int slot = -1;
+
+        @Override
+        public boolean advance() {
+            slot++;
+            return slot < keys.length;
+        }
+
+        @Override
+        public int key() {
+            return keys[slot];
+        }
+
+        @Override
+        public int value() {
+            return data[slot];
+        }
+
+        @Override
+        public void reset() {
+            slot = -1;
+        }
+    }
+
+    @Override
+    public Set<Entry<Integer, Integer>> entrySet() {
+        return new AbstractSet<Entry<Integer, Integer>>() {
+            @Override
+            public Iterator<Entry<Integer, Integer>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    public IntIntCursor cursor() {
+        // The cursor visits the entries in slot order,
+        // without creating any objects while iterating.
+        return new EntryCursor();
+    }
+
+    public void forEachEntry(IntIntConsumer consumer) {
+        for(int i = 0; i < keys.length; i++) {
+            consumer.accept(keys[i], data[i]);
+        }
+    }
+
+    public int indexOf(int key) {
+        // Returns the slot of the key, or -1 if the key is not found.
+        if(keys.length == 0) {
+            return -1;
+        }
+
+        int slot = PerfectHashBuilder.findSlot(key, seeds, keys.length);
+        return keys[slot] == key ? slot : -1;
+    }
+
+    public int get(int key) {
+        int slot = indexOf(key);
+
+        if(slot != -1) {
+            return data[slot];
+        }
+        else return Integer.MIN_VALUE;
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int slot = indexOf(key);
+
+        if(slot != -1) {
+            return data[slot];
+        }
+        else return defaultValue;
+    }
+
+    public int getKeyAt(int index) {
+        return keys[index];
+    }
+
+    public int getValueAt(int index) {
+        return data[index];
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) != -1;
+    }
+
+    public boolean containsValue(int value) {
+        for(int i = 0; i < data.length; i++) {
+            if(data[i] == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
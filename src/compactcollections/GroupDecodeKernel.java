@@ -0,0 +1,76 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+
+// Decodes a complete group of VariableIntArray values at once.
+// The vector implementation is used only if requested using the
+// "compactcollections.vectorDecode" system property and if the
+// jdk.incubator.vector module is available (--add-modules jdk.incubator.vector),
+// otherwise the scalar implementation is used.
+abstract class GroupDecodeKernel {
+    // The maximum size of a group: the header and 4 byte values.
+    // The kernels read this many bytes starting with the group header,
+    // so they can be used only if the data array is large enough.
+    static final int MAX_GROUP_SIZE = 1 + 4 * VariableIntArray.GROUP_SIZE;
+
+    /*
+     * Should decode the values of the group starting at groupOffset,
+     * add sectionStartValue to each one and store them in destination.
+     * Returns the offset of the next group.
+     */
+    abstract int decodeGroup(byte[] data, int groupOffset, int sectionStartValue,
+                             int[] destination, int destinationOffset);
+
+    static GroupDecodeKernel create() {
+        if(Boolean.getBoolean("compactcollections.vectorDecode")) {
+            // The class is loaded by name, so that the module
+            // is not required when the vector kernel is not used.
+            try {
+                Class<?> kernelClass = Class.forName("compactcollections.VectorGroupDecodeKernel");
+                GroupDecodeKernel kernel = (GroupDecodeKernel)kernelClass.getDeclaredConstructor().newInstance();
+
+                if(kernel.isSupported()) {
+                    return kernel;
+                }
+            }
+            catch(Throwable e) {
+                // Module not available, use the scalar kernel.
+            }
+        }
+
+        return new ScalarGroupDecodeKernel();
+    }
+
+    boolean isSupported() {
+        return true;
+    }
+}
@@ -30,9 +30,19 @@
 // (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections;
+import compactcollections.functions.IntIntConsumer;
+import compactcollections.functions.IntIntPredicate;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.*;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
 
-public class IntHashMap extends AbstractMap<Integer, Integer> {
+public class IntHashMap extends AbstractMap<Integer, Integer> implements Externalizable {
     public static class MapEntry implements Map.Entry<Integer, Integer> {
         private int key;
         private int value;
@@ -90,17 +100,47 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
     // A value of 4 seems to be the best in most cases.
     private static final int LOAD_FACTOR = 4;
 
+    // The length of a bucket chain above which the hash strategy is replaced
+    // by a stronger one. With a good hash function the chains contain a few
+    // entries, a much longer one means that many keys have the same hash code.
+    private static final int MAX_CHAIN_LENGTH = 32;
+
+    // The maximum number of times the hash strategy is replaced,
+    // avoids rehashing repeatedly when the keys can't be spread better.
+    private static final int MAX_HASH_STRATEGY_CHANGES = 4;
+
+    // The version of the layout written by writeTo.
+    private static final int FORMAT_VERSION = 1;
+
     private int[] table;    // Start index of buckets.
     private int[] data;     // Value for corresponding Bucket.
     private long[] buckets; // <Key, Next Table Index> pairs.
     private int count;      // The total number of values in the map.
 
+    private IntHashStrategy hashStrategy; // Computes the hash code of the keys.
+    private int hashStrategyChanges;      // The number of times the hash strategy was replaced.
+    private int lastChainLength;          // The length of the chain found by the last search.
+
     public IntHashMap() {
+        this(new IdentityIntHashStrategy());
+    }
+
+    public IntHashMap(IntHashStrategy hashStrategy) {
+        this.hashStrategy = hashStrategy;
         resetToDefault();
     }
 
+    public IntHashMap(int expectedSize) {
+        this(expectedSize, new IdentityIntHashStrategy());
+    }
+
+    public IntHashMap(int expectedSize, IntHashStrategy hashStrategy) {
+        this(hashStrategy);
+        ensureCapacity(expectedSize);
+    }
+
     public IntHashMap(Set<Entry<Integer, Integer>> values) {
-        this();
+        this(values.size());
         for(Entry<Integer, Integer> pair : values) {
             put(pair.getKey(), pair.getValue());
         }
@@ -125,6 +165,17 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
         return previousValue != Integer.MIN_VALUE ? previousValue : null;
     }
 
+    @Override
+    public Integer remove(Object key) {
+        if(!(key instanceof Integer)) {
+            throw new IllegalArgumentException("Key is not an Integer!");
+        }
+
+        int temp = (Integer)key;
+        int previousValue = remove(temp);
+        return previousValue != Integer.MIN_VALUE ? previousValue : null;
+    }
+
     @Override
     public void clear() {
         resetToDefault();
@@ -135,20 +186,76 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
         return count;
     }
 
+    public IntHashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    private class EntryIterator implements Iterator<Entry<Integer, Integer>> {
+        private int index;          // The index of the next entry.
+        private boolean canRemove;  // Set if next was called after the last remove.
+
+        @Override
+        public boolean hasNext() {
+            return index < count;
+        }
+
+        @Override
+        public Entry<Integer, Integer> next() {
+            if(index >= count) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<Integer, Integer> entry = new MapEntry(extractKey(buckets[index]), data[index]);
+            index++;
+            canRemove = true;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if(!canRemove) {
+                throw new IllegalStateException();
+            }
+
+            // The last entry is moved in place of the removed one,
+            // it must be returned by the next call to next.
+            index--;
+            removeAt(index);
+            canRemove = false;
+        }
+    }
+
+    private class EntryCursor implements IntIntCursor {
+        private int index = -1;
+
+        @Override
+        public boolean advance() {
+            index++;
+            return index < count;
+        }
+
+        @Override
+        public int key() {
+            return extractKey(buckets[index]);
+        }
+
+        @Override
+        public int value() {
+            return data[index];
+        }
+
+        @Override
+        public void reset() {
+            index = -1;
+        }
+    }
+
     @Override
     public Set<Entry<Integer, Integer>> entrySet() {
         return new AbstractSet<Entry<Integer, Integer>>() {
             @Override
             public Iterator<Entry<Integer, Integer>> iterator() {
-                // Not the most efficient implementation, building
-                // the pair list could be avoided by using a custom iterator.
-                List<Entry<Integer, Integer>> pairs =
-                    new ArrayList<Entry<Integer, Integer>>(count);
-                for(int i = 0; i < count; i++) {
-                    pairs.add(new MapEntry(extractKey(buckets[i]), data[i]));
-                }
-
-                return pairs.iterator();
+                return new EntryIterator();
             }
 
             @Override
@@ -158,6 +265,30 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
         };
     }
 
+    public IntIntCursor cursor() {
+        // The cursor visits the entries in the order they were added,
+        // without creating any objects while iterating.
+        return new EntryCursor();
+    }
+
+    public void forEachEntry(IntIntConsumer consumer) {
+        for(int i = 0; i < count; i++) {
+            consumer.accept(extractKey(buckets[i]), data[i]);
+        }
+    }
+
+    public FrozenIntHashMap freeze() {
+        // Creates an immutable copy of the map, where each key is found
+        // using a minimal perfect hash function, without any bucket chains.
+        int[] keys = new int[count];
+
+        for(int i = 0; i < count; i++) {
+            keys[i] = extractKey(buckets[i]);
+        }
+
+        return new FrozenIntHashMap(keys, data, count);
+    }
+
     private void resetToDefault() {
         table = new int[DEFAULT_TABLE_SIZE];
         Arrays.fill(table, -1);
@@ -215,29 +346,81 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
                 return; // Table shouldn't grow further.
             }
 
-            // Create a new table and rehash the bucket start keys
-            // into the new table. On conflict the buckets are chained.
-            table = new int[newTableSize];
-            Arrays.fill(table, -1);
-
-            for(int i = 0; i < count; i++) {
-                long bucket = buckets[i];
-                int key = extractKey(bucket);
-                int keyHash = computeHash(key);
-
-                int previousBucketIndex = table[keyHash];
-                table[keyHash] = i;
-
-                if(previousBucketIndex != -1) {
-                    // The bucket that was associated with the hash code
-                    // must be added at the end of the current bucket.
-                    buckets[i] = replaceNext(previousBucketIndex, bucket);
-                }
-                else {
-                    // This is a single-element bucket chain (it is possible
-                    // to be included in another chain at a later step).
-                    buckets[i] = replaceNext(-1, bucket);
-                }
+            rebuildTable(newTableSize);
+        }
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        // Resize the arrays and rehash the table only once, so that
+        // expectedSize entries can be added without any other resizing.
+        if(expectedSize > data.length) {
+            buckets = Arrays.copyOf(buckets, expectedSize);
+            data = Arrays.copyOf(data, expectedSize);
+        }
+
+        int tableSize = getTableSizeFor(expectedSize);
+
+        if(tableSize > table.length) {
+            rebuildTable(tableSize);
+        }
+    }
+
+    private int getTableSizeFor(int expectedSize) {
+        // The table grows when count / LOAD_FACTOR reaches its size,
+        // find the smallest size for which this doesn't happen.
+        int maxCount = (expectedSize - 1) / LOAD_FACTOR;
+        int tableSize = table.length;
+
+        while(tableSize <= maxCount) {
+            int newTableSize = getNextTableSize(tableSize);
+
+            if(newTableSize <= tableSize) {
+                break; // Table shouldn't grow further.
+            }
+
+            tableSize = newTableSize;
+        }
+
+        return tableSize;
+    }
+
+    private void strengthenHashStrategy() {
+        // A very long bucket chain was created, which means that the keys
+        // are not spread well by the current hash strategy (for example,
+        // multiples of a large power of two with the identity strategy).
+        if(hashStrategyChanges < MAX_HASH_STRATEGY_CHANGES) {
+            hashStrategy = hashStrategy.getStrongerStrategy();
+            hashStrategyChanges++;
+            rebuildTable(table.length);
+        }
+    }
+
+    private void rebuildTable(int tableSize) {
+        // Create a new table and rehash the bucket start keys
+        // into the new table. On conflict the buckets are chained.
+        if(tableSize != table.length) {
+            table = new int[tableSize];
+        }
+
+        Arrays.fill(table, -1);
+
+        for(int i = 0; i < count; i++) {
+            long bucket = buckets[i];
+            int key = extractKey(bucket);
+            int keyHash = computeHash(key);
+
+            int previousBucketIndex = table[keyHash];
+            table[keyHash] = i;
+
+            if(previousBucketIndex != -1) {
+                // The bucket that was associated with the hash code
+                // must be added at the end of the current bucket.
+                buckets[i] = replaceNext(previousBucketIndex, bucket);
+            }
+            else {
+                // This is a single-element bucket chain (it is possible
+                // to be included in another chain at a later step).
+                buckets[i] = replaceNext(-1, bucket);
             }
         }
     }
@@ -245,13 +428,14 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
     private int computeHash(int key) {
         // The table length should always be a power of two.
         assert((table.length & (table.length - 1)) == 0);
-        return key & (table.length - 1);
+        return hashStrategy.hash(key) & (table.length - 1);
     }
 
     private int findBucketIndex(int key, boolean returnLast) {
         int keyHash = computeHash(key);
         int bucketIndex = table[keyHash];
         int lastBucketIndex = bucketIndex;
+        int chainLength = 0;
 
         while(bucketIndex != -1) {
             long bucket = buckets[bucketIndex];
@@ -263,10 +447,15 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
             else {
                 lastBucketIndex = bucketIndex;
                 bucketIndex = extractNext(bucket);
+                chainLength++;
             }
         }
 
-        return returnLast ? lastBucketIndex : -1;
+        if(returnLast) {
+            lastChainLength = chainLength;
+            return lastBucketIndex;
+        }
+        else return -1;
     }
 
     public int get(int key) {
@@ -298,32 +487,133 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
         resizeTables(count);
         int bucketIndex = findBucketIndex(key, true /* returnLast */);
 
-        if(bucketIndex != -1) {
-            long bucket = buckets[bucketIndex];
-            int bucketKey = extractKey(bucket);
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            // The same key has been found.
+            int oldValue = data[bucketIndex];
+            data[bucketIndex] = value;
+            return oldValue;
+        }
 
-            if(bucketKey == key) {
-                // The same key has been found.
-                int oldValue = data[bucketIndex];
-                data[bucketIndex] = value;
-                return oldValue;
-            }
-            else {
-                // A new entry must be added at the end of the bucket.
-                int dataIndex = appendData(key, value);
-                buckets[bucketIndex] = replaceNext(dataIndex, bucket);
+        appendEntry(bucketIndex, key, value);
+        return Integer.MIN_VALUE;
+    }
+
+    private void appendEntry(int lastBucketIndex, int key, int value) {
+        // The new entry is added at the end of the bucket chain
+        // found by findBucketIndex, or it starts a new chain.
+        int dataIndex = appendData(key, value);
+
+        if(lastBucketIndex != -1) {
+            buckets[lastBucketIndex] = replaceNext(dataIndex, buckets[lastBucketIndex]);
+
+            if(lastChainLength >= MAX_CHAIN_LENGTH) {
+                strengthenHashStrategy();
             }
         }
         else {
-            // No bucket is associated with the hash code yet.
-            int dataIndex = appendData(key, value);
             int keyHash = computeHash(key);
             table[keyHash] = dataIndex;
         }
+    }
+
+    public int indexOf(int key) {
+        // Returns the index of the entry having the key, or -1 if it is not found.
+        // Unlike get, a missing key can be told apart from a stored Integer.MIN_VALUE.
+        return findBucketIndex(key, false /* returnLast */);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int dataIndex = findBucketIndex(key, false /* returnLast */);
+
+        if(dataIndex != -1) {
+            return data[dataIndex];
+        }
+        else return defaultValue;
+    }
+
+    public int putIfAbsent(int key, int value) {
+        // Returns the value already associated with the key,
+        // or Integer.MIN_VALUE if the new value was added.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            return data[bucketIndex];
+        }
 
+        appendEntry(bucketIndex, key, value);
         return Integer.MIN_VALUE;
     }
 
+    public int addTo(int key, int delta) {
+        // Adds delta to the value associated with the key, or associates
+        // delta with it if it is not found. Returns the new value.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            int newValue = data[bucketIndex] + delta;
+            data[bucketIndex] = newValue;
+            return newValue;
+        }
+
+        appendEntry(bucketIndex, key, delta);
+        return delta;
+    }
+
+    public int merge(int key, int value, IntBinaryOperator remappingFunction) {
+        // If the key is found its value is replaced by the result of
+        // remappingFunction(oldValue, value), otherwise value is associated with it.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            int newValue = remappingFunction.applyAsInt(data[bucketIndex], value);
+            data[bucketIndex] = newValue;
+            return newValue;
+        }
+
+        appendEntry(bucketIndex, key, value);
+        return value;
+    }
+
+    public int computeIfAbsent(int key, IntUnaryOperator mappingFunction) {
+        // The mapping function is called only if the key is not found.
+        // It must not modify the map, because the bucket chain
+        // where the new entry is linked has already been found.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            return data[bucketIndex];
+        }
+
+        int value = mappingFunction.applyAsInt(key);
+        appendEntry(bucketIndex, key, value);
+        return value;
+    }
+
+    public void putAll(int[] keys, int[] values) {
+        putAll(keys, values, 0, keys.length);
+    }
+
+    public void putAll(int[] keys, int[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) ||
+           (length > keys.length - offset) ||
+           (length > values.length - offset)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        // The arrays and the table are resized at most once,
+        // then the entries are added without any reallocation.
+        ensureCapacity(count + length);
+        int end = offset + length;
+
+        for(int i = offset; i < end; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
     public boolean containsKey(int key) {
         return findBucketIndex(key, false /* returnLast */) != -1;
     }
@@ -337,4 +627,132 @@ public class IntHashMap extends AbstractMap<Integer, Integer> {
 
         return false;
     }
+
+    private void replaceChainLink(int oldIndex, int newIndex) {
+        // Make the table entry or the bucket that points
+        // to the entry at oldIndex point to newIndex instead.
+        int keyHash = computeHash(extractKey(buckets[oldIndex]));
+        int bucketIndex = table[keyHash];
+
+        if(bucketIndex == oldIndex) {
+            table[keyHash] = newIndex;
+            return;
+        }
+
+        while(true) {
+            long bucket = buckets[bucketIndex];
+            int nextBucketIndex = extractNext(bucket);
+
+            if(nextBucketIndex == oldIndex) {
+                buckets[bucketIndex] = replaceNext(newIndex, bucket);
+                return;
+            }
+
+            bucketIndex = nextBucketIndex;
+        }
+    }
+
+    private void removeAt(int bucketIndex) {
+        // Unlink the entry from its bucket chain.
+        replaceChainLink(bucketIndex, extractNext(buckets[bucketIndex]));
+        int lastBucketIndex = count - 1;
+
+        if(bucketIndex != lastBucketIndex) {
+            // Keep the arrays dense by moving the last entry into the hole.
+            // The link pointing to the last entry must point to its new location.
+            replaceChainLink(lastBucketIndex, bucketIndex);
+            buckets[bucketIndex] = buckets[lastBucketIndex];
+            data[bucketIndex] = data[lastBucketIndex];
+        }
+
+        count--;
+    }
+
+    public int remove(int key) {
+        int bucketIndex = findBucketIndex(key, false /* returnLast */);
+
+        if(bucketIndex != -1) {
+            int oldValue = data[bucketIndex];
+            removeAt(bucketIndex);
+            return oldValue;
+        }
+        else return Integer.MIN_VALUE;
+    }
+
+    public boolean removeIf(IntIntPredicate predicate) {
+        // Move the entries that are kept to the front of the arrays
+        // in a single pass (preserving their order), then rebuild
+        // the bucket chains for the remaining entries.
+        int keptCount = 0;
+
+        for(int i = 0; i < count; i++) {
+            long bucket = buckets[i];
+            int value = data[i];
+
+            if(!predicate.test(extractKey(bucket), value)) {
+                buckets[keptCount] = bucket;
+                data[keptCount] = value;
+                keptCount++;
+            }
+        }
+
+        if(keptCount == count) {
+            return false;
+        }
+
+        count = keptCount;
+        rebuildTable(table.length);
+        return true;
+    }
+
+    public void writeTo(DataOutput output) throws IOException {
+        // Only the keys and values are written, the bucket chains
+        // are linked again when the table is rebuilt after reading.
+        StreamFormat.writeVersion(output, FORMAT_VERSION);
+        StreamFormat.writeHashStrategy(output, hashStrategy);
+        output.writeInt(hashStrategyChanges);
+        output.writeInt(count);
+        output.writeInt(table.length);
+        int[] keys = new int[count];
+
+        for(int i = 0; i < count; i++) {
+            keys[i] = extractKey(buckets[i]);
+        }
+
+        StreamFormat.writeInts(output, keys, count);
+        StreamFormat.writeInts(output, data, count);
+    }
+
+    public void readFrom(DataInput input) throws IOException {
+        // Replaces the entries of the map. The keys are hashed only to
+        // rebuild the table, without searching the chains as put does.
+        StreamFormat.readVersion(input, FORMAT_VERSION);
+        IntHashStrategy newHashStrategy = StreamFormat.readHashStrategy(input);
+        int newHashStrategyChanges = input.readInt();
+        int newCount = StreamFormat.readCount(input, Integer.MAX_VALUE);
+        int tableSize = StreamFormat.readTableSize(input);
+        int[] keys = StreamFormat.readInts(input, newCount, 0);
+        data = StreamFormat.readInts(input, newCount, DEFAULT_DATA_TABLE_SIZE);
+        buckets = new long[Math.max(newCount, DEFAULT_BUCKET_TABLE_SIZE)];
+
+        for(int i = 0; i < newCount; i++) {
+            buckets[i] = packValues(keys[i], -1);
+        }
+
+        hashStrategy = newHashStrategy;
+        hashStrategyChanges = newHashStrategyChanges;
+        count = newCount;
+        table = new int[tableSize];
+        rebuildTable(tableSize);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput output) throws IOException {
+        writeTo(output);
+    }
+
+    @Override
+    public void readExternal(ObjectInput input) throws IOException {
+        readFrom(input);
+    }
 }
@@ -30,6 +30,8 @@
 // (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections;
+import compactcollections.functions.IntObjectConsumer;
+import compactcollections.functions.IntObjectPredicate;
 import java.util.*;
 
 public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
@@ -90,17 +92,44 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
     // A value of 4 seems to be the best in most cases.
     private static final int LOAD_FACTOR = 4;
 
+    // The length of a bucket chain above which the hash strategy is replaced
+    // by a stronger one. With a good hash function the chains contain a few
+    // entries, a much longer one means that many keys have the same hash code.
+    private static final int MAX_CHAIN_LENGTH = 32;
+
+    // The maximum number of times the hash strategy is replaced,
+    // avoids rehashing repeatedly when the keys can't be spread better.
+    private static final int MAX_HASH_STRATEGY_CHANGES = 4;
+
     private int[] table;    // Start index of buckets.
     private Object[] data;  // Value for corresponding Bucket.
     private long[] buckets; // <Key, Next Table Index> pairs.
     private int count;      // The total number of values in the map.
 
+    private IntHashStrategy hashStrategy; // Computes the hash code of the keys.
+    private int hashStrategyChanges;      // The number of times the hash strategy was replaced.
+    private int lastChainLength;          // The length of the chain found by the last search.
+
     public IntObjectHashMap() {
+        this(new IdentityIntHashStrategy());
+    }
+
+    public IntObjectHashMap(IntHashStrategy hashStrategy) {
+        this.hashStrategy = hashStrategy;
         resetToDefault();
     }
 
+    public IntObjectHashMap(int expectedSize) {
+        this(expectedSize, new IdentityIntHashStrategy());
+    }
+
+    public IntObjectHashMap(int expectedSize, IntHashStrategy hashStrategy) {
+        this(hashStrategy);
+        ensureCapacity(expectedSize);
+    }
+
     public IntObjectHashMap(Set<Entry<Integer, T>> values) {
-        this();
+        this(values.size());
         for(Entry<Integer, T> pair : values) {
             put(pair.getKey(), pair.getValue());
         }
@@ -122,6 +151,16 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
         return put(tempKey, value);
     }
 
+    @Override
+    public T remove(Object key) {
+        if(!(key instanceof Integer)) {
+            throw new IllegalArgumentException("Key is not an Integer!");
+        }
+
+        int temp = (Integer)key;
+        return remove(temp);
+    }
+
     @Override
     public void clear() {
         resetToDefault();
@@ -132,21 +171,78 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
         return count;
     }
 
+    public IntHashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    private class EntryIterator implements Iterator<Entry<Integer, T>> {
+        private int index;          // The index of the next entry.
+        private boolean canRemove;  // Set if next was called after the last remove.
+
+        @Override
+        public boolean hasNext() {
+            return index < count;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<Integer, T> next() {
+            if(index >= count) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<Integer, T> entry = new MapEntry<T>(extractKey(buckets[index]), (T)data[index]);
+            index++;
+            canRemove = true;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if(!canRemove) {
+                throw new IllegalStateException();
+            }
+
+            // The last entry is moved in place of the removed one,
+            // it must be returned by the next call to next.
+            index--;
+            removeAt(index);
+            canRemove = false;
+        }
+    }
+
+    private class EntryCursor implements IntObjectCursor<T> {
+        private int index = -1;
+
+        @Override
+        public boolean advance() {
+            index++;
+            return index < count;
+        }
+
+        @Override
+        public int key() {
+            return extractKey(buckets[index]);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T value() {
+            return (T)data[index];
+        }
+
+        @Override
+        public void reset() {
+            index = -1;
+        }
+    }
+
     @Override
-    @SuppressWarnings("unchecked")
     public Set<Entry<Integer, T>> entrySet() {
         return new AbstractSet<Entry<Integer, T>>() {
             @Override
             public Iterator<Entry<Integer, T>> iterator() {
-                // Not the most efficient implementation, building
-                // the pair list could be avoided by using a custom iterator.
-                List<Entry<Integer, T>> pairs = new ArrayList<Entry<Integer, T>>(count);
-
-                for(int i = 0; i < count; i++) {
-                    pairs.add(new MapEntry<T>(extractKey(buckets[i]), (T)data[i]));
-                }
-
-                return pairs.iterator();
+                return new EntryIterator();
             }
 
             @Override
@@ -156,6 +252,31 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
         };
     }
 
+    public IntObjectCursor<T> cursor() {
+        // The cursor visits the entries in the order they were added,
+        // without creating any objects while iterating.
+        return new EntryCursor();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachEntry(IntObjectConsumer<? super T> consumer) {
+        for(int i = 0; i < count; i++) {
+            consumer.accept(extractKey(buckets[i]), (T)data[i]);
+        }
+    }
+
+    public FrozenIntObjectHashMap<T> freeze() {
+        // Creates an immutable copy of the map, where each key is found
+        // using a minimal perfect hash function, without any bucket chains.
+        int[] keys = new int[count];
+
+        for(int i = 0; i < count; i++) {
+            keys[i] = extractKey(buckets[i]);
+        }
+
+        return new FrozenIntObjectHashMap<T>(keys, data, count);
+    }
+
     private void resetToDefault() {
         table = new int[DEFAULT_TABLE_SIZE];
         Arrays.fill(table, -1);
@@ -227,29 +348,81 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
                 return; // Table shouldn't grow further.
             }
 
-            // Create a new table and rehash the bucket start keys
-            // into the new table. On conflict the buckets are chained.
-            table = new int[newTableSize];
-            Arrays.fill(table, -1);
+            rebuildTable(newTableSize);
+        }
+    }
 
-            for(int i = 0; i < count; i++) {
-                long bucket = buckets[i];
-                int key = extractKey(bucket);
-                int keyHash = computeHash(key);
+    public void ensureCapacity(int expectedSize) {
+        // Resize the arrays and rehash the table only once, so that
+        // expectedSize entries can be added without any other resizing.
+        if(expectedSize > data.length) {
+            buckets = Arrays.copyOf(buckets, expectedSize);
+            data = Arrays.copyOf(data, expectedSize);
+        }
 
-                int previousBucketIndex = table[keyHash];
-                table[keyHash] = i;
+        int tableSize = getTableSizeFor(expectedSize);
 
-                if(previousBucketIndex != -1) {
-                    // The bucket that was associated with the hash code
-                    // must be added at the end of the current bucket.
-                    buckets[i] = replaceNext(previousBucketIndex, bucket);
-                }
-                else {
-                    // This is a single-element bucket chain (it is possible
-                    // to be included in another chain at a later step).
-                    buckets[i] = replaceNext(-1, bucket);
-                }
+        if(tableSize > table.length) {
+            rebuildTable(tableSize);
+        }
+    }
+
+    private int getTableSizeFor(int expectedSize) {
+        // The table grows when count / LOAD_FACTOR reaches its size,
+        // find the smallest size for which this doesn't happen.
+        int maxCount = (expectedSize - 1) / LOAD_FACTOR;
+        int tableSize = table.length;
+
+        while(tableSize <= maxCount) {
+            int newTableSize = getNextTableSize(tableSize);
+
+            if(newTableSize <= tableSize) {
+                break; // Table shouldn't grow further.
+            }
+
+            tableSize = newTableSize;
+        }
+
+        return tableSize;
+    }
+
+    private void strengthenHashStrategy() {
+        // A very long bucket chain was created, which means that the keys
+        // are not spread well by the current hash strategy (for example,
+        // multiples of a large power of two with the identity strategy).
+        if(hashStrategyChanges < MAX_HASH_STRATEGY_CHANGES) {
+            hashStrategy = hashStrategy.getStrongerStrategy();
+            hashStrategyChanges++;
+            rebuildTable(table.length);
+        }
+    }
+
+    private void rebuildTable(int tableSize) {
+        // Create a new table and rehash the bucket start keys
+        // into the new table. On conflict the buckets are chained.
+        if(tableSize != table.length) {
+            table = new int[tableSize];
+        }
+
+        Arrays.fill(table, -1);
+
+        for(int i = 0; i < count; i++) {
+            long bucket = buckets[i];
+            int key = extractKey(bucket);
+            int keyHash = computeHash(key);
+
+            int previousBucketIndex = table[keyHash];
+            table[keyHash] = i;
+
+            if(previousBucketIndex != -1) {
+                // The bucket that was associated with the hash code
+                // must be added at the end of the current bucket.
+                buckets[i] = replaceNext(previousBucketIndex, bucket);
+            }
+            else {
+                // This is a single-element bucket chain (it is possible
+                // to be included in another chain at a later step).
+                buckets[i] = replaceNext(-1, bucket);
             }
         }
     }
@@ -257,13 +430,14 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
     private int computeHash(int key) {
         // The table length should always be a power of two.
         assert((table.length & (table.length - 1)) == 0);
-        return key & (table.length - 1);
+        return hashStrategy.hash(key) & (table.length - 1);
     }
 
     private int findBucketIndex(int key, boolean returnLast) {
         int keyHash = computeHash(key);
         int bucketIndex = table[keyHash];
         int lastBucketIndex = bucketIndex;
+        int chainLength = 0;
 
         while(bucketIndex != -1) {
             long bucket = buckets[bucketIndex];
@@ -275,10 +449,15 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
             else {
                 lastBucketIndex = bucketIndex;
                 bucketIndex = extractNext(bucket);
+                chainLength++;
             }
         }
 
-        return returnLast ? lastBucketIndex : -1;
+        if(returnLast) {
+            lastChainLength = chainLength;
+            return lastBucketIndex;
+        }
+        else return -1;
     }
 
     @SuppressWarnings("unchecked")
@@ -318,6 +497,10 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
                 // A new entry must be added at the end of the bucket.
                 int dataIndex = appendData(key, value);
                 buckets[bucketIndex] = replaceNext(dataIndex, bucket);
+
+                if(lastChainLength >= MAX_CHAIN_LENGTH) {
+                    strengthenHashStrategy();
+                }
             }
         }
         else {
@@ -330,7 +513,110 @@ public class IntObjectHashMap<T> extends AbstractMap<Integer, T> {
         return null;
     }
 
+    public void putAll(int[] keys, T[] values) {
+        putAll(keys, values, 0, keys.length);
+    }
+
+    public void putAll(int[] keys, T[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) ||
+           (length > keys.length - offset) ||
+           (length > values.length - offset)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        // The arrays and the table are resized at most once,
+        // then the entries are added without any reallocation.
+        ensureCapacity(count + length);
+        int end = offset + length;
+
+        for(int i = offset; i < end; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
     public boolean containsKey(int key) {
         return findBucketIndex(key, false /* returnLast */) != -1;
     }
+
+    private void replaceChainLink(int oldIndex, int newIndex) {
+        // Make the table entry or the bucket that points
+        // to the entry at oldIndex point to newIndex instead.
+        int keyHash = computeHash(extractKey(buckets[oldIndex]));
+        int bucketIndex = table[keyHash];
+
+        if(bucketIndex == oldIndex) {
+            table[keyHash] = newIndex;
+            return;
+        }
+
+        while(true) {
+            long bucket = buckets[bucketIndex];
+            int nextBucketIndex = extractNext(bucket);
+
+            if(nextBucketIndex == oldIndex) {
+                buckets[bucketIndex] = replaceNext(newIndex, bucket);
+                return;
+            }
+
+            bucketIndex = nextBucketIndex;
+        }
+    }
+
+    private void removeAt(int bucketIndex) {
+        // Unlink the entry from its bucket chain.
+        replaceChainLink(bucketIndex, extractNext(buckets[bucketIndex]));
+        int lastBucketIndex = count - 1;
+
+        if(bucketIndex != lastBucketIndex) {
+            // Keep the arrays dense by moving the last entry into the hole.
+            // The link pointing to the last entry must point to its new location.
+            replaceChainLink(lastBucketIndex, bucketIndex);
+            buckets[bucketIndex] = buckets[lastBucketIndex];
+            data[bucketIndex] = data[lastBucketIndex];
+        }
+
+        data[lastBucketIndex] = null; // Allow the value to be collected.
+        count--;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T remove(int key) {
+        int bucketIndex = findBucketIndex(key, false /* returnLast */);
+
+        if(bucketIndex != -1) {
+            T oldValue = (T)data[bucketIndex];
+            removeAt(bucketIndex);
+            return oldValue;
+        }
+        else return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(IntObjectPredicate<? super T> predicate) {
+        // Move the entries that are kept to the front of the arrays
+        // in a single pass (preserving their order), then rebuild
+        // the bucket chains for the remaining entries.
+        int keptCount = 0;
+
+        for(int i = 0; i < count; i++) {
+            long bucket = buckets[i];
+            Object value = data[i];
+
+            if(!predicate.test(extractKey(bucket), (T)value)) {
+                buckets[keptCount] = bucket;
+                data[keptCount] = value;
+                keptCount++;
+            }
+        }
+
+        if(keptCount == count) {
+            return false;
+        }
+
+        // Allow the removed values to be collected.
+        Arrays.fill(data, keptCount, count, null);
+        count = keptCount;
+        rebuildTable(table.length);
+        return true;
+    }
 }
@@ -30,6 +30,7 @@
 // (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections;
+import compactcollections.functions.IntIntObjectConsumer;
 import java.util.*;
 
 public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Integer>, T> {
@@ -131,18 +132,45 @@ public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Inte
     // A value of 4 seems to be the best in most cases.
     private static final int LOAD_FACTOR = 4;
 
+    // The length of a bucket chain above which the hash strategy is replaced
+    // by a stronger one. With a good hash function the chains contain a few
+    // entries, a much longer one means that many keys have the same hash code.
+    private static final int MAX_CHAIN_LENGTH = 32;
+
+    // The maximum number of times the hash strategy is replaced,
+    // avoids rehashing repeatedly when the keys can't be spread better.
+    private static final int MAX_HASH_STRATEGY_CHANGES = 4;
+
     private int[] table;   // Start index of buckets.
     private Object[] data; // Value for corresponding Bucket.
     private int[] buckets; // <First Key, Next Table Index> pairs.
     private long[] pairs;  // <First Key, Second Key> pairs.
     private int count;     // The total number of values in the map.
 
+    private IntHashStrategy hashStrategy; // Computes the hash code of the keys.
+    private int hashStrategyChanges;      // The number of times the hash strategy was replaced.
+    private int lastChainLength;          // The length of the chain found by the last search.
+
     public IntPairObjectHashMap() {
+        this(new IdentityIntHashStrategy());
+    }
+
+    public IntPairObjectHashMap(IntHashStrategy hashStrategy) {
+        this.hashStrategy = hashStrategy;
         resetToDefault();
     }
 
+    public IntPairObjectHashMap(int expectedSize) {
+        this(expectedSize, new IdentityIntHashStrategy());
+    }
+
+    public IntPairObjectHashMap(int expectedSize, IntHashStrategy hashStrategy) {
+        this(hashStrategy);
+        ensureCapacity(expectedSize);
+    }
+
     public IntPairObjectHashMap(Set<Entry<Entry<Integer, Integer>, T>> values) {
-        this();
+        this(values.size());
         for(Entry<Entry<Integer, Integer>, T> pair : values) {
             put(pair.getKey(), pair.getValue());
         }
@@ -176,24 +204,75 @@ public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Inte
         return count;
     }
 
+    public IntHashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    private class EntryIterator implements Iterator<Entry<Entry<Integer, Integer>, T>> {
+        private int index; // The index of the next entry.
+
+        @Override
+        public boolean hasNext() {
+            return index < count;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<Entry<Integer, Integer>, T> next() {
+            if(index >= count) {
+                throw new NoSuchElementException();
+            }
+
+            KeyEntry key = new KeyEntry(extractFirstKey(pairs[index]),
+                                        extractSecondKey(pairs[index]));
+            Entry<Entry<Integer, Integer>, T> entry = new MapEntry<T>(key, (T)data[index]);
+            index++;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class EntryCursor implements IntPairObjectCursor<T> {
+        private int index = -1;
+
+        @Override
+        public boolean advance() {
+            index++;
+            return index < count;
+        }
+
+        @Override
+        public int firstKey() {
+            return extractFirstKey(pairs[index]);
+        }
+
+        @Override
+        public int secondKey() {
+            return extractSecondKey(pairs[index]);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T value() {
+            return (T)data[index];
+        }
+
+        @Override
+        public void reset() {
+            index = -1;
+        }
+    }
+
     @Override
-    @SuppressWarnings("unchecked")
     public Set<Entry<Entry<Integer, Integer>, T>> entrySet() {
         return new AbstractSet<Entry<Entry<Integer, Integer>, T>>() {
             @Override
             public Iterator<Entry<Entry<Integer, Integer>, T>> iterator() {
-                // Not the most efficient implementation, building
-                // the pair list could be avoided by using a custom iterator.
-                List<Entry<Entry<Integer, Integer>, T>> valuePairs =
-                        new ArrayList<Entry<Entry<Integer, Integer>, T>>(count);
-
-                for(int i = 0; i < count; i++) {
-                    KeyEntry key = new KeyEntry(extractFirstKey(pairs[i]),
-                                                extractSecondKey(pairs[i]));
-                    valuePairs.add(new MapEntry(key, (T)data[i]));
-                }
-
-                return valuePairs.iterator();
+                return new EntryIterator();
             }
 
             @Override
@@ -203,6 +282,19 @@ public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Inte
         };
     }
 
+    public IntPairObjectCursor<T> cursor() {
+        // The cursor visits the entries in the order they were added,
+        // without creating any objects while iterating.
+        return new EntryCursor();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachEntry(IntIntObjectConsumer<? super T> consumer) {
+        for(int i = 0; i < count; i++) {
+            consumer.accept(extractFirstKey(pairs[i]), extractSecondKey(pairs[i]), (T)data[i]);
+        }
+    }
+
     private void resetToDefault() {
         table = new int[DEFAULT_TABLE_SIZE];
         Arrays.fill(table, -1);
@@ -254,26 +346,76 @@ public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Inte
                 return; // Table shouldn't grow further.
             }
 
-            // Create a new table and rehash the bucket start keys
-            // into the new table. On conflict the buckets are chained.
-            table = new int[newTableSize];
-            Arrays.fill(table, -1);
+            rebuildTable(newTableSize);
+        }
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        // Resize the arrays and rehash the table only once, so that
+        // expectedSize entries can be added without any other resizing.
+        if(expectedSize > data.length) {
+            buckets = Arrays.copyOf(buckets, expectedSize);
+            pairs = Arrays.copyOf(pairs, expectedSize);
+            data = Arrays.copyOf(data, expectedSize);
+        }
 
-            for(int i = 0; i < count; i++) {
-                int keyHash = computePairHash(i);
-                buckets[i] = table[keyHash];
-                table[keyHash] = i;
+        int tableSize = getTableSizeFor(expectedSize);
+
+        if(tableSize > table.length) {
+            rebuildTable(tableSize);
+        }
+    }
+
+    private int getTableSizeFor(int expectedSize) {
+        // The table grows when count / LOAD_FACTOR reaches its size,
+        // find the smallest size for which this doesn't happen.
+        int maxCount = (expectedSize - 1) / LOAD_FACTOR;
+        int tableSize = table.length;
+
+        while(tableSize <= maxCount) {
+            int newTableSize = getNextTableSize(tableSize);
+
+            if(newTableSize <= tableSize) {
+                break; // Table shouldn't grow further.
             }
+
+            tableSize = newTableSize;
+        }
+
+        return tableSize;
+    }
+
+    private void strengthenHashStrategy() {
+        // A very long bucket chain was created, which means that the keys
+        // are not spread well by the current hash strategy (for example,
+        // multiples of a large power of two with the identity strategy).
+        if(hashStrategyChanges < MAX_HASH_STRATEGY_CHANGES) {
+            hashStrategy = hashStrategy.getStrongerStrategy();
+            hashStrategyChanges++;
+            rebuildTable(table.length);
+        }
+    }
+
+    private void rebuildTable(int tableSize) {
+        // Create a new table and rehash the bucket start keys
+        // into the new table. On conflict the buckets are chained.
+        if(tableSize != table.length) {
+            table = new int[tableSize];
+        }
+
+        Arrays.fill(table, -1);
+
+        for(int i = 0; i < count; i++) {
+            int keyHash = computePairHash(i);
+            buckets[i] = table[keyHash];
+            table[keyHash] = i;
         }
     }
 
     private int computeHash(int firstKey, int secondKey) {
         // The table length should always be a power of two.
         assert((table.length & (table.length - 1)) == 0);
-        int hash = 23;
-        hash = hash * 31 + firstKey;
-        hash = hash * 31 + secondKey;
-        return hash & (table.length - 1);
+        return hashStrategy.hash(firstKey, secondKey) & (table.length - 1);
     }
 
     private int computePairHash(int pairIndex) {
@@ -293,6 +435,7 @@ public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Inte
         int keyHash = computeHash(firstKey, secondKey);
         int bucketIndex = table[keyHash];
         int lastBucketIndex = bucketIndex;
+        int chainLength = 0;
 
         while(bucketIndex != -1) {
             if(pairIsKey(bucketIndex, firstKey, secondKey)) {
@@ -301,10 +444,15 @@ public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Inte
             else {
                 lastBucketIndex = bucketIndex;
                 bucketIndex = buckets[bucketIndex];
+                chainLength++;
             }
         }
 
-        return returnLast ? lastBucketIndex : -1;
+        if(returnLast) {
+            lastChainLength = chainLength;
+            return lastBucketIndex;
+        }
+        else return -1;
     }
 
     @SuppressWarnings("unchecked")
@@ -342,6 +490,10 @@ public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Inte
                 // A new entry must be added at the end of the bucket.
                 int dataIndex = appendData(firstKey, secondKey, value);
                 buckets[bucketIndex] = dataIndex;
+
+                if(lastChainLength >= MAX_CHAIN_LENGTH) {
+                    strengthenHashStrategy();
+                }
             }
         }
         else {
@@ -354,6 +506,28 @@ public class IntPairObjectHashMap<T> extends AbstractMap<Map.Entry<Integer, Inte
         return null;
     }
 
+    public void putAll(int[] firstKeys, int[] secondKeys, T[] values) {
+        putAll(firstKeys, secondKeys, values, 0, firstKeys.length);
+    }
+
+    public void putAll(int[] firstKeys, int[] secondKeys, T[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) ||
+           (length > firstKeys.length - offset) ||
+           (length > secondKeys.length - offset) ||
+           (length > values.length - offset)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        // The arrays and the table are resized at most once,
+        // then the entries are added without any reallocation.
+        ensureCapacity(count + length);
+        int end = offset + length;
+
+        for(int i = offset; i < end; i++) {
+            put(firstKeys[i], secondKeys[i], values[i]);
+        }
+    }
+
     public boolean containsKey(int firstKey, int secondKey) {
         return findBucketIndex(firstKey, secondKey,
                                false /* returnLast */) != -1;
@@ -0,0 +1,252 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import compactcollections.functions.IntIntConsumer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// A read-only map stored in a file, which is memory-mapped when opened,
+// so no data is read or deserialized: the lookups access the mapped pages
+// directly and the operating system loads them on demand. The file layout
+// mirrors the arrays of IntHashMap (all values are little-endian):
+//   header:  MAGIC, VERSION, count, tableSize (4 ints) + 16 reserved bytes
+//   table:   tableSize ints, the index of the first entry of each chain
+//   buckets: count longs, <Key, Next Entry Index> pairs
+//   data:    count ints, the values
+// The table is always built using MurmurIntHashStrategy, so that the file
+// doesn't depend on the hash strategy of the map that was written.
+public class MappedIntHashMap implements Closeable {
+    // Identifies the file format ("CCIM").
+    private static final int MAGIC = 0x4343494D;
+
+    // The version of the file format, incremented when it changes.
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    // The load factor of the hash table, same as for IntHashMap.
+    private static final int LOAD_FACTOR = 4;
+
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private ChunkedBuffer buffer; // The mapped file.
+    private int count;            // The total number of values in the map.
+    private int tableSize;        // The number of items in the table.
+    private long bucketsOffset;   // The offset of the buckets in the file.
+    private long dataOffset;      // The offset of the values in the file.
+
+    private MappedIntHashMap(ChunkedBuffer buffer, int count, int tableSize) {
+        this.buffer = buffer;
+        this.count = count;
+        this.tableSize = tableSize;
+        bucketsOffset = getBucketsOffset(tableSize);
+        dataOffset = getDataOffset(tableSize, count);
+    }
+
+    private static long getBucketsOffset(int tableSize) {
+        return HEADER_SIZE + ((long)tableSize << 2);
+    }
+
+    private static long getDataOffset(int tableSize, int count) {
+        return getBucketsOffset(tableSize) + ((long)count << 3);
+    }
+
+    private static int getTableSizeFor(int count) {
+        int tableSize = 8;
+
+        while((tableSize <= count / LOAD_FACTOR) && (tableSize < MAX_TABLE_SIZE)) {
+            tableSize *= 2;
+        }
+
+        return tableSize;
+    }
+
+    private static int computeHash(int key, int tableSize) {
+        return MurmurIntHashStrategy.mix(key) & (tableSize - 1);
+    }
+
+    public static void write(IntHashMap map, File file) throws IOException {
+        int count = map.size();
+        int tableSize = getTableSizeFor(count);
+        long bucketsOffset = getBucketsOffset(tableSize);
+        long dataOffset = getDataOffset(tableSize, count);
+        long fileSize = dataOffset + ((long)count << 2);
+
+        // Link the entries having the same hash code, the first entry
+        // of each chain is written to the table once all are linked.
+        int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+        try {
+            output.setLength(0);
+            output.setLength(fileSize);
+            ChunkedBuffer buffer = ChunkedBuffer.map(output.getChannel(), FileChannel.MapMode.READ_WRITE,
+                                                     fileSize, ByteOrder.LITTLE_ENDIAN);
+            try {
+                for(int i = 0; i < count; i++) {
+                    int key = map.getKeyAt(i);
+                    int keyHash = computeHash(key, tableSize);
+                    long bucket = ((long)table[keyHash] << 32) | ((long)key & 0xFFFFFFFFL);
+                    table[keyHash] = i;
+
+                    buffer.putLong(bucketsOffset + ((long)i << 3), bucket);
+                    buffer.putInt(dataOffset + ((long)i << 2), map.getValueAt(i));
+                }
+
+                for(int i = 0; i < tableSize; i++) {
+                    buffer.putInt(HEADER_SIZE + ((long)i << 2), table[i]);
+                }
+
+                // The header is written last, a file that was not
+                // completely written is not recognized when opened.
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, count);
+                buffer.putInt(12, tableSize);
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+            }
+            finally {
+                buffer.close();
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    public static MappedIntHashMap open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            // The mapping remains valid after the file is closed.
+            long fileSize = input.length();
+
+            if(fileSize < HEADER_SIZE) {
+                throw new IOException("Invalid map file!");
+            }
+
+            ChunkedBuffer buffer = ChunkedBuffer.map(input.getChannel(), FileChannel.MapMode.READ_ONLY,
+                                                     fileSize, ByteOrder.LITTLE_ENDIAN);
+            int count = buffer.getInt(8);
+            int tableSize = buffer.getInt(12);
+
+            if((buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION) ||
+               (count < 0) || (tableSize <= 0) || ((tableSize & (tableSize - 1)) != 0) ||
+               (getDataOffset(tableSize, count) + ((long)count << 2) != fileSize)) {
+                buffer.close();
+                throw new IOException("Invalid map file!");
+            }
+
+            return new MappedIntHashMap(buffer, count, tableSize);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // The map can't be used after it was closed.
+        buffer.close();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    private int findBucketIndex(int key) {
+        int keyHash = computeHash(key, tableSize);
+        int bucketIndex = buffer.getInt(HEADER_SIZE + ((long)keyHash << 2));
+
+        while(bucketIndex != -1) {
+            long bucket = buffer.getLong(bucketsOffset + ((long)bucketIndex << 3));
+
+            if((int)bucket == key) {
+                return bucketIndex;
+            }
+
+            bucketIndex = (int)(bucket >>> 32);
+        }
+
+        return -1;
+    }
+
+    public int get(int key) {
+        int dataIndex = findBucketIndex(key);
+
+        if(dataIndex != -1) {
+            return getValueAt(dataIndex);
+        }
+        else return Integer.MIN_VALUE;
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int dataIndex = findBucketIndex(key);
+
+        if(dataIndex != -1) {
+            return getValueAt(dataIndex);
+        }
+        else return defaultValue;
+    }
+
+    public int indexOf(int key) {
+        return findBucketIndex(key);
+    }
+
+    public int getKeyAt(int index) {
+        return (int)buffer.getLong(bucketsOffset + ((long)index << 3));
+    }
+
+    public int getValueAt(int index) {
+        return buffer.getInt(dataOffset + ((long)index << 2));
+    }
+
+    public boolean containsKey(int key) {
+        return findBucketIndex(key) != -1;
+    }
+
+    public void forEachEntry(IntIntConsumer consumer) {
+        for(int i = 0; i < count; i++) {
+            consumer.accept(getKeyAt(i), getValueAt(i));
+        }
+    }
+}
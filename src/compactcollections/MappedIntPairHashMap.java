@@ -0,0 +1,269 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import compactcollections.functions.IntIntIntConsumer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// A read-only pair map stored in a memory-mapped file, see MappedIntHashMap.
+// The file layout mirrors the arrays of IntPairHashMap (little-endian):
+//   header:  MAGIC, VERSION, count, tableSize (4 ints) + 16 reserved bytes
+//   table:   tableSize ints, the index of the first entry of each chain
+//   buckets: count ints, the index of the next entry in the chain,
+//            padded to a multiple of 8 bytes
+//   pairs:   count longs, the keys, as (Second Key << 32) | First Key
+//   data:    count ints, the values
+public class MappedIntPairHashMap implements Closeable {
+    // Identifies the file format ("CCIP").
+    private static final int MAGIC = 0x43434950;
+
+    // The version of the file format, incremented when it changes.
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    // The load factor of the hash table, same as for IntPairHashMap.
+    private static final int LOAD_FACTOR = 4;
+
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private ChunkedBuffer buffer; // The mapped file.
+    private int count;            // The total number of values in the map.
+    private int tableSize;        // The number of items in the table.
+    private long bucketsOffset;   // The offset of the next entry links in the file.
+    private long pairsOffset;     // The offset of the keys in the file.
+    private long dataOffset;      // The offset of the values in the file.
+
+    private MappedIntPairHashMap(ChunkedBuffer buffer, int count, int tableSize) {
+        this.buffer = buffer;
+        this.count = count;
+        this.tableSize = tableSize;
+        bucketsOffset = getBucketsOffset(tableSize);
+        pairsOffset = getPairsOffset(tableSize, count);
+        dataOffset = getDataOffset(tableSize, count);
+    }
+
+    private static long getBucketsOffset(int tableSize) {
+        return HEADER_SIZE + ((long)tableSize << 2);
+    }
+
+    private static long getPairsOffset(int tableSize, int count) {
+        // The pairs are aligned to 8 bytes, the table size is
+        // a power of two, so only the bucket count must be rounded.
+        return getBucketsOffset(tableSize) + ((((long)count + 1) & ~1L) << 2);
+    }
+
+    private static long getDataOffset(int tableSize, int count) {
+        return getPairsOffset(tableSize, count) + ((long)count << 3);
+    }
+
+    private static int getTableSizeFor(int count) {
+        int tableSize = 8;
+
+        while((tableSize <= count / LOAD_FACTOR) && (tableSize < MAX_TABLE_SIZE)) {
+            tableSize *= 2;
+        }
+
+        return tableSize;
+    }
+
+    private static long combinePair(int firstKey, int secondKey) {
+        return ((long)secondKey << 32) | ((long)firstKey & 0xFFFFFFFFL);
+    }
+
+    private static int computeHash(long pair, int tableSize) {
+        return MurmurIntHashStrategy.mix(pair) & (tableSize - 1);
+    }
+
+    public static void write(IntPairHashMap map, File file) throws IOException {
+        int count = map.size();
+        int tableSize = getTableSizeFor(count);
+        long bucketsOffset = getBucketsOffset(tableSize);
+        long pairsOffset = getPairsOffset(tableSize, count);
+        long dataOffset = getDataOffset(tableSize, count);
+        long fileSize = dataOffset + ((long)count << 2);
+
+        int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+        try {
+            output.setLength(0);
+            output.setLength(fileSize);
+            ChunkedBuffer buffer = ChunkedBuffer.map(output.getChannel(), FileChannel.MapMode.READ_WRITE,
+                                                     fileSize, ByteOrder.LITTLE_ENDIAN);
+            try {
+                IntPairIntCursor cursor = map.cursor();
+                int index = 0;
+
+                while(cursor.advance()) {
+                    long pair = combinePair(cursor.firstKey(), cursor.secondKey());
+                    int keyHash = computeHash(pair, tableSize);
+                    buffer.putInt(bucketsOffset + ((long)index << 2), table[keyHash]);
+                    table[keyHash] = index;
+
+                    buffer.putLong(pairsOffset + ((long)index << 3), pair);
+                    buffer.putInt(dataOffset + ((long)index << 2), cursor.value());
+                    index++;
+                }
+
+                for(int i = 0; i < tableSize; i++) {
+                    buffer.putInt(HEADER_SIZE + ((long)i << 2), table[i]);
+                }
+
+                // The header is written last, a file that was not
+                // completely written is not recognized when opened.
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, count);
+                buffer.putInt(12, tableSize);
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+            }
+            finally {
+                buffer.close();
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    public static MappedIntPairHashMap open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            // The mapping remains valid after the file is closed.
+            long fileSize = input.length();
+
+            if(fileSize < HEADER_SIZE) {
+                throw new IOException("Invalid map file!");
+            }
+
+            ChunkedBuffer buffer = ChunkedBuffer.map(input.getChannel(), FileChannel.MapMode.READ_ONLY,
+                                                     fileSize, ByteOrder.LITTLE_ENDIAN);
+            int count = buffer.getInt(8);
+            int tableSize = buffer.getInt(12);
+
+            if((buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION) ||
+               (count < 0) || (tableSize <= 0) || ((tableSize & (tableSize - 1)) != 0) ||
+               (getDataOffset(tableSize, count) + ((long)count << 2) != fileSize)) {
+                buffer.close();
+                throw new IOException("Invalid map file!");
+            }
+
+            return new MappedIntPairHashMap(buffer, count, tableSize);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // The map can't be used after it was closed.
+        buffer.close();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    private int findBucketIndex(int firstKey, int secondKey) {
+        long pair = combinePair(firstKey, secondKey);
+        int keyHash = computeHash(pair, tableSize);
+        int bucketIndex = buffer.getInt(HEADER_SIZE + ((long)keyHash << 2));
+
+        while(bucketIndex != -1) {
+            if(buffer.getLong(pairsOffset + ((long)bucketIndex << 3)) == pair) {
+                return bucketIndex;
+            }
+
+            bucketIndex = buffer.getInt(bucketsOffset + ((long)bucketIndex << 2));
+        }
+
+        return -1;
+    }
+
+    public int get(int firstKey, int secondKey) {
+        int dataIndex = findBucketIndex(firstKey, secondKey);
+
+        if(dataIndex != -1) {
+            return getValueAt(dataIndex);
+        }
+        else return Integer.MIN_VALUE;
+    }
+
+    public int getOrDefault(int firstKey, int secondKey, int defaultValue) {
+        int dataIndex = findBucketIndex(firstKey, secondKey);
+
+        if(dataIndex != -1) {
+            return getValueAt(dataIndex);
+        }
+        else return defaultValue;
+    }
+
+    public int indexOf(int firstKey, int secondKey) {
+        return findBucketIndex(firstKey, secondKey);
+    }
+
+    public int getFirstKeyAt(int index) {
+        return (int)buffer.getLong(pairsOffset + ((long)index << 3));
+    }
+
+    public int getSecondKeyAt(int index) {
+        return (int)(buffer.getLong(pairsOffset + ((long)index << 3)) >>> 32);
+    }
+
+    public int getValueAt(int index) {
+        return buffer.getInt(dataOffset + ((long)index << 2));
+    }
+
+    public boolean containsKey(int firstKey, int secondKey) {
+        return findBucketIndex(firstKey, secondKey) != -1;
+    }
+
+    public void forEachEntry(IntIntIntConsumer consumer) {
+        for(int i = 0; i < count; i++) {
+            long pair = buffer.getLong(pairsOffset + ((long)i << 3));
+            consumer.accept((int)pair, (int)(pair >>> 32), getValueAt(i));
+        }
+    }
+}
@@ -0,0 +1,262 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+
+// A read-only VariableIntArray that reads its values from a memory-mapped file
+// written by VariableIntArray.writeTo, so it can hold more values than fit in the heap.
+// Nothing is read when the file is opened: the groups and the section index
+// are accessed directly in the mapped pages, which the operating system loads
+// when a section is first accessed and evicts when memory is needed.
+// The file layout is the one of writeTo:
+//   header:   FORMAT_VERSION or FOUR_WIDTHS_FORMAT_VERSION (1 byte),
+//             valueCount, dataOffset (big-endian ints)
+//   sections: sectionCount ints with the offset of the first group,
+//             followed by sectionCount ints with the section start value
+//   data:     dataOffset bytes, the groups (1 to 4 byte little-endian deltas)
+//   pending:  pendingValueCount (1 byte), followed by the values of
+//             the incomplete last group (big-endian ints)
+// Sorted arrays (format versions 3 and 4) can't be mapped.
+public class MappedVariableIntArray extends AbstractList<Integer> implements Closeable {
+    private static final int GROUP_SIZE = VariableIntArray.GROUP_SIZE;
+    private static final int SECTION_SIZE = VariableIntArray.SECTION_SIZE;
+
+    private ChunkedBuffer buffer;    // The mapped file.
+    private int valueCount;          // The number of values stored in groups.
+    private long sectionOffsetStart; // The offset of the section offsets in the file.
+    private long sectionValueStart;  // The offset of the section start values in the file.
+    private long dataStart;          // The offset of the groups in the file.
+    private boolean fourWidths;      // Set if the ONE_TO_FOUR_BYTES encoding is used.
+
+    // The values of the incomplete last group, read when the file is opened.
+    private int[] pendingValues;
+    private int pendingValueCount;
+
+    // The index of the first location and the offset
+    // of the last accessed group, same as for VariableIntArray.
+    private int lastGroupIndex;
+    private long lastGroupOffset;
+
+    private MappedVariableIntArray(ChunkedBuffer buffer, int valueCount, int sectionCount,
+                                   int[] pendingValues, int pendingValueCount,
+                                   boolean fourWidths) {
+        VariableIntArray.initializeLookupTables();
+        this.buffer = buffer;
+        this.valueCount = valueCount;
+        this.fourWidths = fourWidths;
+        this.pendingValues = pendingValues;
+        this.pendingValueCount = pendingValueCount;
+        sectionOffsetStart = VariableIntArray.HEADER_SIZE;
+        sectionValueStart = sectionOffsetStart + ((long)sectionCount << 2);
+        dataStart = sectionValueStart + ((long)sectionCount << 2);
+        lastGroupIndex = -1;
+        lastGroupOffset = -1;
+    }
+
+    public static MappedVariableIntArray open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            // The mapping remains valid after the file is closed.
+            long fileSize = input.length();
+
+            if(fileSize < VariableIntArray.HEADER_SIZE) {
+                throw new IOException("Invalid array file!");
+            }
+
+            ChunkedBuffer buffer = ChunkedBuffer.map(input.getChannel(), FileChannel.MapMode.READ_ONLY,
+                                                     fileSize, ByteOrder.BIG_ENDIAN);
+            int valueCount = buffer.getInt(1);
+            int dataOffset = buffer.getInt(5);
+            int sectionCount = (valueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+            long pendingStart = VariableIntArray.HEADER_SIZE + ((long)sectionCount << 3) + dataOffset;
+            int version = buffer.getByte(0);
+
+            if(((version != VariableIntArray.FORMAT_VERSION) &&
+                (version != VariableIntArray.FOUR_WIDTHS_FORMAT_VERSION)) ||
+               (valueCount < 0) || (dataOffset < 0) || (pendingStart >= fileSize)) {
+                buffer.close();
+                throw new IOException("Invalid array file!");
+            }
+
+            int pendingValueCount = buffer.getByte(pendingStart) & 0xFF;
+
+            if((pendingValueCount >= GROUP_SIZE) ||
+               (pendingStart + 1 + (pendingValueCount << 2) != fileSize)) {
+                buffer.close();
+                throw new IOException("Invalid array file!");
+            }
+
+            int[] pendingValues = new int[pendingValueCount];
+
+            for(int i = 0; i < pendingValueCount; i++) {
+                pendingValues[i] = buffer.getInt(pendingStart + 1 + (i << 2));
+            }
+
+            return new MappedVariableIntArray(buffer, valueCount, sectionCount,
+                                              pendingValues, pendingValueCount,
+                                              version == VariableIntArray.FOUR_WIDTHS_FORMAT_VERSION);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // The array can't be used after it was closed.
+        buffer.close();
+    }
+
+    @Override
+    public int size() {
+        return valueCount + pendingValueCount;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getValue(index);
+    }
+
+    private int readGroupHeader(long groupOffset) {
+        return buffer.getByte(groupOffset) & 0xFF;
+    }
+
+    private int readValueAtOffset(long offset, int size) {
+        if(size == 1) {
+            return buffer.getByte(offset);
+        }
+        else if(size < 4) {
+            // The sign is extended by the conversion of the last byte.
+            int value = buffer.getByte(offset + size - 1);
+
+            for(int i = size - 2; i >= 0; i--) {
+                value = (value << 8) | (buffer.getByte(offset + i) & 0xFF);
+            }
+
+            return value;
+        }
+        else if((offset & (ChunkedBuffer.CHUNK_SIZE - 1)) <= ChunkedBuffer.CHUNK_SIZE - 4) {
+            // The deltas are stored little-endian.
+            return Integer.reverseBytes(buffer.getInt(offset));
+        }
+        else {
+            // The value spans two chunks of the mapping.
+            return (buffer.getByte(offset) & 0xFF)             |
+                   (buffer.getByte(offset + 1) & 0xFF) << 8  |
+                   (buffer.getByte(offset + 2) & 0xFF) << 16 |
+                   (buffer.getByte(offset + 3) & 0xFF) << 24;
+        }
+    }
+
+    private int getGroupSize(long groupOffset) {
+        if(fourWidths) {
+            return VariableIntArray.FOUR_WIDTHS_HEADER_SIZE +
+                   VariableIntArray.headerByteSize[readGroupHeader(groupOffset)] +
+                   VariableIntArray.headerByteSize[readGroupHeader(groupOffset + 1)];
+        }
+
+        return VariableIntArray.groupSize[readGroupHeader(groupOffset)];
+    }
+
+    private int readGroupValue(long groupOffset, int valueIndex, int sectionIndex) {
+        long valueOffset;
+        int valueSize;
+
+        if(fourWidths) {
+            // The values of the second half follow the ones of the first half.
+            int headerIndex = valueIndex / VariableIntArray.HEADER_BYTE_VALUES;
+            int header = readGroupHeader(groupOffset + headerIndex);
+            int index = valueIndex % VariableIntArray.HEADER_BYTE_VALUES;
+            valueOffset = groupOffset + VariableIntArray.FOUR_WIDTHS_HEADER_SIZE +
+                          VariableIntArray.headerByteValueOffset[header][index];
+            valueSize = VariableIntArray.headerByteValueSize[header][index];
+
+            if(headerIndex > 0) {
+                valueOffset += VariableIntArray.headerByteSize[readGroupHeader(groupOffset)];
+            }
+        }
+        else {
+            int header = readGroupHeader(groupOffset);
+            valueOffset = groupOffset + VariableIntArray.groupValueOffset[header][valueIndex];
+            valueSize = VariableIntArray.groupValueSize[header][valueIndex];
+        }
+
+        return buffer.getInt(sectionValueStart + ((long)sectionIndex << 2)) +
+               readValueAtOffset(valueOffset, valueSize);
+    }
+
+    public int getValue(int index) {
+        if(index < 0) {
+            throw new ArrayIndexOutOfBoundsException("Invalid value index!");
+        }
+
+        if(index >= valueCount) {
+            if((index - valueCount) < pendingValueCount) {
+                return pendingValues[index - valueCount];
+            }
+
+            throw new ArrayIndexOutOfBoundsException("Invalid value index!");
+        }
+
+        // Check if the requested value is found in the last accessed group.
+        int sectionIndex = index / SECTION_SIZE;
+
+        if((lastGroupOffset != -1) && (index >= lastGroupIndex)) {
+            int indexOffset = index - lastGroupIndex;
+
+            if(indexOffset < GROUP_SIZE) {
+                return readGroupValue(lastGroupOffset, indexOffset, sectionIndex);
+            }
+        }
+
+        // Start at the beginning of the section which
+        // contains the value and find the corresponding group.
+        int valueIndex = index % SECTION_SIZE;
+        long groupOffset = dataStart + buffer.getInt(sectionOffsetStart + ((long)sectionIndex << 2));
+
+        while(valueIndex >= GROUP_SIZE) {
+            groupOffset += getGroupSize(groupOffset);
+            valueIndex -= GROUP_SIZE;
+        }
+
+        lastGroupIndex = index - (index % GROUP_SIZE);
+        lastGroupOffset = groupOffset;
+        return readGroupValue(groupOffset, valueIndex, sectionIndex);
+    }
+}
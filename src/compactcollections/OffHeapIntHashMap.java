@@ -0,0 +1,398 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import compactcollections.functions.IntIntConsumer;
+import java.io.Closeable;
+
+// Has the same layout as IntHashMap, but the table, buckets and values
+// are stored in native memory instead of Java arrays. Very large maps
+// are then not scanned or copied by the Garbage Collector, which keeps
+// the pauses short. The memory is released when the map is closed.
+public class OffHeapIntHashMap implements Closeable {
+    // The size of the hash table. Each item in the table "points" to
+    // (is the index of) the first value having that hash code.
+    private static final int DEFAULT_TABLE_SIZE = 8;
+
+    // The number of entries for which memory is allocated initially.
+    private static final int DEFAULT_CAPACITY = 32;
+
+    // The maximum size of the hash table (must be a power of two).
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    // The load factor of the hash table (how much space is used).
+    // Increasing the load factor reduces the memory consumption,
+    // but increases search time, in worst case reaching linear search.
+    private static final int LOAD_FACTOR = 4;
+
+    // The length of a bucket chain above which the hash strategy is replaced
+    // by a stronger one. With a good hash function the chains contain a few
+    // entries, a much longer one means that many keys have the same hash code.
+    private static final int MAX_CHAIN_LENGTH = 32;
+
+    // The maximum number of times the hash strategy is replaced,
+    // avoids rehashing repeatedly when the keys can't be spread better.
+    private static final int MAX_HASH_STRATEGY_CHANGES = 4;
+
+    private ChunkedBuffer table;   // Start index of buckets (int).
+    private ChunkedBuffer buckets; // <Key, Next Table Index> pairs (long).
+    private ChunkedBuffer data;    // Value for corresponding Bucket (int).
+    private int tableSize;         // The number of items in the table.
+    private int capacity;          // The number of entries that fit into buckets and data.
+    private int count;             // The total number of values in the map.
+
+    private IntHashStrategy hashStrategy; // Computes the hash code of the keys.
+    private int hashStrategyChanges;      // The number of times the hash strategy was replaced.
+    private int lastChainLength;          // The length of the chain found by the last search.
+
+    public OffHeapIntHashMap() {
+        this(0, new IdentityIntHashStrategy());
+    }
+
+    public OffHeapIntHashMap(int expectedSize) {
+        this(expectedSize, new IdentityIntHashStrategy());
+    }
+
+    public OffHeapIntHashMap(int expectedSize, IntHashStrategy hashStrategy) {
+        this.hashStrategy = hashStrategy;
+        resetToDefault();
+        ensureCapacity(expectedSize);
+    }
+
+    public void clear() {
+        releaseMemory();
+        resetToDefault();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public IntHashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public void close() {
+        // The map can't be used after it was closed.
+        releaseMemory();
+    }
+
+    private void releaseMemory() {
+        table.close();
+        buckets.close();
+        data.close();
+    }
+
+    private void resetToDefault() {
+        tableSize = DEFAULT_TABLE_SIZE;
+        table = new ChunkedBuffer((long)tableSize << 2);
+        table.fillInt(0, tableSize, -1);
+
+        capacity = DEFAULT_CAPACITY;
+        buckets = new ChunkedBuffer((long)capacity << 3);
+        data = new ChunkedBuffer((long)capacity << 2);
+        count = 0;
+    }
+
+    private int getTableStart(int keyHash) {
+        return table.getInt((long)keyHash << 2);
+    }
+
+    private void setTableStart(int keyHash, int bucketIndex) {
+        table.putInt((long)keyHash << 2, bucketIndex);
+    }
+
+    private long getBucket(int index) {
+        return buckets.getLong((long)index << 3);
+    }
+
+    private void setBucket(int index, long bucket) {
+        buckets.putLong((long)index << 3, bucket);
+    }
+
+    private int getData(int index) {
+        return data.getInt((long)index << 2);
+    }
+
+    private void setData(int index, int value) {
+        data.putInt((long)index << 2, value);
+    }
+
+    private long packValues(int key, int next) {
+        return ((long)next << 32) | ((long)key & 0xFFFFFFFFL);
+    }
+
+    private int extractKey(long value) {
+        return (int)value;
+    }
+
+    private int extractNext(long value) {
+        return (int)(value >>> 32);
+    }
+
+    private long replaceNext(int newB, long value) {
+        return (value & 0xFFFFFFFFL) | ((long)newB << 32);
+    }
+
+    private void resizeStorage(int newCapacity) {
+        // Move the buckets and values to larger native buffers.
+        ChunkedBuffer newBuckets = new ChunkedBuffer((long)newCapacity << 3);
+        buckets.copyTo(newBuckets, (long)count << 3);
+        buckets.close();
+        buckets = newBuckets;
+
+        ChunkedBuffer newData = new ChunkedBuffer((long)newCapacity << 2);
+        data.copyTo(newData, (long)count << 2);
+        data.close();
+        data = newData;
+        capacity = newCapacity;
+    }
+
+    private void resizeTables(int requiredSize) {
+        if(requiredSize >= capacity) {
+            if(capacity == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Map is full!");
+            }
+
+            resizeStorage((int)Math.min((long)capacity * 2, Integer.MAX_VALUE));
+        }
+
+        if((count / LOAD_FACTOR >= tableSize) && (tableSize < MAX_TABLE_SIZE)) {
+            // Resize the table and rehash the start values.
+            rebuildTable(tableSize * 2);
+        }
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        // Resize the buffers and rehash the table only once, so that
+        // expectedSize entries can be added without any other resizing.
+        if(expectedSize > capacity) {
+            resizeStorage(expectedSize);
+        }
+
+        int maxCount = (expectedSize - 1) / LOAD_FACTOR;
+        int newTableSize = tableSize;
+
+        while((newTableSize <= maxCount) && (newTableSize < MAX_TABLE_SIZE)) {
+            newTableSize *= 2;
+        }
+
+        if(newTableSize > tableSize) {
+            rebuildTable(newTableSize);
+        }
+    }
+
+    private void strengthenHashStrategy() {
+        // A very long bucket chain was created, which means that the keys
+        // are not spread well by the current hash strategy (for example,
+        // multiples of a large power of two with the identity strategy).
+        if(hashStrategyChanges < MAX_HASH_STRATEGY_CHANGES) {
+            hashStrategy = hashStrategy.getStrongerStrategy();
+            hashStrategyChanges++;
+            rebuildTable(tableSize);
+        }
+    }
+
+    private void rebuildTable(int newTableSize) {
+        // Create a new table and rehash the bucket start keys
+        // into the new table. On conflict the buckets are chained.
+        if(newTableSize != tableSize) {
+            table.close();
+            table = new ChunkedBuffer((long)newTableSize << 2);
+            tableSize = newTableSize;
+        }
+
+        table.fillInt(0, tableSize, -1);
+
+        for(int i = 0; i < count; i++) {
+            long bucket = getBucket(i);
+            int keyHash = computeHash(extractKey(bucket));
+
+            // The bucket that was associated with the hash code (or -1)
+            // must be added at the end of the current bucket.
+            int previousBucketIndex = getTableStart(keyHash);
+            setTableStart(keyHash, i);
+            setBucket(i, replaceNext(previousBucketIndex, bucket));
+        }
+    }
+
+    private int computeHash(int key) {
+        // The table length should always be a power of two.
+        return hashStrategy.hash(key) & (tableSize - 1);
+    }
+
+    private int findBucketIndex(int key, boolean returnLast) {
+        int keyHash = computeHash(key);
+        int bucketIndex = getTableStart(keyHash);
+        int lastBucketIndex = bucketIndex;
+        int chainLength = 0;
+
+        while(bucketIndex != -1) {
+            long bucket = getBucket(bucketIndex);
+
+            if(extractKey(bucket) == key) {
+                return bucketIndex;
+            }
+            else {
+                lastBucketIndex = bucketIndex;
+                bucketIndex = extractNext(bucket);
+                chainLength++;
+            }
+        }
+
+        if(returnLast) {
+            lastChainLength = chainLength;
+            return lastBucketIndex;
+        }
+        else return -1;
+    }
+
+    public int get(int key) {
+        int dataIndex = findBucketIndex(key, false /* returnLast */);
+
+        if(dataIndex != -1) {
+            return getData(dataIndex);
+        }
+        else return Integer.MIN_VALUE;
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int dataIndex = findBucketIndex(key, false /* returnLast */);
+
+        if(dataIndex != -1) {
+            return getData(dataIndex);
+        }
+        else return defaultValue;
+    }
+
+    public int getKeyAt(int index) {
+        return extractKey(getBucket(index));
+    }
+
+    public int getValueAt(int index) {
+        return getData(index);
+    }
+
+    private void appendEntry(int lastBucketIndex, int key, int value) {
+        // The new entry is added at the end of the bucket chain
+        // found by findBucketIndex, or it starts a new chain.
+        int dataIndex = count++;
+        setBucket(dataIndex, packValues(key, -1 /* end of bucket chain */));
+        setData(dataIndex, value);
+
+        if(lastBucketIndex != -1) {
+            setBucket(lastBucketIndex, replaceNext(dataIndex, getBucket(lastBucketIndex)));
+
+            if(lastChainLength >= MAX_CHAIN_LENGTH) {
+                strengthenHashStrategy();
+            }
+        }
+        else {
+            int keyHash = computeHash(key);
+            setTableStart(keyHash, dataIndex);
+        }
+    }
+
+    public int put(int key, int value) {
+        // Check if the key is already in the table.
+        // If it is, the new value is used.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(getBucket(bucketIndex)) == key)) {
+            // The same key has been found.
+            int oldValue = getData(bucketIndex);
+            setData(bucketIndex, value);
+            return oldValue;
+        }
+
+        appendEntry(bucketIndex, key, value);
+        return Integer.MIN_VALUE;
+    }
+
+    public int addTo(int key, int delta) {
+        // Adds delta to the value associated with the key, or associates
+        // delta with it if it is not found. Returns the new value.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(getBucket(bucketIndex)) == key)) {
+            int newValue = getData(bucketIndex) + delta;
+            setData(bucketIndex, newValue);
+            return newValue;
+        }
+
+        appendEntry(bucketIndex, key, delta);
+        return delta;
+    }
+
+    public void putAll(int[] keys, int[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) ||
+           (length > keys.length - offset) ||
+           (length > values.length - offset)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        // The buffers and the table are resized at most once,
+        // then the entries are added without any reallocation.
+        ensureCapacity(count + length);
+        int end = offset + length;
+
+        for(int i = offset; i < end; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return findBucketIndex(key, false /* returnLast */) != -1;
+    }
+
+    public boolean containsValue(int value) {
+        for(int i = 0; i < count; i++) {
+            if(getData(i) == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public void forEachEntry(IntIntConsumer consumer) {
+        for(int i = 0; i < count; i++) {
+            consumer.accept(extractKey(getBucket(i)), getData(i));
+        }
+    }
+}
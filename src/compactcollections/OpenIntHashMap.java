@@ -0,0 +1,600 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import compactcollections.functions.IntIntConsumer;
+import java.util.*;
+
+public class OpenIntHashMap extends AbstractMap<Integer, Integer> {
+    public static class MapEntry implements Map.Entry<Integer, Integer> {
+        private int key;
+        private int value;
+
+        public MapEntry(int key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Integer getKey() {
+            return key;
+        }
+
+        public Integer getValue() {
+            return value;
+        }
+
+        public Integer setValue(Integer newValue) {
+            Integer oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof MapEntry)) {
+                return false;
+            }
+
+            MapEntry other = (MapEntry)object;
+            return key ==  other.getKey() &&
+                   value == other.getValue();
+        }
+
+        public int hashCode() {
+            return key ^ value;
+        }
+    }
+
+    // The number of slots of the hash table. Each slot stores
+    // a key and its value next to each other, so that finding the key
+    // also loads the value into the CPU cache.
+    private static final int DEFAULT_SLOT_COUNT = 16;
+
+    // The maximum number of slots. The slot array stores
+    // two integers per slot and must be indexable using 32 bit indices.
+    private static final int MAX_SLOT_COUNT = 1 << 29;
+
+    // The fraction of unused slots that triggers the growth of the table,
+    // expressed as a shift amount: the table grows when less than
+    // slotCount / 8 slots are free (load factor 0.875). Robin Hood displacement
+    // keeps the probe sequences short even at this high load factor.
+    private static final int FREE_SLOTS_SHIFT = 3;
+
+    // The key that marks an unused slot. An entry having
+    // this key is not stored in the table, but in separate fields.
+    private static final int FREE_KEY = 0;
+
+    // The probe distance above which the hash strategy is replaced
+    // by a stronger one. With a good hash function and Robin Hood displacement
+    // the probe sequences are short, a much longer one means that many keys
+    // have the same hash code or form clusters of consecutive hash codes.
+    private static final int MAX_PROBE_DISTANCE = 128;
+
+    // The maximum number of times the hash strategy is replaced,
+    // avoids rehashing repeatedly when the keys can't be spread better.
+    private static final int MAX_HASH_STRATEGY_CHANGES = 4;
+
+    private int[] slots;          // <Key, Value> pairs, stored interleaved.
+    private int slotMask;         // The number of slots - 1 (always a power of two).
+    private int maxCount;         // The number of entries that triggers the growth of the table.
+    private int count;            // The number of entries stored in the slots.
+    private boolean hasFreeKey;   // Set if the FREE_KEY key is in the map.
+    private int freeKeyValue;     // The value associated with the FREE_KEY key.
+
+    private IntHashStrategy hashStrategy; // Computes the hash code of the keys.
+    private int hashStrategyChanges;      // The number of times the hash strategy was replaced.
+
+    public OpenIntHashMap() {
+        this(new MurmurIntHashStrategy());
+    }
+
+    public OpenIntHashMap(IntHashStrategy hashStrategy) {
+        this.hashStrategy = hashStrategy;
+        resetToDefault();
+    }
+
+    public OpenIntHashMap(int expectedSize) {
+        this(expectedSize, new MurmurIntHashStrategy());
+    }
+
+    public OpenIntHashMap(int expectedSize, IntHashStrategy hashStrategy) {
+        this(hashStrategy);
+        ensureCapacity(expectedSize);
+    }
+
+    public OpenIntHashMap(Set<Entry<Integer, Integer>> values) {
+        this(values.size());
+        for(Entry<Integer, Integer> pair : values) {
+            put(pair.getKey(), pair.getValue());
+        }
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if(!(key instanceof Integer)) {
+            throw new IllegalArgumentException("Key is not an Integer!");
+        }
+
+        int temp = (Integer)key;
+        int value = get(temp);
+        return value != Integer.MIN_VALUE ? value : null;
+    }
+
+    @Override
+    public Integer put(Integer key, Integer value) {
+        int tempKey = (Integer)key;
+        int tempValue = (Integer)value;
+        int previousValue = put(tempKey, tempValue);
+        return previousValue != Integer.MIN_VALUE ? previousValue : null;
+    }
+
+    @Override
+    public Integer remove(Object key) {
+        if(!(key instanceof Integer)) {
+            throw new IllegalArgumentException("Key is not an Integer!");
+        }
+
+        int temp = (Integer)key;
+        int previousValue = remove(temp);
+        return previousValue != Integer.MIN_VALUE ? previousValue : null;
+    }
+
+    @Override
+    public void clear() {
+        resetToDefault();
+    }
+
+    @Override
+    public int size() {
+        return hasFreeKey ? count + 1 : count;
+    }
+
+    public IntHashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    private class EntryCursor implements IntIntCursor {
+        private int slot = -1;
+
+        @Override
+        public boolean advance() {
+            slot = findUsedSlot(slot + 1);
+            return slot < getSlotCount();
+        }
+
+        @Override
+        public int key() {
+            return getKeyAt(slot);
+        }
+
+        @Override
+        public int value() {
+            return getValueAt(slot);
+        }
+
+        @Override
+        public void reset() {
+            slot = -1;
+        }
+    }
+
+    @Override
+    public Set<Entry<Integer, Integer>> entrySet() {
+        return new AbstractSet<Entry<Integer, Integer>>() {
+            @Override
+            public Iterator<Entry<Integer, Integer>> iterator() {
+                return new Iterator<Entry<Integer, Integer>>() {
+                    private int slot = findUsedSlot(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < getSlotCount();
+                    }
+
+                    @Override
+                    public Entry<Integer, Integer> next() {
+                        if(slot >= getSlotCount()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        Entry<Integer, Integer> entry =
+                            new MapEntry(getKeyAt(slot), getValueAt(slot));
+                        slot = findUsedSlot(slot + 1);
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return OpenIntHashMap.this.size();
+            }
+        };
+    }
+
+    public IntIntCursor cursor() {
+        // The cursor visits the entries in slot order,
+        // without creating any objects while iterating.
+        return new EntryCursor();
+    }
+
+    public void forEachEntry(IntIntConsumer consumer) {
+        int slotCount = slotMask + 1;
+
+        for(int slot = 0; slot < slotCount; slot++) {
+            int key = slots[slot << 1];
+
+            if(key != FREE_KEY) {
+                consumer.accept(key, slots[(slot << 1) + 1]);
+            }
+        }
+
+        if(hasFreeKey) {
+            consumer.accept(FREE_KEY, freeKeyValue);
+        }
+    }
+
+    private void resetToDefault() {
+        allocateSlots(DEFAULT_SLOT_COUNT);
+        count = 0;
+        hasFreeKey = false;
+        freeKeyValue = 0;
+    }
+
+    private void allocateSlots(int slotCount) {
+        slots = new int[slotCount * 2];
+        slotMask = slotCount - 1;
+
+        // When the table can't grow anymore at least one slot
+        // must remain free, otherwise searching could loop forever.
+        maxCount = slotCount < MAX_SLOT_COUNT ?
+                   slotCount - (slotCount >> FREE_SLOTS_SHIFT) :
+                   slotCount - 1;
+    }
+
+    private void resizeTable() {
+        if(count < maxCount) {
+            return;
+        }
+
+        int slotCount = slotMask + 1;
+
+        if(slotCount >= MAX_SLOT_COUNT) {
+            throw new IllegalStateException("Map is full!");
+        }
+
+        // Reinsert all entries into a table twice as large.
+        rehashSlots(slotCount * 2);
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        // Find the smallest table that can store expectedSize entries
+        // without growing, so that the entries are reinserted only once.
+        int slotCount = slotMask + 1;
+
+        while(((slotCount - (slotCount >> FREE_SLOTS_SHIFT)) < expectedSize) &&
+              (slotCount < MAX_SLOT_COUNT)) {
+            slotCount *= 2;
+        }
+
+        if(slotCount > slotMask + 1) {
+            rehashSlots(slotCount);
+        }
+    }
+
+    private void rehashSlots(int slotCount) {
+        int[] oldSlots = slots;
+        allocateSlots(slotCount);
+
+        for(int i = 0; i < oldSlots.length; i += 2) {
+            int key = oldSlots[i];
+
+            if(key != FREE_KEY) {
+                insertDisplaced(key, oldSlots[i + 1], computeHash(key), 0);
+            }
+        }
+    }
+
+    private void strengthenHashStrategy() {
+        // A very long probe sequence was created, which means that the keys
+        // are not spread well by the current hash strategy (for example,
+        // consecutive keys or multiples of a power of two with the identity strategy).
+        if(hashStrategyChanges < MAX_HASH_STRATEGY_CHANGES) {
+            hashStrategy = hashStrategy.getStrongerStrategy();
+            hashStrategyChanges++;
+            rehashSlots(slotMask + 1);
+        }
+    }
+
+    private int computeHash(int key) {
+        // With linear probing all bits of the key should influence the slot,
+        // otherwise keys that differ only in the upper bits form long clusters.
+        // This is why a mixing strategy is used by default.
+        return hashStrategy.hash(key) & slotMask;
+    }
+
+    private int getProbeDistance(int key, int slot) {
+        // The number of slots between the preferred slot
+        // of the key and the one where it is actually stored.
+        return (slot - computeHash(key)) & slotMask;
+    }
+
+    private int findSlot(int key) {
+        // Robin Hood invariant: along a probe sequence, the entries are
+        // ordered by their probe distance. The search can stop when an entry
+        // closer to its preferred slot than the searched key would be is found.
+        int slot = computeHash(key);
+        int distance = 0;
+
+        while(true) {
+            int slotKey = slots[slot << 1];
+
+            if(slotKey == key) {
+                return slot;
+            }
+            else if((slotKey == FREE_KEY) ||
+                    (getProbeDistance(slotKey, slot) < distance)) {
+                return -1;
+            }
+
+            slot = (slot + 1) & slotMask;
+            distance++;
+        }
+    }
+
+    private int insertDisplaced(int key, int value, int slot, int distance) {
+        // Insert a key known not to be in the table. Entries that are
+        // closer to their preferred slot than the inserted one are displaced
+        // and inserted further ("take from the rich, give to the poor").
+        // Returns the longest probe distance that was reached.
+        int maxDistance = distance;
+
+        while(true) {
+            int slotIndex = slot << 1;
+            int slotKey = slots[slotIndex];
+
+            if(slotKey == FREE_KEY) {
+                slots[slotIndex] = key;
+                slots[slotIndex + 1] = value;
+                return Math.max(maxDistance, distance);
+            }
+
+            int slotDistance = getProbeDistance(slotKey, slot);
+
+            if(slotDistance < distance) {
+                int slotValue = slots[slotIndex + 1];
+                slots[slotIndex] = key;
+                slots[slotIndex + 1] = value;
+                key = slotKey;
+                value = slotValue;
+                maxDistance = Math.max(maxDistance, distance);
+                distance = slotDistance;
+            }
+
+            slot = (slot + 1) & slotMask;
+            distance++;
+        }
+    }
+
+    public int get(int key) {
+        if(key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : Integer.MIN_VALUE;
+        }
+
+        int slot = findSlot(key);
+
+        if(slot != -1) {
+            return slots[(slot << 1) + 1];
+        }
+        else return Integer.MIN_VALUE;
+    }
+
+    public int put(int key, int value) {
+        if(key == FREE_KEY) {
+            int oldValue = hasFreeKey ? freeKeyValue : Integer.MIN_VALUE;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return oldValue;
+        }
+
+        // Check if the key is already in the table.
+        // If it is, the new value is used.
+        resizeTable();
+        int slot = computeHash(key);
+        int distance = 0;
+
+        while(true) {
+            int slotIndex = slot << 1;
+            int slotKey = slots[slotIndex];
+
+            if(slotKey == key) {
+                // The same key has been found.
+                int oldValue = slots[slotIndex + 1];
+                slots[slotIndex + 1] = value;
+                return oldValue;
+            }
+            else if(slotKey == FREE_KEY) {
+                slots[slotIndex] = key;
+                slots[slotIndex + 1] = value;
+                count++;
+                break;
+            }
+
+            int slotDistance = getProbeDistance(slotKey, slot);
+
+            if(slotDistance < distance) {
+                // The key is not in the table. It takes the place
+                // of the current entry, which is inserted further.
+                int slotValue = slots[slotIndex + 1];
+                slots[slotIndex] = key;
+                slots[slotIndex + 1] = value;
+                count++;
+                distance = Math.max(distance, insertDisplaced(slotKey, slotValue,
+                                                              (slot + 1) & slotMask,
+                                                              slotDistance + 1));
+                break;
+            }
+
+            slot = (slot + 1) & slotMask;
+            distance++;
+        }
+
+        if(distance > MAX_PROBE_DISTANCE) {
+            strengthenHashStrategy();
+        }
+
+        return Integer.MIN_VALUE;
+    }
+
+    public int remove(int key) {
+        if(key == FREE_KEY) {
+            int oldValue = hasFreeKey ? freeKeyValue : Integer.MIN_VALUE;
+            hasFreeKey = false;
+            return oldValue;
+        }
+
+        int slot = findSlot(key);
+
+        if(slot == -1) {
+            return Integer.MIN_VALUE;
+        }
+
+        // Backward-shift deletion: the following entries that are not
+        // in their preferred slot are moved one slot back, which keeps
+        // the probe sequences short and doesn't require tombstones.
+        int oldValue = slots[(slot << 1) + 1];
+        int nextSlot = (slot + 1) & slotMask;
+
+        while(true) {
+            int nextKey = slots[nextSlot << 1];
+
+            if((nextKey == FREE_KEY) ||
+               (getProbeDistance(nextKey, nextSlot) == 0)) {
+                break;
+            }
+
+            slots[slot << 1] = nextKey;
+            slots[(slot << 1) + 1] = slots[(nextSlot << 1) + 1];
+            slot = nextSlot;
+            nextSlot = (nextSlot + 1) & slotMask;
+        }
+
+        slots[slot << 1] = FREE_KEY;
+        slots[(slot << 1) + 1] = 0;
+        count--;
+        return oldValue;
+    }
+
+    public void putAll(int[] keys, int[] values) {
+        putAll(keys, values, 0, keys.length);
+    }
+
+    public void putAll(int[] keys, int[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) ||
+           (length > keys.length - offset) ||
+           (length > values.length - offset)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        // The table is resized at most once,
+        // then the entries are added without any reallocation.
+        ensureCapacity(count + length);
+        int end = offset + length;
+
+        for(int i = offset; i < end; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    public boolean containsKey(int key) {
+        if(key == FREE_KEY) {
+            return hasFreeKey;
+        }
+
+        return findSlot(key) != -1;
+    }
+
+    public boolean containsValue(int value) {
+        if(hasFreeKey && (freeKeyValue == value)) {
+            return true;
+        }
+
+        for(int i = 0; i < slots.length; i += 2) {
+            if((slots[i] != FREE_KEY) && (slots[i + 1] == value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // The entries are iterated by slot: a slot in range [0, getSlotCount())
+    // is used only if isSlotUsed returns true. The last slot is a virtual one,
+    // holding the entry having the FREE_KEY key, if any.
+    public int getSlotCount() {
+        return slotMask + 2;
+    }
+
+    public boolean isSlotUsed(int slot) {
+        if(slot == slotMask + 1) {
+            return hasFreeKey;
+        }
+        else return slots[slot << 1] != FREE_KEY;
+    }
+
+    public int getKeyAt(int slot) {
+        if(slot == slotMask + 1) {
+            return FREE_KEY;
+        }
+        else return slots[slot << 1];
+    }
+
+    public int getValueAt(int slot) {
+        if(slot == slotMask + 1) {
+            return freeKeyValue;
+        }
+        else return slots[(slot << 1) + 1];
+    }
+
+    private int findUsedSlot(int slot) {
+        int slotCount = getSlotCount();
+
+        while((slot < slotCount) && !isSlotUsed(slot)) {
+            slot++;
+        }
+
+        return slot;
+    }
+}
@@ -0,0 +1,877 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+// Compact integer array using Frame Of Reference encoding with exceptions (PFOR).
+// The values are split into sections; each section stores a start value (the base)
+// and the delta between each value and the base, packed using the same number
+// of bits. The few values that are much larger or smaller than the others
+// are stored as exceptions, after the packed deltas.
+// Unlike VariableIntArray, the position of a value is computed directly from
+// its index, so there are no groups to skip when accessing random positions.
+// The layout of a section in the data array, in 64-bit words:
+//   packed:     SECTION_SIZE deltas of bitCount bits (bitCount words)
+//   exceptions: only if the section has exceptions, a word with one bit
+//               set for each value stored as an exception, followed by
+//               the exception values (two 32-bit values in each word)
+public class PackedIntArray extends AbstractList<Integer> {
+    // The number of values stored inside a section.
+    // All deltas of a section have the same number of bits,
+    // so the deltas fill exactly bitCount words.
+    static final int SECTION_SIZE = 64;
+
+    // The default number of values the array can store without resizing.
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    // The number of modified values stored into a cache
+    // before they are written (committed) to the array.
+    private static final int MAX_PENDING_EDITED_VALUES = 32 * 1024;
+
+    // The maximum number of words of a section, when all deltas use 32 bits.
+    // A section with exceptions is used only if it's smaller.
+    private static final int MAX_SECTION_DATA_SIZE = 32;
+
+    // The header of a section contains the number of bits of the deltas
+    // and a flag that is set if the section contains exceptions.
+    private static final int BIT_COUNT_MASK = 0x3F;
+    private static final int EXCEPTIONS_FLAG = 0x40;
+
+    // Contains the offset of the first word of each section.
+    private int[] sectionOffset;
+
+    // Contains the section start value (the smallest value that is not
+    // an exception). The packed deltas are relative to this value.
+    private int[] sectionValue;
+
+    // Contains the section header (bit count and exceptions flag).
+    private byte[] sectionHeader;
+
+    // Stores the packed deltas and the exceptions of all sections.
+    private long[] data;
+
+    // The current position into the data array.
+    private int dataOffset;
+
+    // The total number of values stored in sections.
+    private int valueCount;
+
+    // A section is written to the data array only when
+    // all values have been added to it. Until all values
+    // are available they are stored in this array.
+    private int[] pendingValues;
+
+    // The number of values that still need to be written
+    // as a new section to the data array.
+    private int pendingValueCount;
+
+    // Modified values whose delta requires more bits than the section provides
+    // are stored into a cache and written together once it is full.
+    private IntHashMap pendingEditedValues;
+
+    // The values of the pending section in sorted order,
+    // used to select the start value and the number of bits.
+    private int[] sortedValues;
+
+    public PackedIntArray(int capacity) {
+        // The capacity is the number of values, about 8 bits are assumed for each.
+        capacity = Math.max(capacity, DEFAULT_CAPACITY);
+        data = new long[capacity / 8];
+        sectionOffset = new int[capacity / SECTION_SIZE];
+        sectionValue = new int[capacity / SECTION_SIZE];
+        sectionHeader = new byte[capacity / SECTION_SIZE];
+        pendingValues = new int[SECTION_SIZE];
+        sortedValues = new int[SECTION_SIZE];
+    }
+
+    public PackedIntArray() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PackedIntArray(List<Integer> values) {
+        this(values.size());
+        addValues(values);
+    }
+
+    public PackedIntArray(int[] values) {
+        this(values.length);
+        addValues(values);
+    }
+
+    private int[] resizeArray(int[] values) {
+        int[] newValues = new int[values.length * 2];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        return newValues;
+    }
+
+    private byte[] resizeArray(byte[] values) {
+        byte[] newValues = new byte[values.length * 2];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        return newValues;
+    }
+
+    private long[] resizeArray(long[] values, int minimumCapacity) {
+        long[] newValues = new long[Math.max(values.length * 2, minimumCapacity)];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        return newValues;
+    }
+
+    private int getSectionIndex(int valueIndex) {
+        return valueIndex / SECTION_SIZE;
+    }
+
+    private int getSectionValueIndex(int valueIndex) {
+        return valueIndex % SECTION_SIZE;
+    }
+
+    private int getBitCount(int delta) {
+        // The deltas are unsigned, the values smaller than
+        // the section start value require 32 bits.
+        return 32 - Integer.numberOfLeadingZeros(delta);
+    }
+
+    private void writePendingSection() {
+        int sectionIndex = getSectionIndex(valueCount);
+
+        if(sectionIndex == sectionOffset.length) {
+            sectionOffset = resizeArray(sectionOffset);
+            sectionValue = resizeArray(sectionValue);
+            sectionHeader = resizeArray(sectionHeader);
+        }
+
+        if(dataOffset + MAX_SECTION_DATA_SIZE > data.length) {
+            // Maximum capacity reached, try to resize.
+            data = resizeArray(data, dataOffset + MAX_SECTION_DATA_SIZE);
+        }
+
+        sectionOffset[sectionIndex] = dataOffset;
+        dataOffset = encodeSection(sectionIndex, pendingValues, data, dataOffset);
+        pendingValueCount = 0;
+        valueCount += SECTION_SIZE;
+    }
+
+    private int encodeSection(int sectionIndex, int[] values, long[] destination,
+                              int destinationOffset) {
+        // Writes the section to destination and sets its start value and header.
+        // Returns the offset after the section.
+        // Select the bit count for which the section is the smallest:
+        // for each bit count, the start value is the one for which most values
+        // fit in the range [startValue, startValue + 2^bitCount), found by
+        // sliding the range over the sorted values. The other values are stored
+        // as exceptions, which take 32 bits each, plus a word marking them.
+        // If two bit counts produce sections of the same size,
+        // the one with fewer exceptions is used.
+        System.arraycopy(values, 0, sortedValues, 0, SECTION_SIZE);
+        Arrays.sort(sortedValues);
+
+        int startValue = sortedValues[0];
+        int bitCount = 32;
+        int bestSize = 32;
+
+        for(int i = 31; i >= 0; i--) {
+            int rangeStart = 0;
+            int rangeValue = sortedValues[0];
+            int maxRangeCount = 0;
+
+            for(int k = 0; k < SECTION_SIZE; k++) {
+                while((((long)sortedValues[k] - sortedValues[rangeStart]) >>> i) != 0) {
+                    rangeStart++;
+                }
+
+                if(k - rangeStart + 1 > maxRangeCount) {
+                    maxRangeCount = k - rangeStart + 1;
+                    rangeValue = sortedValues[rangeStart];
+                }
+            }
+
+            int exceptionCount = SECTION_SIZE - maxRangeCount;
+            int size = i;
+
+            if(exceptionCount > 0) {
+                size += 1 + (exceptionCount + 1) / 2;
+            }
+
+            if(size < bestSize) {
+                bestSize = size;
+                bitCount = i;
+                startValue = rangeValue;
+            }
+        }
+
+        int offset = destinationOffset;
+        long exceptionMask = 0;
+        long word = 0;
+        int wordBits = 0;
+
+        for(int i = 0; i < SECTION_SIZE; i++) {
+            int delta = values[i] - startValue;
+
+            if(getBitCount(delta) > bitCount) {
+                // The location of the exception is left 0.
+                exceptionMask |= 1L << i;
+                delta = 0;
+            }
+
+            // The delta may be split between two words.
+            long bits = (long)delta & 0xFFFFFFFFL;
+            word |= bits << wordBits;
+            wordBits += bitCount;
+
+            if(wordBits >= 64) {
+                destination[offset] = word;
+                offset++;
+                wordBits -= 64;
+                word = wordBits > 0 ? bits >>> (bitCount - wordBits) : 0;
+            }
+        }
+
+        int header = bitCount;
+
+        if(exceptionMask != 0) {
+            header |= EXCEPTIONS_FLAG;
+            offset = writeExceptions(exceptionMask, values, destination, offset);
+        }
+
+        sectionValue[sectionIndex] = startValue;
+        sectionHeader[sectionIndex] = (byte)header;
+        return offset;
+    }
+
+    private int writeExceptions(long exceptionMask, int[] values,
+                                long[] destination, int offset) {
+        destination[offset] = exceptionMask;
+        offset++;
+        long remainingMask = exceptionMask;
+        int exceptionCount = 0;
+        long word = 0;
+
+        while(remainingMask != 0) {
+            // Two exceptions are stored in each word, the first one in the low half.
+            int index = Long.numberOfTrailingZeros(remainingMask);
+            long value = (long)values[index] & 0xFFFFFFFFL;
+            remainingMask &= remainingMask - 1;
+
+            if((exceptionCount & 1) == 0) {
+                word = value;
+            }
+            else {
+                destination[offset] = word | (value << 32);
+                offset++;
+            }
+
+            exceptionCount++;
+        }
+
+        if((exceptionCount & 1) != 0) {
+            destination[offset] = word;
+            offset++;
+        }
+
+        return offset;
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        if(value == null) {
+            throw new NullPointerException("Value should not be null!");
+        }
+
+        addValue(value);
+        return true;
+    }
+
+    public void addValue(int value) {
+        // Values are written to the data array only as a complete section.
+        // This is required in order to compute the number of bits.
+        pendingValues[pendingValueCount] = value;
+        pendingValueCount++;
+
+        if(pendingValueCount == SECTION_SIZE) {
+            writePendingSection();
+        }
+    }
+
+    public void addValues(List<Integer> values) {
+        for(int value : values) {
+            addValue(value);
+        }
+    }
+
+    public void addValues(int[] values) {
+        addValues(values, 0, values.length);
+    }
+
+    public void addValues(int[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) || (offset + length > values.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        int end = offset + length;
+
+        while(offset < end) {
+            int copyCount = Math.min(SECTION_SIZE - pendingValueCount, end - offset);
+            System.arraycopy(values, offset, pendingValues, pendingValueCount, copyCount);
+            pendingValueCount += copyCount;
+            offset += copyCount;
+
+            if(pendingValueCount == SECTION_SIZE) {
+                writePendingSection();
+            }
+        }
+    }
+
+    private int readDelta(int sectionOffset, int bitCount, int valueIndex) {
+        // The position of the delta is computed from its index.
+        // A delta that doesn't fit in the rest of the word continues in the next one.
+        if(bitCount == 0) {
+            return 0;
+        }
+
+        int bitOffset = valueIndex * bitCount;
+        int wordOffset = sectionOffset + (bitOffset >>> 6);
+        int wordBits = bitOffset & 63;
+        long bits = data[wordOffset] >>> wordBits;
+
+        if(wordBits + bitCount > 64) {
+            bits |= data[wordOffset + 1] << (64 - wordBits);
+        }
+
+        return (int)(bits & ((1L << bitCount) - 1));
+    }
+
+    private void writeDelta(int sectionOffset, int bitCount, int valueIndex, int delta) {
+        if(bitCount == 0) {
+            return;
+        }
+
+        long mask = (1L << bitCount) - 1;
+        long bits = (long)delta & mask;
+        int bitOffset = valueIndex * bitCount;
+        int wordOffset = sectionOffset + (bitOffset >>> 6);
+        int wordBits = bitOffset & 63;
+        data[wordOffset] = (data[wordOffset] & ~(mask << wordBits)) | (bits << wordBits);
+
+        if(wordBits + bitCount > 64) {
+            int shift = 64 - wordBits;
+            data[wordOffset + 1] = (data[wordOffset + 1] & ~(mask >>> shift)) | (bits >>> shift);
+        }
+    }
+
+    private int getExceptionWordOffset(int sectionOffset, int bitCount,
+                                       long exceptionMask, int valueIndex) {
+        // Returns the offset of the word containing the exception,
+        // its position is given by the number of exceptions before it.
+        int exceptionIndex = Long.bitCount(exceptionMask & ((1L << valueIndex) - 1));
+        return sectionOffset + bitCount + 1 + (exceptionIndex >>> 1);
+    }
+
+    private boolean isExceptionInFirstHalf(long exceptionMask, int valueIndex) {
+        return (Long.bitCount(exceptionMask & ((1L << valueIndex) - 1)) & 1) == 0;
+    }
+
+    private int readException(int sectionOffset, int bitCount,
+                              long exceptionMask, int valueIndex) {
+        long word = data[getExceptionWordOffset(sectionOffset, bitCount,
+                                                exceptionMask, valueIndex)];
+        return isExceptionInFirstHalf(exceptionMask, valueIndex) ? (int)word : (int)(word >>> 32);
+    }
+
+    private void writeException(int sectionOffset, int bitCount,
+                                long exceptionMask, int valueIndex, int value) {
+        int wordOffset = getExceptionWordOffset(sectionOffset, bitCount,
+                                                exceptionMask, valueIndex);
+        long bits = (long)value & 0xFFFFFFFFL;
+
+        if(isExceptionInFirstHalf(exceptionMask, valueIndex)) {
+            data[wordOffset] = (data[wordOffset] & 0xFFFFFFFF00000000L) | bits;
+        }
+        else data[wordOffset] = (data[wordOffset] & 0xFFFFFFFFL) | (bits << 32);
+    }
+
+    private long getExceptionMask(int sectionIndex) {
+        int header = sectionHeader[sectionIndex];
+
+        if((header & EXCEPTIONS_FLAG) == 0) {
+            return 0;
+        }
+
+        return data[sectionOffset[sectionIndex] + (header & BIT_COUNT_MASK)];
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getValue(index);
+    }
+
+    public int getValue(int index) {
+        if(index < 0) {
+            throw new ArrayIndexOutOfBoundsException("Invalid value index!");
+        }
+
+        // Check if the value has been modified, but has not yet been written
+        // to the array. The edited value is always the last version of the value.
+        if(hasPendingEditedValues()) {
+            int value = pendingEditedValues.get(index);
+
+            if(value != Integer.MIN_VALUE) {
+                return value;
+            }
+        }
+
+        if(index >= valueCount) {
+            if((index - valueCount) < pendingValueCount) {
+                return pendingValues[index - valueCount];
+            }
+
+            throw new ArrayIndexOutOfBoundsException("Invalid value index!");
+        }
+
+        int sectionIndex = getSectionIndex(index);
+        int valueIndex = getSectionValueIndex(index);
+        int offset = sectionOffset[sectionIndex];
+        int bitCount = sectionHeader[sectionIndex] & BIT_COUNT_MASK;
+        long exceptionMask = getExceptionMask(sectionIndex);
+
+        if((exceptionMask & (1L << valueIndex)) != 0) {
+            return readException(offset, bitCount, exceptionMask, valueIndex);
+        }
+
+        return sectionValue[sectionIndex] + readDelta(offset, bitCount, valueIndex);
+    }
+
+    private void decodeSection(int sectionIndex, int[] destination, int destinationOffset) {
+        // Decodes all values of the section, the deltas are read in order
+        // from the packed words, then the exceptions replace their locations.
+        int offset = sectionOffset[sectionIndex];
+        int startValue = sectionValue[sectionIndex];
+        int bitCount = sectionHeader[sectionIndex] & BIT_COUNT_MASK;
+
+        if(bitCount == 0) {
+            for(int i = 0; i < SECTION_SIZE; i++) {
+                destination[destinationOffset + i] = startValue;
+            }
+        }
+        else {
+            long mask = (1L << bitCount) - 1;
+            int wordOffset = offset;
+            int wordBits = 0;
+
+            for(int i = 0; i < SECTION_SIZE; i++) {
+                long bits = data[wordOffset] >>> wordBits;
+
+                if(wordBits + bitCount > 64) {
+                    bits |= data[wordOffset + 1] << (64 - wordBits);
+                }
+
+                destination[destinationOffset + i] = startValue + (int)(bits & mask);
+                wordBits += bitCount;
+
+                if(wordBits >= 64) {
+                    wordBits -= 64;
+                    wordOffset++;
+                }
+            }
+        }
+
+        long exceptionMask = getExceptionMask(sectionIndex);
+        int exceptionOffset = offset + bitCount + 1;
+        int exceptionCount = 0;
+
+        while(exceptionMask != 0) {
+            int index = Long.numberOfTrailingZeros(exceptionMask);
+            long word = data[exceptionOffset + (exceptionCount >>> 1)];
+            destination[destinationOffset + index] =
+                (exceptionCount & 1) == 0 ? (int)word : (int)(word >>> 32);
+            exceptionMask &= exceptionMask - 1;
+            exceptionCount++;
+        }
+    }
+
+    public void get(int index, int[] destination, int offset, int length) {
+        // Copies length consecutive values starting with the one at index.
+        // The complete sections are decoded directly into the destination.
+        if((index < 0) || (length < 0) || ((long)index + length > size()) ||
+           (offset < 0) || ((long)offset + length > destination.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        writePendingEditedValues();
+
+        int end = index + length;
+        int sectionEnd = Math.min(end, valueCount);
+        int[] sectionValues = null;
+
+        for(int sectionStart = index - getSectionValueIndex(index);
+            sectionStart < sectionEnd; sectionStart += SECTION_SIZE) {
+            int sectionIndex = getSectionIndex(sectionStart);
+
+            if((sectionStart >= index) && (sectionStart + SECTION_SIZE <= sectionEnd)) {
+                decodeSection(sectionIndex, destination, offset + (sectionStart - index));
+            }
+            else {
+                // The first or the last section is only partially copied.
+                if(sectionValues == null) {
+                    sectionValues = new int[SECTION_SIZE];
+                }
+
+                decodeSection(sectionIndex, sectionValues, 0);
+                int copyStart = Math.max(index, sectionStart);
+                int copyEnd = Math.min(sectionEnd, sectionStart + SECTION_SIZE);
+                System.arraycopy(sectionValues, copyStart - sectionStart, destination,
+                                 offset + (copyStart - index), copyEnd - copyStart);
+            }
+        }
+
+        // Copy the values that are not written yet to the data array.
+        for(int i = Math.max(index, valueCount); i < end; i++) {
+            destination[offset + (i - index)] = pendingValues[i - valueCount];
+        }
+    }
+
+    private class ValueCursor implements IntCursor {
+        private int[] values = new int[SECTION_SIZE];
+        private int nextSection;         // The index of the next section to decode.
+        private int sectionIndex = -1;   // The index of the current value in the decoded section.
+        private int sectionCount;        // The number of values in the decoded section.
+
+        ValueCursor() {
+            // The edited values are written first,
+            // so that all values are found in the sections.
+            writePendingEditedValues();
+        }
+
+        @Override
+        public boolean advance() {
+            sectionIndex++;
+
+            if(sectionIndex < sectionCount) {
+                return true;
+            }
+
+            // The values that were not written yet form the last section.
+            int nextIndex = nextSection * SECTION_SIZE;
+
+            if(nextIndex < valueCount) {
+                decodeSection(nextSection, values, 0);
+                sectionCount = SECTION_SIZE;
+            }
+            else if(nextIndex == valueCount) {
+                System.arraycopy(pendingValues, 0, values, 0, pendingValueCount);
+                sectionCount = pendingValueCount;
+            }
+            else sectionCount = 0;
+
+            nextSection++;
+            sectionIndex = 0;
+            return sectionCount > 0;
+        }
+
+        boolean hasNext() {
+            return (sectionIndex + 1 < sectionCount) ||
+                   (nextSection * SECTION_SIZE < valueCount) ||
+                   ((nextSection * SECTION_SIZE == valueCount) && (pendingValueCount > 0));
+        }
+
+        @Override
+        public int value() {
+            return values[sectionIndex];
+        }
+
+        @Override
+        public void reset() {
+            nextSection = 0;
+            sectionIndex = -1;
+            sectionCount = 0;
+        }
+    }
+
+    private class ValueIterator implements Iterator<Integer> {
+        private ValueCursor cursor = new ValueCursor();
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public Integer next() {
+            if(!cursor.advance()) {
+                throw new NoSuchElementException();
+            }
+
+            return cursor.value();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public IntCursor cursor() {
+        // The cursor decodes the values one section at a time.
+        return new ValueCursor();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new ValueIterator();
+    }
+
+    public void forEachValue(IntConsumer consumer) {
+        IntCursor cursor = cursor();
+
+        while(cursor.advance()) {
+            consumer.accept(cursor.value());
+        }
+    }
+
+    private void addPendingEditedValue(int index, int value) {
+        // The value could not be modified directly, write it
+        // to the data array later, together with other modified values.
+        if(pendingEditedValues == null) {
+            pendingEditedValues = new IntHashMap();
+        }
+
+        pendingEditedValues.put(index, value);
+
+        if(pendingEditedValues.size() >= MAX_PENDING_EDITED_VALUES) {
+            writePendingEditedValues();
+        }
+    }
+
+    private boolean hasPendingEditedValues() {
+        return (pendingEditedValues != null) &&
+               (pendingEditedValues.size() > 0);
+    }
+
+    private void writePendingEditedValues() {
+        if(!hasPendingEditedValues()) {
+            return;
+        }
+
+        // Only the sections containing edited values are decoded and
+        // encoded again, into a separate buffer. The data between them
+        // is then moved once to its new position and the new sections
+        // are copied in the space that remains.
+        int editCount = pendingEditedValues.size();
+        int[] editIndices = new int[editCount];
+
+        for(int i = 0; i < editCount; i++) {
+            editIndices[i] = pendingEditedValues.getKeyAt(i);
+        }
+
+        Arrays.sort(editIndices);
+
+        int[] sections = new int[editCount];
+        int[] sectionStarts = new int[editCount];
+        int[] sectionEnds = new int[editCount];
+        int[] encodedOffsets = new int[editCount + 1];
+        long[] encoded = new long[MAX_SECTION_DATA_SIZE];
+        int[] values = new int[SECTION_SIZE];
+        int dataSectionCount = getSectionIndex(valueCount);
+        int sectionCount = 0;
+        int editIndex = 0;
+
+        while(editIndex < editCount) {
+            int sectionIndex = getSectionIndex(editIndices[editIndex]);
+            int firstIndex = sectionIndex * SECTION_SIZE;
+            decodeSection(sectionIndex, values, 0);
+
+            while((editIndex < editCount) &&
+                  (getSectionIndex(editIndices[editIndex]) == sectionIndex)) {
+                int index = editIndices[editIndex];
+                values[index - firstIndex] = pendingEditedValues.get(index);
+                editIndex++;
+            }
+
+            if(encodedOffsets[sectionCount] + MAX_SECTION_DATA_SIZE > encoded.length) {
+                encoded = resizeArray(encoded, encodedOffsets[sectionCount] + MAX_SECTION_DATA_SIZE);
+            }
+
+            sections[sectionCount] = sectionIndex;
+            sectionStarts[sectionCount] = sectionOffset[sectionIndex];
+            sectionEnds[sectionCount] = sectionIndex + 1 < dataSectionCount ?
+                                        sectionOffset[sectionIndex + 1] : dataOffset;
+            encodedOffsets[sectionCount + 1] = encodeSection(sectionIndex, values, encoded,
+                                                             encodedOffsets[sectionCount]);
+            sectionCount++;
+        }
+
+        // The data following a section moves by the size difference
+        // of all sections before it. The data moving to lower offsets
+        // is moved first, in order, then the one moving to higher offsets,
+        // in reverse order, so no data is overwritten before it's moved.
+        int[] shifts = new int[sectionCount];
+        int shift = 0;
+
+        for(int i = 0; i < sectionCount; i++) {
+            shift += (encodedOffsets[i + 1] - encodedOffsets[i]) -
+                     (sectionEnds[i] - sectionStarts[i]);
+            shifts[i] = shift;
+        }
+
+        if(dataOffset + shift > data.length) {
+            data = resizeArray(data, dataOffset + shift);
+        }
+
+        for(int i = 0; i < sectionCount; i++) {
+            if(shifts[i] < 0) {
+                moveSectionsAfter(i, sectionEnds, sectionStarts, sectionCount, shifts[i]);
+            }
+        }
+
+        for(int i = sectionCount - 1; i >= 0; i--) {
+            if(shifts[i] > 0) {
+                moveSectionsAfter(i, sectionEnds, sectionStarts, sectionCount, shifts[i]);
+            }
+        }
+
+        for(int i = 0; i < sectionCount; i++) {
+            int previousShift = i > 0 ? shifts[i - 1] : 0;
+            System.arraycopy(encoded, encodedOffsets[i], data, sectionStarts[i] + previousShift,
+                             encodedOffsets[i + 1] - encodedOffsets[i]);
+        }
+
+        // Update the offsets of the sections that moved.
+        int nextSection = 0;
+        shift = 0;
+
+        for(int i = sections[0]; i < dataSectionCount; i++) {
+            sectionOffset[i] += shift;
+
+            if((nextSection < sectionCount) && (sections[nextSection] == i)) {
+                shift = shifts[nextSection];
+                nextSection++;
+            }
+        }
+
+        dataOffset += shift;
+        pendingEditedValues.clear();
+    }
+
+    private void moveSectionsAfter(int index, int[] sectionEnds, int[] sectionStarts,
+                                   int sectionCount, int shift) {
+        // Moves the data between the encoded section and the next one.
+        int start = sectionEnds[index];
+        int end = index + 1 < sectionCount ? sectionStarts[index + 1] : dataOffset;
+        System.arraycopy(data, start, data, start + shift, end - start);
+    }
+
+    @Override
+    public Integer set(int index, Integer value) {
+        if(value == null) {
+            throw new NullPointerException("Value should not be null!");
+        }
+
+        setValue(index, value);
+        return null; // Don't return last value.
+    }
+
+    public void setValue(int index, int value) {
+        if(index == (valueCount + pendingValueCount)) {
+            // Just append after the last inserted value.
+            addValue(value);
+        }
+        else if((index < 0) || (index > valueCount + pendingValueCount)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid value index!");
+        }
+        else if(isPendingEditedValue(index)) {
+            // The value will be modified when the pending values are written.
+            addPendingEditedValue(index, value);
+        }
+        else if(index >= valueCount) {
+            // The value is part of the current incomplete section,
+            // modify it directly, before it is written to the data array.
+            pendingValues[index - valueCount] = value;
+        }
+        else {
+            // The value overwrites an existing value. If it's an exception or if
+            // its delta fits in the bits of the section it is replaced directly,
+            // otherwise the section must be encoded again using more bits.
+            int sectionIndex = getSectionIndex(index);
+            int valueIndex = getSectionValueIndex(index);
+            int offset = sectionOffset[sectionIndex];
+            int bitCount = sectionHeader[sectionIndex] & BIT_COUNT_MASK;
+            long exceptionMask = getExceptionMask(sectionIndex);
+            int delta = value - sectionValue[sectionIndex];
+
+            if((exceptionMask & (1L << valueIndex)) != 0) {
+                writeException(offset, bitCount, exceptionMask, valueIndex, value);
+            }
+            else if(getBitCount(delta) <= bitCount) {
+                writeDelta(offset, bitCount, valueIndex, delta);
+            }
+            else addPendingEditedValue(index, value);
+        }
+    }
+
+    private boolean isPendingEditedValue(int index) {
+        return hasPendingEditedValues() &&
+               pendingEditedValues.containsKey(index);
+    }
+
+    @Override
+    public int size() {
+        return valueCount + pendingValueCount;
+    }
+
+    public PackedIntArray trim() {
+        writePendingEditedValues();
+        int sectionCount = getSectionIndex(valueCount) + 1;
+
+        if(dataOffset < data.length) {
+            long[] newData = new long[dataOffset];
+            System.arraycopy(data, 0, newData, 0, dataOffset);
+            data = newData;
+        }
+
+        if(sectionCount < sectionOffset.length) {
+            int[] newSectionOffset = new int[sectionCount];
+            int[] newSectionValue = new int[sectionCount];
+            byte[] newSectionHeader = new byte[sectionCount];
+            System.arraycopy(sectionOffset, 0, newSectionOffset, 0, sectionCount);
+            System.arraycopy(sectionValue, 0, newSectionValue, 0, sectionCount);
+            System.arraycopy(sectionHeader, 0, newSectionHeader, 0, sectionCount);
+            sectionOffset = newSectionOffset;
+            sectionValue = newSectionValue;
+            sectionHeader = newSectionHeader;
+        }
+
+        return this;
+    }
+}
@@ -0,0 +1,209 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+
+// Builds a minimal perfect hash function for a set of distinct keys using
+// the "Compress, Hash and Displace" (CHD) algorithm: the keys are split into
+// small buckets, then for each bucket a seed is searched so that the keys
+// of the bucket are mapped to slots not used by the previous buckets.
+// The result is a table having exactly one slot for each key, and a lookup
+// computes two hash codes and reads the seed of the bucket.
+final class PerfectHashBuilder {
+    // The average number of keys in a bucket. Larger buckets need
+    // less memory for the seeds, but finding the seeds takes longer.
+    static final int KEYS_PER_BUCKET = 3;
+
+    // The number of seeds tried for a bucket before giving up. Most buckets
+    // need only a few seeds, the last ones, placed in an almost full table,
+    // need many more (the buckets having a single key need none).
+    private static final int MAX_SEED = 1 << 24;
+
+    private PerfectHashBuilder() {}
+
+    static int getBucketCount(int keyCount) {
+        return Math.max(1, (keyCount + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+    }
+
+    static int reduce(int hash, int range) {
+        // Maps the hash code to [0, range) using a multiplication
+        // instead of the much slower division (Lemire's method).
+        return (int)(((hash & 0xFFFFFFFFL) * range) >>> 32);
+    }
+
+    static int getBucket(int key, int bucketCount) {
+        return reduce(MurmurIntHashStrategy.mix(key), bucketCount);
+    }
+
+    static int getSlot(int key, int seed, int slotCount) {
+        // The seed must change the slots of all keys, so it is
+        // mixed together with the key instead of being added to the hash code.
+        return reduce(MurmurIntHashStrategy.mix(((long)seed << 32) |
+                                                ((long)key & 0xFFFFFFFFL)), slotCount);
+    }
+
+    static int findSlot(int key, int[] seeds, int slotCount) {
+        // A negative seed is the slot of the single key of the bucket.
+        int seed = seeds[getBucket(key, seeds.length)];
+        return seed < 0 ? -seed - 1 : getSlot(key, seed, slotCount);
+    }
+
+    static int[] build(int[] keys, int count, int[] seeds) {
+        // Computes the seed of each bucket and returns for each slot
+        // the index of the key that is stored in it.
+        int bucketCount = seeds.length;
+        int[] bucketStart = new int[bucketCount + 1];
+        int[] keyBuckets = new int[count];
+        int maxBucketSize = 0;
+
+        for(int i = 0; i < count; i++) {
+            keyBuckets[i] = getBucket(keys[i], bucketCount);
+            bucketStart[keyBuckets[i] + 1]++;
+        }
+
+        for(int i = 0; i < bucketCount; i++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStart[i + 1]);
+            bucketStart[i + 1] += bucketStart[i];
+        }
+
+        // Group the keys by bucket (counting sort).
+        int[] bucketKeys = new int[count];
+        int[] bucketEnd = new int[bucketCount];
+        System.arraycopy(bucketStart, 0, bucketEnd, 0, bucketCount);
+
+        for(int i = 0; i < count; i++) {
+            bucketKeys[bucketEnd[keyBuckets[i]]++] = i;
+        }
+
+        // Order the buckets by decreasing size: the large buckets are placed
+        // while most slots are free, when a seed is found quickly.
+        int[] sizeStart = new int[maxBucketSize + 2];
+
+        for(int i = 0; i < bucketCount; i++) {
+            int size = bucketStart[i + 1] - bucketStart[i];
+            sizeStart[maxBucketSize - size + 1]++;
+        }
+
+        for(int i = 0; i <= maxBucketSize; i++) {
+            sizeStart[i + 1] += sizeStart[i];
+        }
+
+        int[] bucketOrder = new int[bucketCount];
+
+        for(int i = 0; i < bucketCount; i++) {
+            int size = bucketStart[i + 1] - bucketStart[i];
+            bucketOrder[sizeStart[maxBucketSize - size]++] = i;
+        }
+
+        int[] slotKeys = new int[count];
+        // The used slots are marked in a bit set, which is small enough
+        // to remain in the CPU cache while the seeds are searched.
+        long[] slotUsed = new long[(count + 63) >>> 6];
+        int[] bucketSlots = new int[maxBucketSize];
+        int nextFreeSlot = 0;
+
+        for(int i = 0; i < bucketCount; i++) {
+            int bucket = bucketOrder[i];
+            int start = bucketStart[bucket];
+            int size = bucketStart[bucket + 1] - start;
+
+            if(size == 0) {
+                break; // Only empty buckets follow.
+            }
+            else if(size == 1) {
+                // No seed is needed, the bucket points directly to a free slot.
+                while(isSlotUsed(slotUsed, nextFreeSlot)) {
+                    nextFreeSlot++;
+                }
+
+                markSlotUsed(slotUsed, nextFreeSlot);
+                slotKeys[nextFreeSlot] = bucketKeys[start];
+                seeds[bucket] = -nextFreeSlot - 1;
+                continue;
+            }
+
+            seeds[bucket] = findSeed(keys, bucketKeys, start, size,
+                                     count, slotUsed, bucketSlots);
+
+            for(int j = 0; j < size; j++) {
+                markSlotUsed(slotUsed, bucketSlots[j]);
+                slotKeys[bucketSlots[j]] = bucketKeys[start + j];
+            }
+        }
+
+        return slotKeys;
+    }
+
+    private static boolean isSlotUsed(long[] slotUsed, int slot) {
+        return (slotUsed[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private static void markSlotUsed(long[] slotUsed, int slot) {
+        slotUsed[slot >>> 6] |= 1L << slot;
+    }
+
+    private static int findSeed(int[] keys, int[] bucketKeys, int start, int size,
+                                int slotCount, long[] slotUsed, int[] bucketSlots) {
+        for(int seed = 0; seed < MAX_SEED; seed++) {
+            boolean found = true;
+
+            for(int i = 0; i < size; i++) {
+                int slot = getSlot(keys[bucketKeys[start + i]], seed, slotCount);
+
+                // The slot must be free and not used
+                // by another key of the same bucket.
+                if(isSlotUsed(slotUsed, slot)) {
+                    found = false;
+                    break;
+                }
+
+                for(int j = 0; j < i; j++) {
+                    if(bucketSlots[j] == slot) {
+                        found = false;
+                        break;
+                    }
+                }
+
+                if(!found) {
+                    break;
+                }
+
+                bucketSlots[i] = slot;
+            }
+
+            if(found) {
+                return seed;
+            }
+        }
+
+        throw new IllegalStateException("Perfect hash function not found!");
+    }
+}
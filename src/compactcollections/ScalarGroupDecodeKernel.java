@@ -0,0 +1,77 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+// Decodes a group without branching on the size of the values: each value
+// is read as a 4 byte little-endian integer, then the bytes that belong
+// to the following values are removed by shifting it left and back right,
+// which also extends the sign of the 1 byte values.
+final class ScalarGroupDecodeKernel extends GroupDecodeKernel {
+    private static final int GROUP_SIZE = VariableIntArray.GROUP_SIZE;
+
+    private static final VarHandle INT_VIEW =
+        MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // The shift amount of each value of a group, for each header value:
+    // 24 for the 1 byte values, 0 for the 4 byte ones.
+    private static final int[][] groupValueShift;
+
+    static {
+        VariableIntArray.initializeLookupTables();
+        groupValueShift = new int[1 << GROUP_SIZE][GROUP_SIZE];
+
+        for(int i = 0; i < groupValueShift.length; i++) {
+            for(int k = 0; k < GROUP_SIZE; k++) {
+                groupValueShift[i][k] = 32 - 8 * VariableIntArray.groupValueSize[i][k];
+            }
+        }
+    }
+
+    @Override
+    int decodeGroup(byte[] data, int groupOffset, int sectionStartValue,
+                    int[] destination, int destinationOffset) {
+        int header = data[groupOffset] & 0xFF;
+        int[] valueOffsets = VariableIntArray.groupValueOffset[header];
+        int[] valueShifts = groupValueShift[header];
+
+        for(int i = 0; i < GROUP_SIZE; i++) {
+            int value = (int)INT_VIEW.get(data, groupOffset + valueOffsets[i]);
+            destination[destinationOffset + i] = sectionStartValue +
+                ((value << valueShifts[i]) >> valueShifts[i]);
+        }
+
+        return groupOffset + VariableIntArray.groupSize[header];
+    }
+}
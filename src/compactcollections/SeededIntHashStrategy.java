@@ -0,0 +1,73 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import java.util.Random;
+
+public class SeededIntHashStrategy implements IntHashStrategy {
+    private static final long serialVersionUID = 1L;
+
+    private static final Random seedGenerator = new Random();
+
+    // The seed is combined with the key before mixing, so that the keys
+    // that collide are different for each seed. Makes it very unlikely
+    // that a fixed set of keys always ends up in the same bucket.
+    private final int seed;
+
+    public SeededIntHashStrategy(int seed) {
+        this.seed = seed;
+    }
+
+    public SeededIntHashStrategy() {
+        this(seedGenerator.nextInt());
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    @Override
+    public int hash(int key) {
+        return MurmurIntHashStrategy.mix(key ^ seed);
+    }
+
+    @Override
+    public int hash(int firstKey, int secondKey) {
+        long pair = ((long)secondKey << 32) | ((long)firstKey & 0xFFFFFFFFL);
+        return MurmurIntHashStrategy.mix(pair ^ ((long)seed * 0x9E3779B97F4A7C15L));
+    }
+
+    @Override
+    public IntHashStrategy getStrongerStrategy() {
+        // Mixing can't be improved further, use a new seed instead.
+        return new SeededIntHashStrategy();
+    }
+}
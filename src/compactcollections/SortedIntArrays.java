@@ -0,0 +1,220 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+
+// Set operations over sorted VariableIntArray instances (created with sortedValues).
+// The arrays are not decoded completely: the values are read in order using
+// cursors that skip over entire sections by galloping over the section start values,
+// so only the sections that can contain a value of the result are decoded.
+// The results are new sorted arrays that contain each value only once.
+public final class SortedIntArrays {
+    private SortedIntArrays() {}
+
+    private static VariableIntArray createResult(VariableIntArray array) {
+        return new VariableIntArray(0, null, array.getEncoding(), true);
+    }
+
+    private static void addDistinctValue(VariableIntArray result, int value) {
+        // The arrays may contain the same value multiple times.
+        int size = result.size();
+
+        if((size == 0) || (result.getValue(size - 1) != value)) {
+            result.addValue(value);
+        }
+    }
+
+    private static boolean skipPast(VariableIntArray.SortedCursor cursor, int value) {
+        // Moves to the first value larger than the specified one.
+        if(value == Integer.MAX_VALUE) {
+            return false;
+        }
+
+        return cursor.skipTo(value + 1);
+    }
+
+    public static VariableIntArray intersect(VariableIntArray first, VariableIntArray second) {
+        // Each cursor skips to the current value of the other one,
+        // until both have the same value.
+        VariableIntArray result = createResult(first);
+        VariableIntArray.SortedCursor firstCursor = first.new SortedCursor();
+        VariableIntArray.SortedCursor secondCursor = second.new SortedCursor();
+        boolean found = firstCursor.advance() && secondCursor.advance();
+
+        while(found) {
+            int firstValue = firstCursor.value();
+            int secondValue = secondCursor.value();
+
+            if(firstValue < secondValue) {
+                found = firstCursor.skipTo(secondValue);
+            }
+            else if(secondValue < firstValue) {
+                found = secondCursor.skipTo(firstValue);
+            }
+            else {
+                result.addValue(firstValue);
+                found = skipPast(firstCursor, firstValue) && skipPast(secondCursor, firstValue);
+            }
+        }
+
+        return result;
+    }
+
+    public static VariableIntArray intersect(VariableIntArray... arrays) {
+        // All cursors skip to the largest current value; when they all
+        // reach the same value it is part of the result. The smallest arrays
+        // are moved first, they usually produce the largest skips.
+        if(arrays.length == 0) {
+            throw new IllegalArgumentException("No array to intersect!");
+        }
+
+        VariableIntArray[] sortedArrays = arrays.clone();
+
+        for(int i = 1; i < sortedArrays.length; i++) {
+            VariableIntArray array = sortedArrays[i];
+            int k = i - 1;
+
+            while((k >= 0) && (sortedArrays[k].size() > array.size())) {
+                sortedArrays[k + 1] = sortedArrays[k];
+                k--;
+            }
+
+            sortedArrays[k + 1] = array;
+        }
+
+        VariableIntArray result = createResult(sortedArrays[0]);
+        VariableIntArray.SortedCursor[] cursors = new VariableIntArray.SortedCursor[sortedArrays.length];
+
+        for(int i = 0; i < cursors.length; i++) {
+            cursors[i] = sortedArrays[i].new SortedCursor();
+
+            if(!cursors[i].advance()) {
+                return result;
+            }
+        }
+
+        int candidate = cursors[0].value();
+        int matchCount = 0; // The number of cursors positioned at the candidate.
+        int index = 0;
+
+        while(true) {
+            if(!cursors[index].skipTo(candidate)) {
+                return result;
+            }
+
+            int value = cursors[index].value();
+
+            if(value != candidate) {
+                // A larger value was found, the other
+                // cursors must skip to it too.
+                candidate = value;
+                matchCount = 0;
+            }
+
+            matchCount++;
+
+            if(matchCount == cursors.length) {
+                result.addValue(candidate);
+
+                if(candidate == Integer.MAX_VALUE) {
+                    return result;
+                }
+
+                candidate++;
+                matchCount = 0;
+            }
+
+            index = (index + 1) % cursors.length;
+        }
+    }
+
+    public static VariableIntArray union(VariableIntArray first, VariableIntArray second) {
+        // All values are part of the result, so both arrays
+        // are read completely and the values are merged.
+        VariableIntArray result = createResult(first);
+        VariableIntArray.SortedCursor firstCursor = first.new SortedCursor();
+        VariableIntArray.SortedCursor secondCursor = second.new SortedCursor();
+        boolean hasFirst = firstCursor.advance();
+        boolean hasSecond = secondCursor.advance();
+
+        while(hasFirst && hasSecond) {
+            int firstValue = firstCursor.value();
+            int secondValue = secondCursor.value();
+
+            if(firstValue <= secondValue) {
+                addDistinctValue(result, firstValue);
+                hasFirst = firstCursor.advance();
+            }
+            else {
+                addDistinctValue(result, secondValue);
+                hasSecond = secondCursor.advance();
+            }
+        }
+
+        while(hasFirst) {
+            addDistinctValue(result, firstCursor.value());
+            hasFirst = firstCursor.advance();
+        }
+
+        while(hasSecond) {
+            addDistinctValue(result, secondCursor.value());
+            hasSecond = secondCursor.advance();
+        }
+
+        return result;
+    }
+
+    public static VariableIntArray difference(VariableIntArray first, VariableIntArray second) {
+        // Returns the values of the first array that are not found
+        // in the second one. The second array skips to each value.
+        VariableIntArray result = createResult(first);
+        VariableIntArray.SortedCursor firstCursor = first.new SortedCursor();
+        VariableIntArray.SortedCursor secondCursor = second.new SortedCursor();
+        boolean hasFirst = firstCursor.advance();
+        boolean hasSecond = secondCursor.advance();
+
+        while(hasFirst) {
+            int value = firstCursor.value();
+
+            if(hasSecond) {
+                hasSecond = secondCursor.skipTo(value);
+            }
+
+            if(!hasSecond || (secondCursor.value() != value)) {
+                addDistinctValue(result, value);
+                hasFirst = firstCursor.advance();
+            }
+            else hasFirst = skipPast(firstCursor, value);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,286 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Helpers for the compact stream format used by writeTo / readFrom.
+// Only the used part of the arrays is written, without any of the
+// per-field overhead of the default Java serialization. Each object
+// starts with the version of its layout, which is checked when read.
+final class StreamFormat {
+    // The hash strategies are written as an identifier and their state,
+    // other strategies can be written only to an ObjectOutput.
+    private static final int IDENTITY_STRATEGY = 0;
+    private static final int MURMUR_STRATEGY = 1;
+    private static final int SEEDED_STRATEGY = 2;
+    private static final int OBJECT_STRATEGY = 3;
+
+    // The arrays are converted in blocks of this many bytes,
+    // which avoids writing and reading each value separately.
+    private static final int BLOCK_SIZE = 8192;
+
+    // The size of the buffer used to transfer arrays through a channel.
+    // Larger than BLOCK_SIZE, each transfer is usually a system call.
+    private static final int CHANNEL_BLOCK_SIZE = 1 << 16;
+
+    private StreamFormat() {}
+
+    static void writeVersion(DataOutput output, int version) throws IOException {
+        output.writeByte(version);
+    }
+
+    static void readVersion(DataInput input, int version) throws IOException {
+        checkVersion(input.readUnsignedByte(), version);
+    }
+
+    static int readCount(DataInput input, int maxCount) throws IOException {
+        return checkCount(input.readInt(), maxCount);
+    }
+
+    static int checkCount(int count, int maxCount) throws IOException {
+        if((count < 0) || (count > maxCount)) {
+            throw new StreamCorruptedException("Invalid count!");
+        }
+
+        return count;
+    }
+
+    static void checkVersion(int value, int version) throws IOException {
+        if(value != version) {
+            throw new StreamCorruptedException("Unsupported format version!");
+        }
+    }
+
+    static int readTableSize(DataInput input) throws IOException {
+        int tableSize = input.readInt();
+
+        if((tableSize <= 0) || ((tableSize & (tableSize - 1)) != 0)) {
+            throw new StreamCorruptedException("Invalid table size!");
+        }
+
+        return tableSize;
+    }
+
+    static void writeHashStrategy(DataOutput output, IntHashStrategy hashStrategy) throws IOException {
+        if(hashStrategy.getClass() == IdentityIntHashStrategy.class) {
+            output.writeByte(IDENTITY_STRATEGY);
+        }
+        else if(hashStrategy.getClass() == MurmurIntHashStrategy.class) {
+            output.writeByte(MURMUR_STRATEGY);
+        }
+        else if(hashStrategy.getClass() == SeededIntHashStrategy.class) {
+            output.writeByte(SEEDED_STRATEGY);
+            output.writeInt(((SeededIntHashStrategy)hashStrategy).getSeed());
+        }
+        else if(output instanceof ObjectOutput) {
+            output.writeByte(OBJECT_STRATEGY);
+            ((ObjectOutput)output).writeObject(hashStrategy);
+        }
+        else throw new NotSerializableException(hashStrategy.getClass().getName());
+    }
+
+    static IntHashStrategy readHashStrategy(DataInput input) throws IOException {
+        int strategy = input.readUnsignedByte();
+
+        if(strategy == IDENTITY_STRATEGY) {
+            return new IdentityIntHashStrategy();
+        }
+        else if(strategy == MURMUR_STRATEGY) {
+            return new MurmurIntHashStrategy();
+        }
+        else if(strategy == SEEDED_STRATEGY) {
+            return new SeededIntHashStrategy(input.readInt());
+        }
+        else if((strategy == OBJECT_STRATEGY) && (input instanceof ObjectInput)) {
+            try {
+                return (IntHashStrategy)((ObjectInput)input).readObject();
+            }
+            catch(ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        throw new StreamCorruptedException("Invalid hash strategy!");
+    }
+
+    static void writeInts(DataOutput output, int[] values, int count) throws IOException {
+        byte[] block = new byte[Math.min(count << 2, BLOCK_SIZE)];
+        int index = 0;
+
+        while(index < count) {
+            int blockCount = Math.min(count - index, BLOCK_SIZE >> 2);
+
+            for(int i = 0; i < blockCount; i++) {
+                int value = values[index + i];
+                block[(i << 2)] = (byte)(value >>> 24);
+                block[(i << 2) + 1] = (byte)(value >>> 16);
+                block[(i << 2) + 2] = (byte)(value >>> 8);
+                block[(i << 2) + 3] = (byte)value;
+            }
+
+            output.write(block, 0, blockCount << 2);
+            index += blockCount;
+        }
+    }
+
+    static int[] readInts(DataInput input, int count, int capacity) throws IOException {
+        // The array can be larger than the number of values read,
+        // leaving space for the values added later.
+        int[] values = new int[Math.max(count, capacity)];
+        byte[] block = new byte[Math.min(count << 2, BLOCK_SIZE)];
+        int index = 0;
+
+        while(index < count) {
+            int blockCount = Math.min(count - index, BLOCK_SIZE >> 2);
+            input.readFully(block, 0, blockCount << 2);
+
+            for(int i = 0; i < blockCount; i++) {
+                values[index + i] = (block[(i << 2)] << 24) |
+                                    ((block[(i << 2) + 1] & 0xFF) << 16) |
+                                    ((block[(i << 2) + 2] & 0xFF) << 8) |
+                                    (block[(i << 2) + 3] & 0xFF);
+            }
+
+            index += blockCount;
+        }
+
+        return values;
+    }
+
+    static void writeLongs(DataOutput output, long[] values, int count) throws IOException {
+        byte[] block = new byte[Math.min(count << 3, BLOCK_SIZE)];
+        int index = 0;
+
+        while(index < count) {
+            int blockCount = Math.min(count - index, BLOCK_SIZE >> 3);
+
+            for(int i = 0; i < blockCount; i++) {
+                long value = values[index + i];
+
+                for(int k = 0; k < 8; k++) {
+                    block[(i << 3) + k] = (byte)(value >>> (56 - (k << 3)));
+                }
+            }
+
+            output.write(block, 0, blockCount << 3);
+            index += blockCount;
+        }
+    }
+
+    static long[] readLongs(DataInput input, int count, int capacity) throws IOException {
+        long[] values = new long[Math.max(count, capacity)];
+        byte[] block = new byte[Math.min(count << 3, BLOCK_SIZE)];
+        int index = 0;
+
+        while(index < count) {
+            int blockCount = Math.min(count - index, BLOCK_SIZE >> 3);
+            input.readFully(block, 0, blockCount << 3);
+
+            for(int i = 0; i < blockCount; i++) {
+                long value = 0;
+
+                for(int k = 0; k < 8; k++) {
+                    value = (value << 8) | (block[(i << 3) + k] & 0xFF);
+                }
+
+                values[index + i] = value;
+            }
+
+            index += blockCount;
+        }
+
+        return values;
+    }
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        // A non-blocking channel may write only a part of the buffer.
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) == -1) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    static void writeInts(WritableByteChannel channel, int[] values, int count) throws IOException {
+        // The values are written big-endian, the same as by DataOutput.
+        ByteBuffer block = ByteBuffer.allocate(Math.min(count << 2, CHANNEL_BLOCK_SIZE));
+        IntBuffer blockValues = block.asIntBuffer();
+        int index = 0;
+
+        while(index < count) {
+            int blockCount = Math.min(count - index, CHANNEL_BLOCK_SIZE >> 2);
+            blockValues.clear();
+            blockValues.put(values, index, blockCount);
+
+            block.clear();
+            block.limit(blockCount << 2);
+            writeFully(channel, block);
+            index += blockCount;
+        }
+    }
+
+    static int[] readInts(ReadableByteChannel channel, int count, int capacity) throws IOException {
+        int[] values = new int[Math.max(count, capacity)];
+        ByteBuffer block = ByteBuffer.allocate(Math.min(count << 2, CHANNEL_BLOCK_SIZE));
+        IntBuffer blockValues = block.asIntBuffer();
+        int index = 0;
+
+        while(index < count) {
+            int blockCount = Math.min(count - index, CHANNEL_BLOCK_SIZE >> 2);
+            block.clear();
+            block.limit(blockCount << 2);
+            readFully(channel, block);
+
+            blockValues.clear();
+            blockValues.get(values, index, blockCount);
+            index += blockCount;
+        }
+
+        return values;
+    }
+}
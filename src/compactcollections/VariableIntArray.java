@@ -30,19 +30,33 @@
 // (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
 
-public class VariableIntArray extends AbstractList<Integer> {
+public class VariableIntArray extends AbstractList<Integer> implements Externalizable {
     // The number of values stored inside a group.
     // A group consists of a 1-byte header that describes
     // the size of the values, followed by the values.
-    private static final int GROUP_SIZE = 8;
+    static final int GROUP_SIZE = 8;
 
     // The number of values stored inside a section.
     // A section represents SECTION_SIZE / GROUPSIZE groups.
     // Sections are created to allow fast access to random positions.
-    private static final int SECTION_SIZE = 64;
+    static final int SECTION_SIZE = 64;
 
     // The default size of the array storing the values.
     private static final int DEFAULT_DATA_CAPACITY = 4096;
@@ -51,27 +65,78 @@ public class VariableIntArray extends AbstractList<Integer> {
     // before they are written (committed) to the array.
     private static final int MAX_PENDING_EDITED_VALUES = 32 * 1024;
 
+    // The version of the layout written by writeTo.
+    static final int FORMAT_VERSION = 1;
+
+    // The version written instead of FORMAT_VERSION by the arrays
+    // using the ONE_TO_FOUR_BYTES encoding, the layout is the same.
+    static final int FOUR_WIDTHS_FORMAT_VERSION = 2;
+
+    // The number of values described by a byte of the group header
+    // when the ONE_TO_FOUR_BYTES encoding is used (2 bits for each value).
+    // The first header byte describes the first half of the group.
+    static final int HEADER_BYTE_VALUES = 4;
+
+    // The size of the group header when the ONE_TO_FOUR_BYTES encoding is used.
+    static final int FOUR_WIDTHS_HEADER_SIZE = GROUP_SIZE / HEADER_BYTE_VALUES;
+
+    // The maximum size of the data of a section, when all values use 4 bytes.
+    private static final int MAX_SECTION_DATA_SIZE =
+        (SECTION_SIZE / GROUP_SIZE) * (FOUR_WIDTHS_HEADER_SIZE + 4 * GROUP_SIZE);
+
+    // Added to the format version by the sorted arrays, the layout is the same.
+    static final int SORTED_FORMAT_VERSION_OFFSET = 2;
+
+    // The size of the format version and the two counts
+    // written before the section index.
+    static final int HEADER_SIZE = 9;
+
     // Contains the precomputed size of a group associated
     // with a particular value of a group header in range 0-255.
     // Used when skipping over entire groups of values.
-    private static int[] groupSize;
+    static int[] groupSize;
 
     // Contains the precomputed size of each value in a group.
     // Used when accessing a value at a known index in a group.
-    private static int[][] groupValueSize;
+    static int[][] groupValueSize;
 
     // Contains the precomputed offset of each value in a group.
     // The offset is relative to the group start (includes the 1-byte header).
     // Used when accessing a value at a known index in a group.
-    private static int[][] groupValueOffset;
+    static int[][] groupValueOffset;
+
+    // The same tables for a byte of a ONE_TO_FOUR_BYTES group header:
+    // the size of the values it describes, the size of each value
+    // and the offset of each value relative to the first one.
+    static int[] headerByteSize;
+    static int[][] headerByteValueSize;
+    static int[][] headerByteValueOffset;
 
     // Set if the table with the precomputed values
     // has already been created (it is only created once).
     private static boolean tablesInitialized;
 
+    // Decodes entire groups when the values are read in order.
+    private static final GroupDecodeKernel decodeKernel = GroupDecodeKernel.create();
+
     // Contains the offset at which the first group in the section starts.
     private int[] sectionOffset;
 
+    // The encoding of the group values, selected when the array is created.
+    private VariableIntEncoding encoding;
+
+    // Set if the values are sorted in ascending order. Instead of the delta
+    // from the section start value, each value is stored as the delta from
+    // the previous one, which remains small even if the values of a section
+    // span a large range. The section start values are then used to search
+    // the section containing a value, but reading a value requires decoding
+    // the groups before it in the section.
+    private boolean sorted;
+
+    // The last value of the last group written to the data array,
+    // the first value of the next group is stored as the delta from it.
+    private int previousGroupValue;
+
     // Contains the section start value (representative value).
     // It is the value of the first location in the first group.
     // All other values in the section are stored as the delta
@@ -100,7 +165,7 @@ public class VariableIntArray extends AbstractList<Integer> {
 
     // Modified values that can not be updated directly
     // are stored into a cache and written together once it is full.
-    // This greatly reduces the overhead of creating a new array each time
+    // This greatly reduces the overhead of re-encoding a section each time
     // a value that previously required 1 byte and now requires 4 bytes.
     private IntHashMap pendingEditedValues;
 
@@ -117,22 +182,45 @@ public class VariableIntArray extends AbstractList<Integer> {
     // The offset where the last accessed group starts.
     private int lastGroupOffset;
 
-    public VariableIntArray(int capacity, VariableIntCache valueCache) {
-        if(!tablesInitialized) {
-            initializeLookupTables();
-            tablesInitialized = true;
+    // The decoded values of the last accessed group, used only by sorted arrays.
+    private int[] lastGroupValues;
+
+    // The decoded values of the section searched by lowerBound/upperBound.
+    private int[] searchValues;
+
+    public VariableIntArray(int capacity, VariableIntCache valueCache,
+                            VariableIntEncoding valueEncoding, boolean sortedValues) {
+        if(valueEncoding == null) {
+            throw new NullPointerException("Encoding should not be null!");
         }
 
+        initializeLookupTables();
         capacity = Math.max(capacity, DEFAULT_DATA_CAPACITY);
         data = new byte[capacity];
         sectionOffset = new int[capacity / SECTION_SIZE];
         sectionValue = new int[capacity / SECTION_SIZE];
         pendingValues = new int[GROUP_SIZE];
         cache = valueCache;
+        encoding = valueEncoding;
+        sorted = sortedValues;
+        lastGroupValues = new int[GROUP_SIZE];
         lastGroupIndex = -1;
         lastGroupOffset = -1;
     }
 
+    public VariableIntArray(int capacity, VariableIntCache valueCache,
+                            VariableIntEncoding valueEncoding) {
+        this(capacity, valueCache, valueEncoding, false);
+    }
+
+    public VariableIntArray(int capacity, VariableIntCache valueCache) {
+        this(capacity, valueCache, VariableIntEncoding.ONE_OR_FOUR_BYTES);
+    }
+
+    public VariableIntArray(VariableIntEncoding valueEncoding) {
+        this(DEFAULT_DATA_CAPACITY, null, valueEncoding);
+    }
+
     public VariableIntArray(int capacity) {
         this(capacity, null);
     }
@@ -165,7 +253,22 @@ public class VariableIntArray extends AbstractList<Integer> {
         addValues(values);
     }
 
-    private void initializeLookupTables() {
+    public VariableIntArray(int[] values, VariableIntEncoding valueEncoding) {
+        this(values.length + (values.length / GROUP_SIZE), null, valueEncoding);
+        addValues(values);
+    }
+
+    public VariableIntArray(int[] values, VariableIntEncoding valueEncoding,
+                            boolean sortedValues) {
+        this(values.length + (values.length / GROUP_SIZE), null, valueEncoding, sortedValues);
+        addValues(values);
+    }
+
+    static synchronized void initializeLookupTables() {
+        if(tablesInitialized) {
+            return;
+        }
+
         // Create the tables containing the mapping between one
         // of the group header values and the configuration of the values
         // (size and offset of each value). The header encodes, for each value,
@@ -189,6 +292,29 @@ public class VariableIntArray extends AbstractList<Integer> {
 
             groupSize[i] = valueOffset;
         }
+
+        // With the ONE_TO_FOUR_BYTES encoding each byte of the header
+        // describes half of the group, 2 bits per value storing the size - 1.
+        // For example, the header byte 0x1B means that the first value
+        // has 4 bytes, the second one 3 bytes, the third 2 and the last one 1 byte.
+        headerByteSize = new int[256];
+        headerByteValueSize = new int[256][HEADER_BYTE_VALUES];
+        headerByteValueOffset = new int[256][HEADER_BYTE_VALUES];
+
+        for(int i = 0; i < 256; i++) {
+            int valueOffset = 0;
+
+            for(int k = 0; k < HEADER_BYTE_VALUES; k++) {
+                int valueSize = ((i >>> (2 * k)) & 3) + 1;
+                headerByteValueOffset[i][k] = valueOffset;
+                headerByteValueSize[i][k] = valueSize;
+                valueOffset += valueSize;
+            }
+
+            headerByteSize[i] = valueOffset;
+        }
+
+        tablesInitialized = true;
     }
 
     private int[] resizeArray(int[] values) {
@@ -263,73 +389,119 @@ public class VariableIntArray extends AbstractList<Integer> {
         return (value < -128) || (value > 127);
     }
 
+    private boolean hasFourWidths() {
+        return encoding == VariableIntEncoding.ONE_TO_FOUR_BYTES;
+    }
+
+    private int getDeltaSize(int delta) {
+        if(hasFourWidths()) {
+            // The number of bytes needed by the two-complement's representation:
+            // the significant bits of the value, plus the sign bit.
+            int bitCount = 33 - Integer.numberOfLeadingZeros(delta ^ (delta >> 31));
+            return (bitCount + 7) >>> 3;
+        }
+
+        return requiresFourBytes(delta) ? 4 : 1;
+    }
+
     private void writePendingValuesHeader(int sectionValue) {
         int header = 0;
 
         for(int i = 0; i < pendingValueCount; i++) {
             // Values are represented as the delta between
             // the actual value and the value starting the current section.
-            // The variable-sized integers have either 1 or 4 bytes.
-            int delta = pendingValues[i] - sectionValue;
+            // The variable-sized integers have either 1 or 4 bytes,
+            // or any size between 1 and 4 bytes with the ONE_TO_FOUR_BYTES encoding.
+            int delta = getPendingDelta(i, sectionValue);
 
-            if(requiresFourBytes(delta)) {
+            if(hasFourWidths()) {
+                header |= (getDeltaSize(delta) - 1) << (2 * i);
+            }
+            else if(requiresFourBytes(delta)) {
                 header |= 1 << i;
             }
         }
 
         writeData(header);
+
+        if(hasFourWidths()) {
+            writeData(header >>> 8);
+        }
     }
 
     private void writeDeltaValue(int delta) {
-        if(requiresFourBytes(delta)) {
-            writeData(delta & 0xFF);
-            writeData((delta >>> 8) & 0xFF);
-            writeData((delta >>> 16) & 0xFF);
-            writeData((delta >>> 24) & 0xFF);
+        // The values are stored in little-endian order.
+        int deltaSize = getDeltaSize(delta);
+
+        for(int i = 0; i < deltaSize; i++) {
+            writeData((delta >>> (8 * i)) & 0xFF);
         }
-        else writeData(delta);
     }
 
     private void writeDeltaValueAtOffset(int delta, int locationOffset,
                                          int locationSize) {
         // This function is used when modifying an already written value.
-        if(requiresFourBytes(delta)) {
-            data[locationOffset] = (byte)(delta & 0xFF);
-            data[locationOffset + 1] = (byte)((delta >>> 8) & 0xFF);
-            data[locationOffset + 2] = (byte)((delta >>> 16) & 0xFF);
-            data[locationOffset + 3] = (byte)((delta >>> 24) & 0xFF);
+        // If previously there was a larger value in this location, make sure
+        // the upper bytes are initialized properly: two-complement's arithmetic
+        // requires filling the unused space with bits set to 1 in case
+        // of negative numbers, 0 otherwise, which are the upper bytes of the delta.
+        for(int i = 0; i < locationSize; i++) {
+            data[locationOffset + i] = (byte)((delta >>> (8 * i)) & 0xFF);
         }
-        else {
-            data[locationOffset] = (byte)delta;
+    }
+
+    private int getPendingDelta(int index, int sectionValue) {
+        // Sorted arrays store the delta from the previous value;
+        // for the first value of a section it's the section start value.
+        if(sorted) {
+            int previousValue;
 
-            if(locationSize == 4) {
-                // Previously there was a 4-byte value in this location,
-                // make sure the upper bytes are initialized properly:
-                // two-complement's arithmetic requires filling the unused space
-                // with bits set to 1 in case of negative numbers, 0 otherwise.
-                int signValue = delta >= 0 ? 0 : -1;
-                data[locationOffset + 1] = (byte)signValue;
-                data[locationOffset + 2] = (byte)signValue;
-                data[locationOffset + 3] = (byte)signValue;
+            if(index > 0) {
+                previousValue = pendingValues[index - 1];
             }
+            else if(getSectionValueIndex(valueCount) == 0) {
+                previousValue = sectionValue;
+            }
+            else previousValue = previousGroupValue;
+
+            return pendingValues[index] - previousValue;
         }
+
+        return pendingValues[index] - sectionValue;
     }
 
     private void writePendingValues(int sectionValue) {
         for(int i = 0; i < pendingValueCount; i++) {
-            writeDeltaValue(pendingValues[i] - sectionValue);
+            writeDeltaValue(getPendingDelta(i, sectionValue));
         }
     }
 
     private void writePendingGroup() {
         int sectionValue = getSectionValue();
+        int groupOffset = dataOffset;
         writePendingValuesHeader(sectionValue);
         writePendingValues(sectionValue);
 
+        if(sorted) {
+            // The written group becomes the last accessed one, the last value
+            // is then found without decoding when the next value is added.
+            previousGroupValue = pendingValues[GROUP_SIZE - 1];
+            System.arraycopy(pendingValues, 0, lastGroupValues, 0, GROUP_SIZE);
+            lastGroupIndex = valueCount;
+            lastGroupOffset = groupOffset;
+        }
+
         pendingValueCount = 0;
         valueCount += GROUP_SIZE;
     }
 
+    private void checkSortedValue(int value) {
+        // The values of a sorted array must be added in ascending order.
+        if(sorted && (size() > 0) && (value < getValue(size() - 1))) {
+            throw new IllegalArgumentException("Values should be sorted!");
+        }
+    }
+
     @Override
     public boolean add(Integer value) {
         if(value == null) {
@@ -341,6 +513,11 @@ public class VariableIntArray extends AbstractList<Integer> {
     }
 
     public void addValue(int value) {
+        checkSortedValue(value);
+
+        // The value is cached using its index, before the counts change.
+        cacheValue(valueCount + pendingValueCount, value);
+
         // Values are written to the data array only as a complete group.
         // This is required in order to compute the group header.
         pendingValues[pendingValueCount] = value;
@@ -349,8 +526,6 @@ public class VariableIntArray extends AbstractList<Integer> {
         if(pendingValueCount == GROUP_SIZE) {
             writePendingGroup();
         }
-
-        cacheValue(valueCount + pendingValueCount, value);
     }
 
     public void addValues(List<Integer> values) {
@@ -360,17 +535,55 @@ public class VariableIntArray extends AbstractList<Integer> {
     }
 
     public void addValues(int[] values) {
-        for(int value : values) {
-            addValue(value);
+        addValues(values, 0, values.length);
+    }
+
+    public void addValues(int[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) || (offset + length > values.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        if(sorted && (length > 0)) {
+            checkSortedValue(values[offset]);
+
+            for(int i = offset + 1; i < offset + length; i++) {
+                if(values[i] < values[i - 1]) {
+                    throw new IllegalArgumentException("Values should be sorted!");
+                }
+            }
+        }
+
+        if(cache != null) {
+            for(int i = 0; i < length; i++) {
+                cacheValue(valueCount + pendingValueCount + i, values[offset + i]);
+            }
+        }
+
+        // The values are copied into the pending group as a block,
+        // each time the group is complete it is written to the data array.
+        int end = offset + length;
+
+        while(offset < end) {
+            int copyCount = Math.min(GROUP_SIZE - pendingValueCount, end - offset);
+            System.arraycopy(values, offset, pendingValues, pendingValueCount, copyCount);
+            pendingValueCount += copyCount;
+            offset += copyCount;
+
+            if(pendingValueCount == GROUP_SIZE) {
+                writePendingGroup();
+            }
         }
     }
 
     public VariableIntArray flush() {
         // If pending values remain and the group is not complete
         // fill the remaining positions with zero and write the group.
+        // Sorted arrays are filled with the last value instead.
         if(pendingValueCount > 0) {
+            int fillValue = sorted ? pendingValues[pendingValueCount - 1] : 0;
+
             for(int i = pendingValueCount; i < GROUP_SIZE; i++) {
-                pendingValues[i] = 0;
+                pendingValues[i] = fillValue;
                 pendingValueCount++;
             }
 
@@ -387,21 +600,56 @@ public class VariableIntArray extends AbstractList<Integer> {
     }
 
     private int getGroupSize(int groupOffset) {
+        if(hasFourWidths()) {
+            return FOUR_WIDTHS_HEADER_SIZE +
+                   headerByteSize[data[groupOffset] & 0xFF] +
+                   headerByteSize[data[groupOffset + 1] & 0xFF];
+        }
+
         return groupSize[readGroupHeader(groupOffset)];
     }
 
     private int getGroupValueOffset(int groupOffset, int index) {
+        if(hasFourWidths()) {
+            // The values of the second half follow the ones of the first half.
+            int firstHeader = data[groupOffset] & 0xFF;
+
+            if(index < HEADER_BYTE_VALUES) {
+                return FOUR_WIDTHS_HEADER_SIZE + headerByteValueOffset[firstHeader][index];
+            }
+
+            int secondHeader = data[groupOffset + 1] & 0xFF;
+            return FOUR_WIDTHS_HEADER_SIZE + headerByteSize[firstHeader] +
+                   headerByteValueOffset[secondHeader][index - HEADER_BYTE_VALUES];
+        }
+
         return groupValueOffset[readGroupHeader(groupOffset)][index];
     }
 
     private int getGroupValueSize(int groupOffset, int index) {
+        if(hasFourWidths()) {
+            int header = data[groupOffset + (index / HEADER_BYTE_VALUES)] & 0xFF;
+            return headerByteValueSize[header][index % HEADER_BYTE_VALUES];
+        }
+
         return groupValueSize[readGroupHeader(groupOffset)][index];
     }
 
     private int readValueAtOffset(int offset, int size) {
+        // The sign of the 2 and 3 byte values is extended
+        // by the conversion of the last byte to int.
         if(size == 1) {
             return (int)data[offset];
         }
+        else if(size == 2) {
+            return ((int)data[offset] & 0xFF) |
+                   (int)data[offset + 1] << 8;
+        }
+        else if(size == 3) {
+            return ((int)data[offset] & 0xFF)          |
+                   ((int)data[offset + 1] & 0xFF) << 8 |
+                   (int)data[offset + 2] << 16;
+        }
         else return ((int)data[offset] & 0xFF)           |
                     ((int)data[offset + 1] & 0xFF) << 8  |
                     ((int)data[offset + 2] & 0xFF) << 16 |
@@ -415,6 +663,129 @@ public class VariableIntArray extends AbstractList<Integer> {
                readValueAtOffset(valueOffset, valueSize);
     }
 
+    private int decodeGroup(int groupOffset, int startValue,
+                            int[] destination, int destinationOffset) {
+        // The start value is the section start value, or for sorted arrays
+        // the value before the group, to which the deltas are added in order.
+        int nextGroupOffset = decodeGroupDeltas(groupOffset, startValue,
+                                                destination, destinationOffset);
+
+        if(sorted) {
+            for(int i = destinationOffset + 1; i < destinationOffset + GROUP_SIZE; i++) {
+                destination[i] += destination[i - 1] - startValue;
+            }
+        }
+
+        return nextGroupOffset;
+    }
+
+    private int decodeGroupDeltas(int groupOffset, int sectionStartValue,
+                                  int[] destination, int destinationOffset) {
+        // Decodes all values of the group at once, the size and offset
+        // of each value are found using a single read of the header.
+        // Returns the offset of the next group. The kernel reads past
+        // the end of the group, it can't be used for the last bytes of the array.
+        if(hasFourWidths()) {
+            return decodeFourWidthsGroup(groupOffset, sectionStartValue,
+                                         destination, destinationOffset);
+        }
+        else if(groupOffset + GroupDecodeKernel.MAX_GROUP_SIZE <= data.length) {
+            return decodeKernel.decodeGroup(data, groupOffset, sectionStartValue,
+                                            destination, destinationOffset);
+        }
+
+        int header = readGroupHeader(groupOffset);
+        int[] valueOffsets = groupValueOffset[header];
+        int[] valueSizes = groupValueSize[header];
+
+        for(int i = 0; i < GROUP_SIZE; i++) {
+            destination[destinationOffset + i] = sectionStartValue +
+                readValueAtOffset(groupOffset + valueOffsets[i], valueSizes[i]);
+        }
+
+        return groupOffset + groupSize[header];
+    }
+
+    private int decodeFourWidthsGroup(int groupOffset, int sectionStartValue,
+                                      int[] destination, int destinationOffset) {
+        // Each header byte describes the values of one half of the group.
+        int valueOffset = groupOffset + FOUR_WIDTHS_HEADER_SIZE;
+
+        for(int i = 0; i < FOUR_WIDTHS_HEADER_SIZE; i++) {
+            int header = data[groupOffset + i] & 0xFF;
+            int[] valueOffsets = headerByteValueOffset[header];
+            int[] valueSizes = headerByteValueSize[header];
+
+            for(int k = 0; k < HEADER_BYTE_VALUES; k++) {
+                destination[destinationOffset + k] = sectionStartValue +
+                    readValueAtOffset(valueOffset + valueOffsets[k], valueSizes[k]);
+            }
+
+            valueOffset += headerByteSize[header];
+            destinationOffset += HEADER_BYTE_VALUES;
+        }
+
+        return valueOffset;
+    }
+
+    // Decodes the values in order, one group at a time. Unlike getValue,
+    // the group of each value is not searched and the cache is not used:
+    // the groups are stored one after another, so the next one starts
+    // where the previous one ends, in the same or in the next section.
+    final class GroupDecoder {
+        private int[] values;          // The values of the last decoded group.
+        private int nextIndex;         // The index of the first value of the next group.
+        private int nextOffset;        // The offset of the next group in the data array.
+        private int sectionStartValue; // The start value of the current section (previous value if sorted).
+
+        GroupDecoder() {
+            // The edited values are written first,
+            // so that all values are found in the groups.
+            writePendingEditedValues();
+            values = new int[GROUP_SIZE];
+        }
+
+        int[] values() {
+            return values;
+        }
+
+        int decodeGroup() {
+            // Returns the number of decoded values, 0 after the last group.
+            // The values that were not written yet form the last group.
+            if(nextIndex < valueCount) {
+                if(getSectionValueIndex(nextIndex) == 0) {
+                    sectionStartValue = sectionValue[getSectionIndex(nextIndex)];
+                }
+
+                nextOffset = VariableIntArray.this.decodeGroup(nextOffset, sectionStartValue, values, 0);
+                nextIndex += GROUP_SIZE;
+
+                if(sorted) {
+                    sectionStartValue = values[GROUP_SIZE - 1];
+                }
+
+                return GROUP_SIZE;
+            }
+            else if(nextIndex == valueCount) {
+                System.arraycopy(pendingValues, 0, values, 0, pendingValueCount);
+                nextIndex += GROUP_SIZE;
+                return pendingValueCount;
+            }
+
+            return 0;
+        }
+
+        boolean hasNextGroup() {
+            return (nextIndex < valueCount) ||
+                   ((nextIndex == valueCount) && (pendingValueCount > 0));
+        }
+
+        void reset() {
+            nextIndex = 0;
+            nextOffset = 0;
+        }
+    }
+
     private void writeGroupDeltaValue(int groupOffset, int valueIndex, int delta) {
         int locationOffset = groupOffset + getGroupValueOffset(groupOffset, valueIndex);
         int locationSize = getGroupValueSize(groupOffset, valueIndex);
@@ -470,6 +841,10 @@ public class VariableIntArray extends AbstractList<Integer> {
             throw new ArrayIndexOutOfBoundsException("Invalid value index!");
         }
 
+        if(sorted) {
+            return cacheValue(index, getSortedValue(index));
+        }
+
         // Check if the requested value is found in the same group as one
         // of the previously requested values. In this case the computation
         // of the group offset can be skipped - happens very often in practice.
@@ -503,143 +878,1272 @@ public class VariableIntArray extends AbstractList<Integer> {
         return cacheValue(index, value);
     }
 
-    private void addPendingEditedValue(int index, int value) {
-        // The value could not be modified directly, write it
-        // to the data array later, together with other modified values.
-        if(pendingEditedValues == null) {
-            pendingEditedValues = new IntHashMap();
-        }
+    private int getSortedValue(int index) {
+        // The groups of the section are decoded in order until the one
+        // containing the value is found. The group is kept decoded,
+        // so the next values of the same group are read directly.
+        int groupIndex = index - (index % GROUP_SIZE);
 
-        pendingEditedValues.put(index, value);
+        if((lastGroupOffset == -1) || (lastGroupIndex != groupIndex)) {
+            int sectionIndex = getSectionIndex(index);
+            int groupOffset = sectionOffset[sectionIndex];
+            int previousValue = sectionValue[sectionIndex];
+            int currentIndex = index - getSectionValueIndex(index);
 
-        if(pendingEditedValues.size() >= MAX_PENDING_EDITED_VALUES) {
-            writePendingEditedValues();
+            while(true) {
+                int nextGroupOffset = decodeGroup(groupOffset, previousValue, lastGroupValues, 0);
+
+                if(currentIndex == groupIndex) {
+                    break;
+                }
+
+                previousValue = lastGroupValues[GROUP_SIZE - 1];
+                groupOffset = nextGroupOffset;
+                currentIndex += GROUP_SIZE;
+            }
+
+            lastGroupIndex = groupIndex;
+            lastGroupOffset = groupOffset;
         }
-    }
 
-    private boolean hasPendingEditedValues() {
-        return (pendingEditedValues != null) &&
-               (pendingEditedValues.size() > 0);
+        return lastGroupValues[index - groupIndex];
     }
 
-    private void writePendingEditedValues() {
-        if(!hasPendingEditedValues()) {
-            return;
-        }
+    private class ValueCursor implements IntCursor {
+        private GroupDecoder decoder = new GroupDecoder();
+        private int[] values = decoder.values();
+        private int groupIndex = -1; // The index of the current value in the decoded group.
+        private int groupCount;      // The number of values in the decoded group.
+
+        @Override
+        public boolean advance() {
+            groupIndex++;
+
+            if(groupIndex < groupCount) {
+                return true;
+            }
 
-        // Read all the values currently in the array
-        // and modify the values at the pending indices.
-        int[] values = new int[valueCount];
-        for(int i = 0; i < valueCount; i++) values[i] = getValue(i);
+            groupCount = decoder.decodeGroup();
+            groupIndex = 0;
+            return groupCount > 0;
+        }
 
-        for(int i = 0; i < pendingEditedValues.size(); i++) {
-            int index = pendingEditedValues.getKeyAt(i);
-            int value = pendingEditedValues.getValueAt(i);
-            values[index] = value;
+        boolean hasNext() {
+            return (groupIndex + 1 < groupCount) || decoder.hasNextGroup();
         }
 
-        // Add the new values to a new array, then copy
-        // the new data back to this array.
-        VariableIntArray clonedArray = new VariableIntArray(valueCount);
-        for(int i = 0; i < valueCount; i++) clonedArray.addValue(values[i]);
+        @Override
+        public int value() {
+            return values[groupIndex];
+        }
 
-        clonedArray.flush();
-        takeArrayData(clonedArray);
-        pendingEditedValues.clear();
+        @Override
+        public void reset() {
+            decoder.reset();
+            groupIndex = -1;
+            groupCount = 0;
+        }
     }
 
-    private void takeArrayData(VariableIntArray otherArray) {
-        sectionOffset = otherArray.sectionOffset;
-        sectionValue = otherArray.sectionValue;
-        data = otherArray.data;
-        dataOffset = otherArray.dataOffset;
-        lastGroupIndex = -1;
-        lastGroupOffset = -1;
-    }
+    private class ValueIterator implements Iterator<Integer> {
+        private ValueCursor cursor = new ValueCursor();
 
-    private boolean deltaValueFitsInLocation(int delta, int groupOffset, int valueIndex) {
-        // There are 4 cases based on the previous delta size and the new one:
-        // Previous  New   Fits
-        //    4       4     Y
-        //    4       1     Y
-        //    1       4     N  => Add to pending edited values.
-        //    1       1     Y
-        return (getGroupValueSize(groupOffset, valueIndex) == 4) ||
-                !requiresFourBytes(delta);
-    }
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
 
-    private boolean isPendingEditedValue(int index) {
-        return hasPendingEditedValues() &&
-               pendingEditedValues.containsKey(index);
-    }
+        @Override
+        public Integer next() {
+            if(!cursor.advance()) {
+                throw new NoSuchElementException();
+            }
 
-    @Override
-    public Integer set(int index, Integer value) {
-        if(value == null) {
-            throw new NullPointerException("Value should not be null!");
+            return cursor.value();
         }
 
-        setValue(index, value);
-        return null; // Don't return last value.
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
-    public void setValue(int index, int value) {
-        cacheValue(index, value);
+    // Reads the values of a sorted array in order, one section at a time,
+    // and can skip to the first value that is not smaller than a target.
+    // The sections that are skipped are found by galloping over the
+    // section start values and are not decoded. The values that were not
+    // written yet to the data array are read as an additional section.
+    final class SortedCursor implements IntCursor {
+        private int[] values;        // The values of the decoded section.
+        private int sectionIndex;    // The index of the decoded section.
+        private int sectionCount;    // The number of sections, including the pending values.
+        private int count;           // The number of values in the decoded section.
+        private int position;        // The index of the current value in the decoded section.
+
+        SortedCursor() {
+            if(!sorted) {
+                throw new UnsupportedOperationException("Array is not sorted!");
+            }
 
-        if(index == (valueCount + pendingValueCount)) {
-            // Just append after the last inserted value.
-            addValue(value);
+            // The edited values are written first,
+            // so that all values are found in the sections.
+            writePendingEditedValues();
+            values = new int[SECTION_SIZE];
+            sectionCount = (valueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+
+            if(pendingValueCount > 0) {
+                sectionCount++;
+            }
+
+            reset();
         }
-        else if(isPendingEditedValue(index)) {
-            // The value will be modified after all pending values
-            // are written, because it might modify one of them.
-            addPendingEditedValue(index, value);
+
+        private int getStartValue(int index) {
+            return (index * SECTION_SIZE < valueCount) ? sectionValue[index] : pendingValues[0];
         }
-        else if((pendingValueCount > 0) && (index >= valueCount)) {
-            // The value is part of the current incomplete group,
-            // modify it directly, before it is written to the data array.
-            int pendingIndex = index - valueCount;
-            pendingValues[pendingIndex] = value;
+
+        private boolean loadSection(int index) {
+            // Returns false if there are no more sections.
+            sectionIndex = index;
+            position = 0;
+
+            if(index >= sectionCount) {
+                count = 0;
+                return false;
+            }
+            else if(index * SECTION_SIZE < valueCount) {
+                count = decodeSection(index, values);
+            }
+            else {
+                System.arraycopy(pendingValues, 0, values, 0, pendingValueCount);
+                count = pendingValueCount;
+            }
+
+            return true;
         }
-        else {
-            // The value overwrites an existing value.
-            // There are two cases:
-            // 1. The value is small enough to fit in the existing location.
-            // 2. The location must be enlarged to make room for the value.
-            //    To simplify implementation a copy of the current array is made,
-            //    but using the modified value. To improve performance many edit
-            //    operations are accumulated and written at once.
-            int sectionIndex = getSectionIndex(index);
-            int sectionStartValue = sectionValue[sectionIndex];
-            int delta = value - sectionStartValue;
 
-            // Start with the current offset at the beginning
-            // of the section where the value resides.
-            int valueIndex = getSectionValueIndex(index);
-            int groupOffset = sectionOffset[sectionIndex];
+        @Override
+        public boolean advance() {
+            position++;
 
-            // Skip over groups of multiple values.
-            while(valueIndex >= GROUP_SIZE) {
-                groupOffset += getGroupSize(groupOffset);
-                valueIndex -= GROUP_SIZE;
+            if(position < count) {
+                return true;
             }
 
-            if(deltaValueFitsInLocation(delta, groupOffset, valueIndex)) {
-                // Replace the existing value.
-                writeGroupDeltaValue(groupOffset, valueIndex, delta);
+            return loadSection(sectionIndex + 1);
+        }
+
+        @Override
+        public int value() {
+            return values[position];
+        }
+
+        boolean skipTo(int target) {
+            // Moves to the first value that is not smaller than target,
+            // starting with the current one. Returns false if there is none.
+            // If the current section ends with a smaller value, the first
+            // section starting with a value not smaller than target is searched:
+            // target can be only in the section before it.
+            if((count == 0) || (values[count - 1] < target)) {
+                int low = sectionIndex + 1;
+                int step = 1;
+
+                while((low + step - 1 < sectionCount) &&
+                      (getStartValue(low + step - 1) < target)) {
+                    low += step;
+                    step *= 2;
+                }
+
+                int high = Math.min(low + step - 1, sectionCount);
+
+                while(low < high) {
+                    int middle = (low + high) >>> 1;
+
+                    if(getStartValue(middle) < target) {
+                        low = middle + 1;
+                    }
+                    else high = middle;
+                }
+
+                // The values of the section before low might still be smaller.
+                if(low - 1 > sectionIndex) {
+                    loadSection(low - 1);
+
+                    if(values[count - 1] >= target) {
+                        position = findPosition(target);
+                        return true;
+                    }
+                }
+
+                return loadSection(low);
             }
-            else addPendingEditedValue(index, value);
+
+            position = findPosition(target);
+            return true;
+        }
+
+        private int findPosition(int target) {
+            // Binary search in the decoded section, after the current value.
+            int low = Math.max(position, 0);
+            int high = count - 1;
+
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+
+                if(values[middle] < target) {
+                    low = middle + 1;
+                }
+                else high = middle;
+            }
+
+            return low;
         }
+
+        @Override
+        public void reset() {
+            sectionIndex = -1;
+            count = 0;
+            position = -1;
+        }
+    }
+
+    public IntCursor cursor() {
+        // The cursor decodes the values one group at a time,
+        // which is much faster than calling getValue for each index.
+        return new ValueCursor();
     }
 
     @Override
-    public int size() {
-        return valueCount + pendingValueCount;
+    public Iterator<Integer> iterator() {
+        return new ValueIterator();
     }
 
-    public VariableIntArray trim() {
-        flush();
+    public void forEachValue(IntConsumer consumer) {
+        GroupDecoder decoder = new GroupDecoder();
+        int[] values = decoder.values();
+        int groupCount = decoder.decodeGroup();
+
+        while(groupCount > 0) {
+            for(int i = 0; i < groupCount; i++) {
+                consumer.accept(values[i]);
+            }
+
+            groupCount = decoder.decodeGroup();
+        }
+    }
+
+    private int findGroupOffset(int index) {
+        // Returns the offset of the group containing the value,
+        // starting from the first group of the section.
+        int valueIndex = getSectionValueIndex(index);
+        int groupOffset = sectionOffset[getSectionIndex(index)];
+
+        while(valueIndex >= GROUP_SIZE) {
+            groupOffset += getGroupSize(groupOffset);
+            valueIndex -= GROUP_SIZE;
+        }
+
+        return groupOffset;
+    }
+
+    public void get(int index, int[] destination, int offset, int length) {
+        // Copies length consecutive values starting with the one at index.
+        // The first group is searched only once, then the groups
+        // that follow it are decoded directly into the destination.
+        if((index < 0) || (length < 0) || ((long)index + length > size()) ||
+           (offset < 0) || ((long)offset + length > destination.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        writePendingEditedValues();
+
+        int end = index + length;
+        int groupEnd = Math.min(end, valueCount);
+
+        if(index < groupEnd) {
+            int groupIndex = index - (index % GROUP_SIZE);
+            int groupOffset = findGroupOffset(index);
+            int sectionStartValue = sectionValue[getSectionIndex(index)];
+            int[] groupValues = null;
+
+            if(sorted) {
+                // The values before the first group must be decoded too.
+                groupIndex = index - getSectionValueIndex(index);
+                groupOffset = sectionOffset[getSectionIndex(index)];
+            }
+
+            while(groupIndex < groupEnd) {
+                if(getSectionValueIndex(groupIndex) == 0) {
+                    sectionStartValue = sectionValue[getSectionIndex(groupIndex)];
+                }
+
+                if((groupIndex >= index) && (groupIndex + GROUP_SIZE <= groupEnd)) {
+                    int destinationOffset = offset + (groupIndex - index);
+                    groupOffset = decodeGroup(groupOffset, sectionStartValue, destination,
+                                              destinationOffset);
+
+                    if(sorted) {
+                        sectionStartValue = destination[destinationOffset + GROUP_SIZE - 1];
+                    }
+                }
+                else {
+                    // The first or the last group is only partially copied
+                    // (or not at all, for the groups before index of sorted arrays).
+                    if(groupValues == null) {
+                        groupValues = new int[GROUP_SIZE];
+                    }
+
+                    groupOffset = decodeGroup(groupOffset, sectionStartValue, groupValues, 0);
+                    int copyStart = Math.max(index, groupIndex);
+                    int copyEnd = Math.min(groupEnd, groupIndex + GROUP_SIZE);
+
+                    if(copyStart < copyEnd) {
+                        System.arraycopy(groupValues, copyStart - groupIndex, destination,
+                                         offset + (copyStart - index), copyEnd - copyStart);
+                    }
+
+                    if(sorted) {
+                        sectionStartValue = groupValues[GROUP_SIZE - 1];
+                    }
+                }
+
+                groupIndex += GROUP_SIZE;
+            }
+        }
+
+        // Copy the values that are not written yet to the data array.
+        for(int i = Math.max(index, valueCount); i < end; i++) {
+            destination[offset + (i - index)] = pendingValues[i - valueCount];
+        }
+    }
+
+    public void setRange(int index, int[] values, int offset, int length) {
+        // Replaces length consecutive values starting with the one at index,
+        // the values past the end of the array are added. The groups are
+        // updated in place while walking them in order; the values
+        // that don't fit in their location are written together at the end.
+        if((index < 0) || (index > size()) || (length < 0) ||
+           (offset < 0) || ((long)offset + length > values.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        if(sorted) {
+            setSortedRange(index, values, offset, length);
+            return;
+        }
+
+        writePendingEditedValues();
+
+        int end = index + length;
+        int groupEnd = Math.min(end, valueCount);
+        int pendingEnd = Math.min(end, valueCount + pendingValueCount);
+
+        if(cache != null) {
+            for(int i = index; i < pendingEnd; i++) {
+                cacheValue(i, values[offset + (i - index)]);
+            }
+        }
+
+        if(index < groupEnd) {
+            int groupIndex = index - (index % GROUP_SIZE);
+            int groupOffset = findGroupOffset(index);
+
+            while(groupIndex < groupEnd) {
+                int sectionStartValue = sectionValue[getSectionIndex(groupIndex)];
+                int valueStart = Math.max(index, groupIndex);
+                int valueEnd = Math.min(groupEnd, groupIndex + GROUP_SIZE);
+
+                for(int i = valueStart; i < valueEnd; i++) {
+                    int value = values[offset + (i - index)];
+                    int delta = value - sectionStartValue;
+
+                    if(deltaValueFitsInLocation(delta, groupOffset, i - groupIndex)) {
+                        writeGroupDeltaValue(groupOffset, i - groupIndex, delta);
+                    }
+                    else {
+                        if(pendingEditedValues == null) {
+                            pendingEditedValues = new IntHashMap();
+                        }
+
+                        pendingEditedValues.put(i, value);
+                    }
+                }
+
+                groupOffset += getGroupSize(groupOffset);
+                groupIndex += GROUP_SIZE;
+            }
+
+            if(hasPendingEditedValues() &&
+               (pendingEditedValues.size() >= MAX_PENDING_EDITED_VALUES)) {
+                writePendingEditedValues();
+            }
+        }
+
+        // The values of the incomplete group are modified directly,
+        // the remaining ones are added after the last value.
+        for(int i = Math.max(index, valueCount); i < pendingEnd; i++) {
+            pendingValues[i - valueCount] = values[offset + (i - index)];
+        }
+
+        if(end > pendingEnd) {
+            addValues(values, offset + (pendingEnd - index), end - pendingEnd);
+        }
+    }
+
+    private void setSortedRange(int index, int[] values, int offset, int length) {
+        // The values must remain sorted after the range is replaced.
+        // Changing a value of a sorted array changes the delta of the next
+        // value too, so the values are always written as edited values.
+        int end = index + length;
+
+        for(int i = offset + 1; i < offset + length; i++) {
+            if(values[i] < values[i - 1]) {
+                throw new IllegalArgumentException("Values should be sorted!");
+            }
+        }
+
+        if((length > 0) &&
+           (((index > 0) && (values[offset] < getValue(index - 1))) ||
+            ((end < size()) && (values[offset + length - 1] > getValue(end))))) {
+            throw new IllegalArgumentException("Values should be sorted!");
+        }
+
+        int pendingEnd = Math.min(end, valueCount + pendingValueCount);
+
+        for(int i = index; i < pendingEnd; i++) {
+            int value = values[offset + (i - index)];
+            cacheValue(i, value);
+
+            if(i >= valueCount) {
+                pendingValues[i - valueCount] = value;
+            }
+            else {
+                if(pendingEditedValues == null) {
+                    pendingEditedValues = new IntHashMap();
+                }
+
+                pendingEditedValues.put(i, value);
+            }
+        }
+
+        if(hasPendingEditedValues() &&
+           (pendingEditedValues.size() >= MAX_PENDING_EDITED_VALUES)) {
+            writePendingEditedValues();
+        }
+
+        if(end > pendingEnd) {
+            addValues(values, offset + (pendingEnd - index), end - pendingEnd);
+        }
+    }
+
+    private void addPendingEditedValue(int index, int value) {
+        // The value could not be modified directly, write it
+        // to the data array later, together with other modified values.
+        if(pendingEditedValues == null) {
+            pendingEditedValues = new IntHashMap();
+        }
+
+        pendingEditedValues.put(index, value);
+
+        if(pendingEditedValues.size() >= MAX_PENDING_EDITED_VALUES) {
+            writePendingEditedValues();
+        }
+    }
+
+    private boolean hasPendingEditedValues() {
+        return (pendingEditedValues != null) &&
+               (pendingEditedValues.size() > 0);
+    }
+
+    private void writePendingEditedValues() {
+        if(!hasPendingEditedValues()) {
+            return;
+        }
+
+        // Only the sections containing edited values are decoded and
+        // encoded again, into a separate buffer. The data between them
+        // is then moved once to its new position and the new sections
+        // are copied in the space that remains.
+        int editCount = pendingEditedValues.size();
+        int[] editIndices = new int[editCount];
+
+        for(int i = 0; i < editCount; i++) {
+            editIndices[i] = pendingEditedValues.getKeyAt(i);
+        }
+
+        Arrays.sort(editIndices);
+
+        int[] sections = new int[editCount];
+        int[] sectionStarts = new int[editCount];
+        int[] sectionEnds = new int[editCount];
+        int[] encodedOffsets = new int[editCount + 1];
+        byte[] encoded = new byte[MAX_SECTION_DATA_SIZE];
+        int[] values = new int[SECTION_SIZE];
+        int dataSectionCount = (valueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+        int sectionCount = 0;
+        int editIndex = 0;
+
+        while(editIndex < editCount) {
+            int sectionIndex = getSectionIndex(editIndices[editIndex]);
+            int firstIndex = sectionIndex * SECTION_SIZE;
+            int count = decodeSection(sectionIndex, values);
+
+            while((editIndex < editCount) &&
+                  (getSectionIndex(editIndices[editIndex]) == sectionIndex)) {
+                int index = editIndices[editIndex];
+                values[index - firstIndex] = pendingEditedValues.get(index);
+                editIndex++;
+            }
+
+            if(encodedOffsets[sectionCount] + MAX_SECTION_DATA_SIZE > encoded.length) {
+                encoded = resizeArray(encoded);
+            }
+
+            sections[sectionCount] = sectionIndex;
+            sectionStarts[sectionCount] = sectionOffset[sectionIndex];
+            sectionEnds[sectionCount] = sectionIndex + 1 < dataSectionCount ?
+                                        sectionOffset[sectionIndex + 1] : dataOffset;
+            encodedOffsets[sectionCount + 1] = encodeSection(sectionIndex, values, count, encoded,
+                                                             encodedOffsets[sectionCount]);
+            sectionCount++;
+        }
+
+        // The data following a section moves by the size difference
+        // of all sections before it. The data moving to lower offsets
+        // is moved first, in order, then the one moving to higher offsets,
+        // in reverse order, so no data is overwritten before it's moved.
+        int[] shifts = new int[sectionCount];
+        int shift = 0;
+
+        for(int i = 0; i < sectionCount; i++) {
+            shift += (encodedOffsets[i + 1] - encodedOffsets[i]) -
+                     (sectionEnds[i] - sectionStarts[i]);
+            shifts[i] = shift;
+        }
+
+        while(dataOffset + shift > data.length) {
+            data = resizeArray(data);
+        }
+
+        for(int i = 0; i < sectionCount; i++) {
+            if(shifts[i] < 0) {
+                moveSectionsAfter(i, sectionEnds, sectionStarts, sectionCount, shifts[i]);
+            }
+        }
+
+        for(int i = sectionCount - 1; i >= 0; i--) {
+            if(shifts[i] > 0) {
+                moveSectionsAfter(i, sectionEnds, sectionStarts, sectionCount, shifts[i]);
+            }
+        }
+
+        for(int i = 0; i < sectionCount; i++) {
+            int previousShift = i > 0 ? shifts[i - 1] : 0;
+            System.arraycopy(encoded, encodedOffsets[i], data, sectionStarts[i] + previousShift,
+                             encodedOffsets[i + 1] - encodedOffsets[i]);
+        }
+
+        // Update the offsets of the sections that moved.
+        int nextSection = 0;
+        shift = 0;
+
+        for(int i = sections[0]; i < dataSectionCount; i++) {
+            sectionOffset[i] += shift;
+
+            if((nextSection < sectionCount) && (sections[nextSection] == i)) {
+                shift = shifts[nextSection];
+                nextSection++;
+            }
+        }
+
+        dataOffset += shift;
+        lastGroupIndex = -1;
+        lastGroupOffset = -1;
+        pendingEditedValues.clear();
+    }
+
+    private void moveSectionsAfter(int index, int[] sectionEnds, int[] sectionStarts,
+                                   int sectionCount, int shift) {
+        // Moves the data between the re-encoded section and the next one.
+        int start = sectionEnds[index];
+        int end = index + 1 < sectionCount ? sectionStarts[index + 1] : dataOffset;
+        System.arraycopy(data, start, data, start + shift, end - start);
+    }
+
+    private int encodeSection(int sectionIndex, int[] values, int count,
+                              byte[] destination, int destinationOffset) {
+        // Writes the groups of the section to destination, using the first
+        // value as the section start value. Returns the offset after the section.
+        sectionValue[sectionIndex] = values[0];
+        int startValue = values[0];
+
+        for(int i = 0; i < count; i += GROUP_SIZE) {
+            destinationOffset = encodeGroup(values, i, startValue, destination, destinationOffset);
+
+            if(sorted) {
+                startValue = values[i + GROUP_SIZE - 1];
+            }
+        }
+
+        if(sorted && (count > 0) && (sectionIndex == getSectionIndex(valueCount - 1))) {
+            previousGroupValue = values[count - 1];
+        }
+
+        return destinationOffset;
+    }
+
+    private int encodeGroup(int[] values, int valueOffset, int startValue,
+                            byte[] destination, int destinationOffset) {
+        // Same layout as the groups written by writePendingGroup:
+        // the header, followed by the deltas in little-endian order.
+        int header = 0;
+        int headerSize = hasFourWidths() ? FOUR_WIDTHS_HEADER_SIZE : 1;
+        int offset = destinationOffset + headerSize;
+
+        for(int i = 0; i < GROUP_SIZE; i++) {
+            int previousValue = startValue;
+
+            if(sorted && (i > 0)) {
+                previousValue = values[valueOffset + i - 1];
+            }
+
+            int delta = values[valueOffset + i] - previousValue;
+            int deltaSize = getDeltaSize(delta);
+
+            if(hasFourWidths()) {
+                header |= (deltaSize - 1) << (2 * i);
+            }
+            else if(deltaSize == 4) {
+                header |= 1 << i;
+            }
+
+            for(int k = 0; k < deltaSize; k++) {
+                destination[offset + k] = (byte)(delta >>> (8 * k));
+            }
+
+            offset += deltaSize;
+        }
+
+        for(int i = 0; i < headerSize; i++) {
+            destination[destinationOffset + i] = (byte)(header >>> (8 * i));
+        }
+
+        return offset;
+    }
+
+    private boolean deltaValueFitsInLocation(int delta, int groupOffset, int valueIndex) {
+        // There are 4 cases based on the previous delta size and the new one:
+        // Previous  New   Fits
+        //    4       4     Y
+        //    4       1     Y
+        //    1       4     N  => Add to pending edited values.
+        //    1       1     Y
+        // With the ONE_TO_FOUR_BYTES encoding the delta fits
+        // if it doesn't require more bytes than the previous one.
+        return getDeltaSize(delta) <= getGroupValueSize(groupOffset, valueIndex);
+    }
+
+    private boolean isPendingEditedValue(int index) {
+        return hasPendingEditedValues() &&
+               pendingEditedValues.containsKey(index);
+    }
+
+    @Override
+    public Integer set(int index, Integer value) {
+        if(value == null) {
+            throw new NullPointerException("Value should not be null!");
+        }
+
+        setValue(index, value);
+        return null; // Don't return last value.
+    }
+
+    public void setValue(int index, int value) {
+        if(sorted) {
+            setSortedValue(index, value);
+            return;
+        }
+
+        cacheValue(index, value);
+
+        if(index == (valueCount + pendingValueCount)) {
+            // Just append after the last inserted value.
+            addValue(value);
+        }
+        else if(isPendingEditedValue(index)) {
+            // The value will be modified after all pending values
+            // are written, because it might modify one of them.
+            addPendingEditedValue(index, value);
+        }
+        else if((pendingValueCount > 0) && (index >= valueCount)) {
+            // The value is part of the current incomplete group,
+            // modify it directly, before it is written to the data array.
+            int pendingIndex = index - valueCount;
+            pendingValues[pendingIndex] = value;
+        }
+        else {
+            // The value overwrites an existing value.
+            // There are two cases:
+            // 1. The value is small enough to fit in the existing location.
+            // 2. The location must be enlarged to make room for the value.
+            //    To simplify implementation a copy of the current array is made,
+            //    but using the modified value. To improve performance many edit
+            //    operations are accumulated and written at once.
+            int sectionIndex = getSectionIndex(index);
+            int sectionStartValue = sectionValue[sectionIndex];
+            int delta = value - sectionStartValue;
+
+            // Start with the current offset at the beginning
+            // of the section where the value resides.
+            int valueIndex = getSectionValueIndex(index);
+            int groupOffset = sectionOffset[sectionIndex];
+
+            // Skip over groups of multiple values.
+            while(valueIndex >= GROUP_SIZE) {
+                groupOffset += getGroupSize(groupOffset);
+                valueIndex -= GROUP_SIZE;
+            }
+
+            if(deltaValueFitsInLocation(delta, groupOffset, valueIndex)) {
+                // Replace the existing value.
+                writeGroupDeltaValue(groupOffset, valueIndex, delta);
+            }
+            else addPendingEditedValue(index, value);
+        }
+    }
+
+    private void setSortedValue(int index, int value) {
+        if(index == size()) {
+            addValue(value);
+            return;
+        }
+        else if((index < 0) || (index > size())) {
+            throw new ArrayIndexOutOfBoundsException("Invalid value index!");
+        }
+
+        // The value must not be smaller than the previous one
+        // or larger than the next one.
+        if(((index > 0) && (value < getValue(index - 1))) ||
+           ((index + 1 < size()) && (value > getValue(index + 1)))) {
+            throw new IllegalArgumentException("Values should be sorted!");
+        }
+
+        cacheValue(index, value);
+
+        if(index >= valueCount) {
+            pendingValues[index - valueCount] = value;
+        }
+        else addPendingEditedValue(index, value);
+    }
+
+    @Override
+    public void add(int index, Integer value) {
+        if(value == null) {
+            throw new NullPointerException("Value should not be null!");
+        }
+
+        insertValue(index, value);
+    }
+
+    public void insertValue(int index, int value) {
+        // All values after index move to the next position, which changes
+        // the groups and sections they belong to. Each section starting
+        // with the one containing index is encoded again.
+        if((index < 0) || (index > size())) {
+            throw new ArrayIndexOutOfBoundsException("Invalid value index!");
+        }
+
+        if(sorted &&
+           (((index > 0) && (value < getValue(index - 1))) ||
+            ((index < size()) && (value > getValue(index))))) {
+            throw new IllegalArgumentException("Values should be sorted!");
+        }
+
+        writePendingEditedValues();
+        resetShiftedValues();
+
+        if(index < valueCount) {
+            // The last value of the last section becomes
+            // the first value of the incomplete group.
+            value = rewriteSections(index, value, true);
+            index = valueCount;
+        }
+
+        int pendingIndex = index - valueCount;
+        System.arraycopy(pendingValues, pendingIndex, pendingValues, pendingIndex + 1,
+                         pendingValueCount - pendingIndex);
+        pendingValues[pendingIndex] = value;
+        pendingValueCount++;
+
+        if(pendingValueCount == GROUP_SIZE) {
+            writePendingGroup();
+        }
+    }
+
+    @Override
+    public Integer remove(int index) {
+        return removeValue(index);
+    }
+
+    public int removeValue(int index) {
+        // The values after index move to the previous position,
+        // the sections are encoded again the same way as by insertValue.
+        if((index < 0) || (index >= size())) {
+            throw new ArrayIndexOutOfBoundsException("Invalid value index!");
+        }
+
+        writePendingEditedValues();
+        resetShiftedValues();
+
+        if(index < valueCount) {
+            return rewriteSections(index, 0, false);
+        }
+
+        int pendingIndex = index - valueCount;
+        int value = pendingValues[pendingIndex];
+        System.arraycopy(pendingValues, pendingIndex + 1, pendingValues, pendingIndex,
+                         pendingValueCount - pendingIndex - 1);
+        pendingValueCount--;
+        return value;
+    }
+
+    private void resetShiftedValues() {
+        // The last accessed group and the cached values
+        // are associated with the old indices.
+        lastGroupIndex = -1;
+        lastGroupOffset = -1;
+
+        if(cache != null) {
+            cache = cache.getCompatibleInstance();
+        }
+    }
+
+    private int rewriteSections(int index, int value, boolean insert) {
+        // Inserts value at index, or removes the value at index, by encoding
+        // again the sections starting with the one containing index, one at
+        // a time. When inserting, each section gives its last value to the next
+        // one and the last section gives it to the incomplete group, which
+        // is returned. When removing, each section takes the first value
+        // of the next one and the removed value is returned.
+        // A section is written over the old ones once these were decoded;
+        // the sections that grew wait in a buffer until enough old sections
+        // were decoded, so the buffer holds only the growth, not all sections.
+        int dataSectionCount = (valueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+        int firstSection = getSectionIndex(index);
+        int[] values = new int[SECTION_SIZE];
+        byte[] encoded = new byte[MAX_SECTION_DATA_SIZE];
+        int encodedStart = 0;
+        int encodedEnd = 0;
+        int writeOffset = sectionOffset[firstSection];
+        int lastCount = 0;
+
+        for(int i = firstSection; i < dataSectionCount; i++) {
+            int readOffset = i + 1 < dataSectionCount ? sectionOffset[i + 1] : dataOffset;
+            int count = decodeSection(i, values);
+            int position = i == firstSection ? getSectionValueIndex(index) : 0;
+
+            if(insert) {
+                int lastValue = values[count - 1];
+                System.arraycopy(values, position, values, position + 1, count - position - 1);
+                values[position] = value;
+                value = lastValue;
+            }
+            else {
+                if(i == firstSection) {
+                    value = values[position];
+                }
+
+                System.arraycopy(values, position + 1, values, position, count - position - 1);
+
+                if(i + 1 < dataSectionCount) {
+                    // The first value is read from the group, the section start
+                    // value of an unsorted array is not modified by setValue.
+                    values[count - 1] = readGroupValue(sectionOffset[i + 1], 0, i + 1);
+                }
+                else if(pendingValueCount > 0) {
+                    values[count - 1] = pendingValues[0];
+                    System.arraycopy(pendingValues, 1, pendingValues, 0, pendingValueCount - 1);
+                    pendingValueCount--;
+                }
+                else {
+                    // The last group is no longer complete,
+                    // its values become the incomplete group.
+                    count -= GROUP_SIZE;
+                    System.arraycopy(values, count, pendingValues, 0, GROUP_SIZE - 1);
+                    pendingValueCount = GROUP_SIZE - 1;
+                    valueCount -= GROUP_SIZE;
+                }
+            }
+
+            if(encodedEnd + MAX_SECTION_DATA_SIZE > encoded.length) {
+                // The written sections are removed from the buffer
+                // only if they take at least half of it.
+                if(encodedStart >= encoded.length / 2) {
+                    System.arraycopy(encoded, encodedStart, encoded, 0, encodedEnd - encodedStart);
+                    encodedEnd -= encodedStart;
+                    encodedStart = 0;
+                }
+
+                if(encodedEnd + MAX_SECTION_DATA_SIZE > encoded.length) {
+                    encoded = resizeArray(encoded);
+                }
+            }
+
+            sectionOffset[i] = writeOffset + (encodedEnd - encodedStart);
+            encodedEnd = encodeSection(i, values, count, encoded, encodedEnd);
+            lastCount = count;
+
+            int writeCount = Math.min(encodedEnd - encodedStart, readOffset - writeOffset);
+
+            if(writeCount > 0) {
+                System.arraycopy(encoded, encodedStart, data, writeOffset, writeCount);
+                encodedStart += writeCount;
+                writeOffset += writeCount;
+            }
+        }
+
+        // All old sections were decoded, write the remaining ones.
+        while(writeOffset + (encodedEnd - encodedStart) > data.length) {
+            data = resizeArray(data);
+        }
+
+        System.arraycopy(encoded, encodedStart, data, writeOffset, encodedEnd - encodedStart);
+        dataOffset = writeOffset + (encodedEnd - encodedStart);
+
+        if(sorted && (lastCount > 0)) {
+            previousGroupValue = values[lastCount - 1];
+        }
+
+        return value;
+    }
+
+    public int lowerBound(int value) {
+        // Returns the index of the first value that is not smaller
+        // than the specified one, or the size of the array if there is none.
+        return findBound(value, false);
+    }
+
+    public int upperBound(int value) {
+        // Returns the index of the first value that is larger
+        // than the specified one, or the size of the array if there is none.
+        return findBound(value, true);
+    }
+
+    public int indexOfValue(int value) {
+        int index = lowerBound(value);
+
+        if((index < size()) && (getValue(index) == value)) {
+            return index;
+        }
+
+        return -1;
+    }
+
+    public boolean containsValue(int value) {
+        return indexOfValue(value) != -1;
+    }
+
+    @Override
+    public int indexOf(Object value) {
+        if(sorted && (value instanceof Integer)) {
+            return indexOfValue((Integer)value);
+        }
+
+        return super.indexOf(value);
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return indexOf(value) != -1;
+    }
+
+    private boolean isAfterBound(int value, int bound, boolean upper) {
+        return upper ? (value > bound) : (value >= bound);
+    }
+
+    private int findBound(int bound, boolean upper) {
+        if(!sorted) {
+            throw new UnsupportedOperationException("Array is not sorted!");
+        }
+
+        // Binary search for the first section starting after the bound,
+        // the bound can be found only in the previous section,
+        // which is the only one that must be decoded.
+        writePendingEditedValues();
+        int sectionCount = (valueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+        int low = 0;
+        int high = sectionCount;
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+
+            if(isAfterBound(sectionValue[middle], bound, upper)) {
+                high = middle;
+            }
+            else low = middle + 1;
+        }
+
+        if(low > 0) {
+            if(searchValues == null) {
+                searchValues = new int[SECTION_SIZE];
+            }
+
+            int count = decodeSection(low - 1, searchValues);
+            int valueLow = 1; // The first value is known to be before the bound.
+            int valueHigh = count;
+
+            while(valueLow < valueHigh) {
+                int middle = (valueLow + valueHigh) >>> 1;
+
+                if(isAfterBound(searchValues[middle], bound, upper)) {
+                    valueHigh = middle;
+                }
+                else valueLow = middle + 1;
+            }
+
+            if(valueLow < count) {
+                return (low - 1) * SECTION_SIZE + valueLow;
+            }
+        }
+
+        if(low < sectionCount) {
+            return low * SECTION_SIZE;
+        }
+
+        // Search the values that were not written yet to the data array.
+        for(int i = 0; i < pendingValueCount; i++) {
+            if(isAfterBound(pendingValues[i], bound, upper)) {
+                return valueCount + i;
+            }
+        }
+
+        return size();
+    }
+
+    private int decodeSection(int sectionIndex, int[] destination) {
+        // Decodes the values of a section into destination and returns their number.
+        int count = Math.min(SECTION_SIZE, valueCount - sectionIndex * SECTION_SIZE);
+        int groupOffset = sectionOffset[sectionIndex];
+        int previousValue = sectionValue[sectionIndex];
+
+        for(int i = 0; i < count; i += GROUP_SIZE) {
+            groupOffset = decodeGroup(groupOffset, previousValue, destination, i);
+
+            if(sorted) {
+                previousValue = destination[i + GROUP_SIZE - 1];
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return valueCount + pendingValueCount;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    public VariableIntEncoding getEncoding() {
+        return encoding;
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        // Resize the arrays only once, so that expectedSize values can be
+        // added without any other resizing if each of them requires 1 byte.
+        int groupCount = (expectedSize + GROUP_SIZE - 1) / GROUP_SIZE;
+        int headerSize = hasFourWidths() ? FOUR_WIDTHS_HEADER_SIZE : 1;
+        long dataSize = (long)expectedSize + (long)groupCount * headerSize;
+        int sectionCount = (expectedSize + SECTION_SIZE - 1) / SECTION_SIZE;
+
+        if(dataSize > data.length) {
+            data = Arrays.copyOf(data, (int)Math.min(dataSize, Integer.MAX_VALUE - 8));
+        }
+
+        if(sectionCount > sectionOffset.length) {
+            sectionOffset = Arrays.copyOf(sectionOffset, sectionCount);
+            sectionValue = Arrays.copyOf(sectionValue, sectionCount);
+        }
+    }
+
+    public VariableIntArray trim() {
+        flush();
         data = compactArray(data, dataOffset);
         return this;
     }
+
+    public void writeTo(DataOutput output) throws IOException {
+        // The edited values are written first, so that only the data array,
+        // the section index and the incomplete group must be saved.
+        writePendingEditedValues();
+        int sectionCount = (valueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+
+        StreamFormat.writeVersion(output, getFormatVersion());
+        output.writeInt(valueCount);
+        output.writeInt(dataOffset);
+        StreamFormat.writeInts(output, sectionOffset, sectionCount);
+        StreamFormat.writeInts(output, sectionValue, sectionCount);
+        output.write(data, 0, dataOffset);
+
+        output.writeByte(pendingValueCount);
+        StreamFormat.writeInts(output, pendingValues, pendingValueCount);
+    }
+
+    public void readFrom(DataInput input) throws IOException {
+        // Replaces the values of the array, the encoded data
+        // is copied unchanged, without decoding any group.
+        // The array is changed only after everything was read.
+        int version = checkFormatVersion(input.readUnsignedByte());
+        int newValueCount = checkValueCount(StreamFormat.readCount(input, Integer.MAX_VALUE - GROUP_SIZE));
+        int newDataOffset = StreamFormat.readCount(input, Integer.MAX_VALUE);
+        int sectionCount = (newValueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+        int sectionCapacity = DEFAULT_DATA_CAPACITY / SECTION_SIZE;
+
+        int[] newSectionOffset = StreamFormat.readInts(input, sectionCount, sectionCapacity);
+        int[] newSectionValue = StreamFormat.readInts(input, sectionCount, sectionCapacity);
+        byte[] newData = new byte[Math.max(newDataOffset, DEFAULT_DATA_CAPACITY)];
+        input.readFully(newData, 0, newDataOffset);
+
+        int newPendingValueCount = checkPendingValueCount(input.readUnsignedByte());
+        int[] newPendingValues = StreamFormat.readInts(input, newPendingValueCount, GROUP_SIZE);
+
+        setFormatVersion(version);
+        valueCount = newValueCount;
+        dataOffset = newDataOffset;
+        sectionOffset = newSectionOffset;
+        sectionValue = newSectionValue;
+        data = newData;
+        pendingValueCount = newPendingValueCount;
+        pendingValues = newPendingValues;
+        resetReadState();
+    }
+
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        // Same format as writeTo(DataOutput), but the data array
+        // is transferred directly, without copying it to a stream.
+        writePendingEditedValues();
+        int sectionCount = (valueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put((byte)getFormatVersion());
+        header.putInt(valueCount);
+        header.putInt(dataOffset);
+        header.flip();
+        StreamFormat.writeFully(channel, header);
+
+        StreamFormat.writeInts(channel, sectionOffset, sectionCount);
+        StreamFormat.writeInts(channel, sectionValue, sectionCount);
+        StreamFormat.writeFully(channel, ByteBuffer.wrap(data, 0, dataOffset));
+
+        ByteBuffer pending = ByteBuffer.allocate(1 + (pendingValueCount << 2));
+        pending.put((byte)pendingValueCount);
+        pending.asIntBuffer().put(pendingValues, 0, pendingValueCount);
+        pending.clear();
+        StreamFormat.writeFully(channel, pending);
+    }
+
+    public void readFrom(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        StreamFormat.readFully(channel, header);
+        header.flip();
+
+        int version = checkFormatVersion(header.get() & 0xFF);
+        int newValueCount = checkValueCount(StreamFormat.checkCount(header.getInt(), Integer.MAX_VALUE - GROUP_SIZE));
+        int newDataOffset = StreamFormat.checkCount(header.getInt(), Integer.MAX_VALUE);
+        int sectionCount = (newValueCount + SECTION_SIZE - 1) / SECTION_SIZE;
+        int sectionCapacity = DEFAULT_DATA_CAPACITY / SECTION_SIZE;
+
+        int[] newSectionOffset = StreamFormat.readInts(channel, sectionCount, sectionCapacity);
+        int[] newSectionValue = StreamFormat.readInts(channel, sectionCount, sectionCapacity);
+        byte[] newData = new byte[Math.max(newDataOffset, DEFAULT_DATA_CAPACITY)];
+        StreamFormat.readFully(channel, ByteBuffer.wrap(newData, 0, newDataOffset));
+
+        ByteBuffer pendingCount = ByteBuffer.allocate(1);
+        StreamFormat.readFully(channel, pendingCount);
+        int newPendingValueCount = checkPendingValueCount(pendingCount.get(0) & 0xFF);
+        int[] newPendingValues = StreamFormat.readInts(channel, newPendingValueCount, GROUP_SIZE);
+
+        setFormatVersion(version);
+        valueCount = newValueCount;
+        dataOffset = newDataOffset;
+        sectionOffset = newSectionOffset;
+        sectionValue = newSectionValue;
+        data = newData;
+        pendingValueCount = newPendingValueCount;
+        pendingValues = newPendingValues;
+        resetReadState();
+    }
+
+    private int getFormatVersion() {
+        int version = hasFourWidths() ? FOUR_WIDTHS_FORMAT_VERSION : FORMAT_VERSION;
+        return sorted ? version + SORTED_FORMAT_VERSION_OFFSET : version;
+    }
+
+    private static int checkFormatVersion(int version) throws IOException {
+        // The format version identifies the encoding of the groups
+        // and if the values are sorted.
+        int unsortedVersion = version > FOUR_WIDTHS_FORMAT_VERSION ? version - SORTED_FORMAT_VERSION_OFFSET : version;
+
+        if(unsortedVersion != FOUR_WIDTHS_FORMAT_VERSION) {
+            StreamFormat.checkVersion(unsortedVersion, FORMAT_VERSION);
+        }
+
+        return version;
+    }
+
+    private static int checkValueCount(int count) throws IOException {
+        // Only complete groups are encoded, the others are pending.
+        if(count % GROUP_SIZE != 0) {
+            throw new StreamCorruptedException("Invalid value count!");
+        }
+
+        return count;
+    }
+
+    private static int checkPendingValueCount(int count) throws IOException {
+        if(count >= GROUP_SIZE) {
+            throw new StreamCorruptedException("Invalid group!");
+        }
+
+        return count;
+    }
+
+    private void setFormatVersion(int version) {
+        sorted = version > FOUR_WIDTHS_FORMAT_VERSION;
+
+        if(sorted) {
+            version -= SORTED_FORMAT_VERSION_OFFSET;
+        }
+
+        encoding = version == FOUR_WIDTHS_FORMAT_VERSION ? VariableIntEncoding.ONE_TO_FOUR_BYTES : VariableIntEncoding.ONE_OR_FOUR_BYTES;
+    }
+
+    private void resetReadState() {
+        // The edited values and the last accessed group
+        // belong to the values that were replaced.
+        pendingEditedValues = null;
+        lastGroupIndex = -1;
+        lastGroupOffset = -1;
+
+        if(cache != null) {
+            cache = cache.getCompatibleInstance();
+        }
+
+        // Sorted arrays need the last written value to add new groups.
+        if(sorted && (valueCount > 0)) {
+            previousGroupValue = getValue(valueCount - 1);
+        }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput output) throws IOException {
+        writeTo(output);
+    }
+
+    @Override
+    public void readExternal(ObjectInput input) throws IOException {
+        readFrom(input);
+    }
 }
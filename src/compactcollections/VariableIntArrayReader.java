@@ -0,0 +1,201 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+
+// Reads the values written by VariableIntArrayWriter in order, decoding
+// one section at a time, so the memory used doesn't depend on the number of values.
+public class VariableIntArrayReader implements Closeable {
+    private static final int GROUP_SIZE = VariableIntArrayWriter.GROUP_SIZE;
+    private static final int SECTION_SIZE = VariableIntArrayWriter.SECTION_SIZE;
+
+    // The stream is read in blocks, the values are decoded from the block.
+    private static final int BLOCK_SIZE = 65536;
+
+    private InputStream input;
+    private byte[] block;
+    private int blockOffset;     // The current position in the block.
+    private int blockLength;     // The number of bytes read into the block.
+
+    private int[] sectionValues; // The decoded values of the current section.
+    private int sectionValueCount;
+    private int sectionPosition; // The index of the next value in the section.
+    private long sectionCount;   // The number of sections read.
+    private long valueCount;     // The number of values in the sections read.
+    private boolean endReached;
+    private int value;           // The value found by the last call to advance.
+
+    public VariableIntArrayReader(InputStream input) throws IOException {
+        this.input = input;
+        block = new byte[BLOCK_SIZE];
+        sectionValues = new int[SECTION_SIZE];
+
+        if(readInt() != VariableIntArrayWriter.MAGIC) {
+            throw new StreamCorruptedException("Invalid stream format!");
+        }
+
+        StreamFormat.checkVersion(readByte(), VariableIntArrayWriter.FORMAT_VERSION);
+    }
+
+    private void readBlock() throws IOException {
+        blockLength = input.read(block, 0, block.length);
+        blockOffset = 0;
+
+        if(blockLength <= 0) {
+            blockLength = 0;
+            throw new EOFException();
+        }
+    }
+
+    private int readByte() throws IOException {
+        if(blockOffset == blockLength) {
+            readBlock();
+        }
+
+        int value = block[blockOffset] & 0xFF;
+        blockOffset++;
+        return value;
+    }
+
+    private int readInt() throws IOException {
+        if(blockOffset + 4 > blockLength) {
+            // The value spans two blocks.
+            return readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+        }
+
+        int value = (block[blockOffset] & 0xFF)             |
+                    ((block[blockOffset + 1] & 0xFF) << 8)  |
+                    ((block[blockOffset + 2] & 0xFF) << 16) |
+                    ((block[blockOffset + 3] & 0xFF) << 24);
+        blockOffset += 4;
+        return value;
+    }
+
+    private long readLong() throws IOException {
+        return ((long)readInt() & 0xFFFFFFFFL) | ((long)readInt() << 32);
+    }
+
+    private boolean readSection() throws IOException {
+        int count = readByte();
+
+        if(count == 0) {
+            readTrailer();
+            return false;
+        }
+        else if(count > SECTION_SIZE) {
+            throw new StreamCorruptedException("Invalid section!");
+        }
+
+        // The values are stored as the delta from the section start value,
+        // the padding values of the last group are decoded, but not returned.
+        int sectionValue = readInt();
+
+        for(int groupStart = 0; groupStart < count; groupStart += GROUP_SIZE) {
+            int header = readByte();
+
+            for(int i = 0; i < GROUP_SIZE; i++) {
+                int delta = (header & (1 << i)) != 0 ? readInt() : (byte)readByte();
+                sectionValues[groupStart + i] = sectionValue + delta;
+            }
+        }
+
+        sectionValueCount = count;
+        sectionPosition = 0;
+        sectionCount++;
+        valueCount += count;
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        // The section index is not needed when reading sequentially,
+        // only the number of values and sections is checked.
+        for(long i = 0; i < sectionCount; i++) {
+            readLong();
+        }
+
+        if((readLong() != valueCount) || (readLong() != sectionCount)) {
+            throw new StreamCorruptedException("Invalid stream trailer!");
+        }
+
+        endReached = true;
+    }
+
+    public boolean advance() throws IOException {
+        if(sectionPosition == sectionValueCount) {
+            if(endReached || !readSection()) {
+                return false;
+            }
+        }
+
+        value = sectionValues[sectionPosition];
+        sectionPosition++;
+        return true;
+    }
+
+    public int value() {
+        return value;
+    }
+
+    public int read(int[] values, int offset, int length) throws IOException {
+        // Copies up to length values, returns the number of values copied,
+        // or -1 if all values were read.
+        if((offset < 0) || (length < 0) || (offset + length > values.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        int copied = 0;
+
+        while(copied < length) {
+            if(sectionPosition == sectionValueCount) {
+                if(endReached || !readSection()) {
+                    break;
+                }
+            }
+
+            int count = Math.min(length - copied, sectionValueCount - sectionPosition);
+            System.arraycopy(sectionValues, sectionPosition, values, offset + copied, count);
+            sectionPosition += count;
+            copied += count;
+        }
+
+        return (copied == 0) && (length > 0) ? -1 : copied;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
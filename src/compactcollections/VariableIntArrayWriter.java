@@ -0,0 +1,231 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Encodes values with the group variant encoding of VariableIntArray and writes
+// them to a stream section by section, so that any number of values can be
+// written while only the current section is kept in memory.
+// The stream layout (all numbers are little-endian):
+//   header:   MAGIC (4 bytes), FORMAT_VERSION (1 byte)
+//   sections: the number of values in the section (1 byte, 1-64),
+//             the section start value (4 bytes), then the groups:
+//             a 1-byte header followed by 1 or 4 byte deltas, as in VariableIntArray
+//             (the last group of the last section is padded with zero deltas)
+//   end:      a 0 byte instead of the number of values of a section
+//   trailer:  the offset of each section in the stream (8 bytes each),
+//             followed by the number of values and of sections (8 bytes each),
+//             so that the index can be found from the end of a file.
+public class VariableIntArrayWriter implements Closeable {
+    // Identifies the stream format ("CCVS").
+    static final int MAGIC = 0x43435653;
+
+    // The version of the stream format, incremented when it changes.
+    static final int FORMAT_VERSION = 1;
+
+    static final int GROUP_SIZE = VariableIntArray.GROUP_SIZE;
+    static final int SECTION_SIZE = VariableIntArray.SECTION_SIZE;
+
+    // The encoded sections are collected in a block that is written
+    // to the stream when full, which avoids writing each section separately.
+    private static final int BLOCK_SIZE = 65536;
+
+    // The maximum size of an encoded section: the number of values,
+    // the start value and the groups having only 4 byte deltas.
+    private static final int MAX_SECTION_SIZE = 5 + (SECTION_SIZE / GROUP_SIZE) * (1 + 4 * GROUP_SIZE);
+
+    private OutputStream output;
+    private byte[] block;        // The encoded data not yet written to the stream.
+    private int blockOffset;     // The current position in the block.
+    private long streamOffset;   // The number of bytes written to the stream.
+
+    private int[] sectionValues; // The values of the current section.
+    private int sectionValueCount;
+    private long valueCount;     // The number of values in the complete sections.
+
+    // The offset of each section, written in the trailer.
+    private long[] sectionOffsets;
+    private int sectionCount;
+
+    public VariableIntArrayWriter(OutputStream output) throws IOException {
+        this.output = output;
+        block = new byte[BLOCK_SIZE];
+        sectionValues = new int[SECTION_SIZE];
+        sectionOffsets = new long[64];
+
+        writeInt(MAGIC);
+        writeByte(FORMAT_VERSION);
+    }
+
+    private void writeByte(int value) {
+        block[blockOffset] = (byte)value;
+        blockOffset++;
+    }
+
+    private void writeInt(int value) {
+        block[blockOffset] = (byte)value;
+        block[blockOffset + 1] = (byte)(value >>> 8);
+        block[blockOffset + 2] = (byte)(value >>> 16);
+        block[blockOffset + 3] = (byte)(value >>> 24);
+        blockOffset += 4;
+    }
+
+    private void writeLong(long value) {
+        writeInt((int)value);
+        writeInt((int)(value >>> 32));
+    }
+
+    private void ensureBlockSpace(int size) throws IOException {
+        if(blockOffset + size > block.length) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        output.write(block, 0, blockOffset);
+        streamOffset += blockOffset;
+        blockOffset = 0;
+    }
+
+    private boolean requiresFourBytes(int value) {
+        return (value < -128) || (value > 127);
+    }
+
+    private void writeSection() throws IOException {
+        ensureBlockSpace(MAX_SECTION_SIZE);
+
+        if(sectionCount == sectionOffsets.length) {
+            long[] newOffsets = new long[sectionOffsets.length * 2];
+            System.arraycopy(sectionOffsets, 0, newOffsets, 0, sectionOffsets.length);
+            sectionOffsets = newOffsets;
+        }
+
+        sectionOffsets[sectionCount] = streamOffset + blockOffset;
+        sectionCount++;
+
+        // All values are stored as the delta from the first value
+        // of the section, same as in VariableIntArray.
+        int sectionValue = sectionValues[0];
+        writeByte(sectionValueCount);
+        writeInt(sectionValue);
+
+        // The last group is completed with values equal to the start value.
+        int paddedCount = (sectionValueCount + GROUP_SIZE - 1) & ~(GROUP_SIZE - 1);
+
+        for(int i = sectionValueCount; i < paddedCount; i++) {
+            sectionValues[i] = sectionValue;
+        }
+
+        for(int groupStart = 0; groupStart < sectionValueCount; groupStart += GROUP_SIZE) {
+            int header = 0;
+
+            for(int i = 0; i < GROUP_SIZE; i++) {
+                if(requiresFourBytes(sectionValues[groupStart + i] - sectionValue)) {
+                    header |= 1 << i;
+                }
+            }
+
+            writeByte(header);
+
+            for(int i = 0; i < GROUP_SIZE; i++) {
+                int delta = sectionValues[groupStart + i] - sectionValue;
+
+                if((header & (1 << i)) != 0) {
+                    writeInt(delta);
+                }
+                else writeByte(delta);
+            }
+        }
+
+        valueCount += sectionValueCount;
+        sectionValueCount = 0;
+    }
+
+    public void addValue(int value) throws IOException {
+        sectionValues[sectionValueCount] = value;
+        sectionValueCount++;
+
+        if(sectionValueCount == SECTION_SIZE) {
+            writeSection();
+        }
+    }
+
+    public void addValues(int[] values) throws IOException {
+        addValues(values, 0, values.length);
+    }
+
+    public void addValues(int[] values, int offset, int length) throws IOException {
+        if((offset < 0) || (length < 0) || (offset + length > values.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        int end = offset + length;
+
+        for(int i = offset; i < end; i++) {
+            addValue(values[i]);
+        }
+    }
+
+    public long size() {
+        return valueCount + sectionValueCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Writes the last incomplete section, the end marker and the trailer.
+        if(output == null) {
+            return;
+        }
+
+        if(sectionValueCount > 0) {
+            writeSection();
+        }
+
+        ensureBlockSpace(1);
+        writeByte(0);
+
+        for(int i = 0; i < sectionCount; i++) {
+            ensureBlockSpace(8);
+            writeLong(sectionOffsets[i]);
+        }
+
+        ensureBlockSpace(16);
+        writeLong(valueCount);
+        writeLong(sectionCount);
+        writeBlock();
+
+        output.close();
+        output = null;
+    }
+}
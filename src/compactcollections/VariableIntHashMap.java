@@ -30,10 +30,19 @@
 // (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections;
-import java.io.Serializable;
+import compactcollections.functions.IntIntConsumer;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
 import java.util.*;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
 
-public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements Serializable {
+public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements Externalizable {
     public static class MapEntry implements Map.Entry<Integer, Integer> {
         private int key;
         private int value;
@@ -91,17 +100,47 @@ public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements
     // A value of 4 seems to be the best in most cases.
     private static final int LOAD_FACTOR = 4;
 
+    // The length of a bucket chain above which the hash strategy is replaced
+    // by a stronger one. With a good hash function the chains contain a few
+    // entries, a much longer one means that many keys have the same hash code.
+    private static final int MAX_CHAIN_LENGTH = 32;
+
+    // The maximum number of times the hash strategy is replaced,
+    // avoids rehashing repeatedly when the keys can't be spread better.
+    private static final int MAX_HASH_STRATEGY_CHANGES = 4;
+
+    // The version of the layout written by writeTo.
+    private static final int FORMAT_VERSION = 1;
+
     private int count;             // The total number of values in the map.
     private int[] table;           // Start index of buckets.
     private long[] buckets;        // <Key, Next Table Index> pairs.
     private VariableIntArray data; // The values, stored with variable-sizes integers.
 
+    private IntHashStrategy hashStrategy; // Computes the hash code of the keys.
+    private int hashStrategyChanges;      // The number of times the hash strategy was replaced.
+    private int lastChainLength;          // The length of the chain found by the last search.
+
     public VariableIntHashMap() {
+        this(new IdentityIntHashStrategy());
+    }
+
+    public VariableIntHashMap(IntHashStrategy hashStrategy) {
+        this.hashStrategy = hashStrategy;
         resetToDefault();
     }
 
+    public VariableIntHashMap(int expectedSize) {
+        this(expectedSize, new IdentityIntHashStrategy());
+    }
+
+    public VariableIntHashMap(int expectedSize, IntHashStrategy hashStrategy) {
+        this(hashStrategy);
+        ensureCapacity(expectedSize);
+    }
+
     public VariableIntHashMap(Set<Entry<Integer, Integer>> values) {
-        this();
+        this(values.size());
         for(Entry<Integer, Integer> pair : values) {
             put(pair.getKey(), pair.getValue());
         }
@@ -136,20 +175,69 @@ public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements
         return count;
     }
 
+    public IntHashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    private class EntryIterator implements Iterator<Entry<Integer, Integer>> {
+        private int index; // The index of the next entry.
+
+        @Override
+        public boolean hasNext() {
+            return index < count;
+        }
+
+        @Override
+        public Entry<Integer, Integer> next() {
+            if(index >= count) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<Integer, Integer> entry = new MapEntry(extractKey(buckets[index]),
+                                                         data.getValue(index));
+            index++;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class EntryCursor implements IntIntCursor {
+        private int index = -1;
+
+        @Override
+        public boolean advance() {
+            index++;
+            return index < count;
+        }
+
+        @Override
+        public int key() {
+            return extractKey(buckets[index]);
+        }
+
+        @Override
+        public int value() {
+            // Consecutive values are usually found in the same group,
+            // which is cached by the array, so no search is needed.
+            return data.getValue(index);
+        }
+
+        @Override
+        public void reset() {
+            index = -1;
+        }
+    }
+
     @Override
     public Set<Entry<Integer, Integer>> entrySet() {
         return new AbstractSet<Entry<Integer, Integer>>() {
             @Override
             public Iterator<Entry<Integer, Integer>> iterator() {
-                // Not the most efficient implementation, building
-                // the pair list could be avoided by using a custom iterator.
-                List<Entry<Integer, Integer>> pairs =
-                        new ArrayList<Entry<Integer, Integer>>(count);
-                for(int i = 0; i < count; i++) {
-                    pairs.add(new MapEntry(extractKey(buckets[i]), data.get(i)));
-                }
-
-                return pairs.iterator();
+                return new EntryIterator();
             }
 
             @Override
@@ -159,6 +247,20 @@ public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements
         };
     }
 
+    public IntIntCursor cursor() {
+        // The cursor visits the entries in the order they were added,
+        // without creating any objects while iterating.
+        return new EntryCursor();
+    }
+
+    public void forEachEntry(IntIntConsumer consumer) {
+        // The values are read in order, so the group
+        // cached by the array is reused most of the time.
+        for(int i = 0; i < count; i++) {
+            consumer.accept(extractKey(buckets[i]), data.getValue(i));
+        }
+    }
+
     private void resetToDefault() {
         table = new int[DEFAULT_TABLE_SIZE];
         Arrays.fill(table, -1);
@@ -212,29 +314,83 @@ public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements
                 return; // Table shouldn't grow further.
             }
 
-            // Create a new table and rehash the bucket start keys
-            // into the new table. On conflict the buckets are chained.
-            table = new int[newTableSize];
-            Arrays.fill(table, -1);
-
-            for(int i = 0; i < count; i++) {
-                long bucket = buckets[i];
-                int key = extractKey(bucket);
-                int keyHash = computeHash(key);
-
-                int previousBucketIndex = table[keyHash];
-                table[keyHash] = i;
-
-                if(previousBucketIndex != -1) {
-                    // The bucket that was associated with the hash code
-                    // must be added at the end of the current bucket.
-                    buckets[i] = replaceNext(previousBucketIndex, bucket);
-                }
-                else {
-                    // This is a single-element bucket chain (it is possible
-                    // to be included in another chain at a later step).
-                    buckets[i] = replaceNext(-1, bucket);
-                }
+            rebuildTable(newTableSize);
+        }
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        // Resize the arrays and rehash the table only once, so that
+        // expectedSize entries can be added without any other resizing.
+        // The values array is sized for values requiring a single byte.
+        if(expectedSize > buckets.length) {
+            buckets = Arrays.copyOf(buckets, expectedSize);
+        }
+
+        data.ensureCapacity(expectedSize);
+
+        int tableSize = getTableSizeFor(expectedSize);
+
+        if(tableSize > table.length) {
+            rebuildTable(tableSize);
+        }
+    }
+
+    private int getTableSizeFor(int expectedSize) {
+        // The table grows when count / LOAD_FACTOR reaches its size,
+        // find the smallest size for which this doesn't happen.
+        int maxCount = (expectedSize - 1) / LOAD_FACTOR;
+        int tableSize = table.length;
+
+        while(tableSize <= maxCount) {
+            int newTableSize = getNextTableSize(tableSize);
+
+            if(newTableSize <= tableSize) {
+                break; // Table shouldn't grow further.
+            }
+
+            tableSize = newTableSize;
+        }
+
+        return tableSize;
+    }
+
+    private void strengthenHashStrategy() {
+        // A very long bucket chain was created, which means that the keys
+        // are not spread well by the current hash strategy (for example,
+        // multiples of a large power of two with the identity strategy).
+        if(hashStrategyChanges < MAX_HASH_STRATEGY_CHANGES) {
+            hashStrategy = hashStrategy.getStrongerStrategy();
+            hashStrategyChanges++;
+            rebuildTable(table.length);
+        }
+    }
+
+    private void rebuildTable(int tableSize) {
+        // Create a new table and rehash the bucket start keys
+        // into the new table. On conflict the buckets are chained.
+        if(tableSize != table.length) {
+            table = new int[tableSize];
+        }
+
+        Arrays.fill(table, -1);
+
+        for(int i = 0; i < count; i++) {
+            long bucket = buckets[i];
+            int key = extractKey(bucket);
+            int keyHash = computeHash(key);
+
+            int previousBucketIndex = table[keyHash];
+            table[keyHash] = i;
+
+            if(previousBucketIndex != -1) {
+                // The bucket that was associated with the hash code
+                // must be added at the end of the current bucket.
+                buckets[i] = replaceNext(previousBucketIndex, bucket);
+            }
+            else {
+                // This is a single-element bucket chain (it is possible
+                // to be included in another chain at a later step).
+                buckets[i] = replaceNext(-1, bucket);
             }
         }
     }
@@ -242,13 +398,14 @@ public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements
     private int computeHash(int key) {
         // The table length should always be a power of two.
         assert((table.length & (table.length - 1)) == 0);
-        return key & (table.length - 1);
+        return hashStrategy.hash(key) & (table.length - 1);
     }
 
     private int findBucketIndex(int key, boolean returnLast) {
         int keyHash = computeHash(key);
         int bucketIndex = table[keyHash];
         int lastBucketIndex = bucketIndex;
+        int chainLength = 0;
 
         while(bucketIndex != -1) {
             long bucket = buckets[bucketIndex];
@@ -260,10 +417,15 @@ public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements
             else {
                 lastBucketIndex = bucketIndex;
                 bucketIndex = extractNext(bucket);
+                chainLength++;
             }
         }
 
-        return returnLast ? lastBucketIndex : -1;
+        if(returnLast) {
+            lastChainLength = chainLength;
+            return lastBucketIndex;
+        }
+        else return -1;
     }
 
     public int get(int key) {
@@ -295,32 +457,133 @@ public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements
         resizeTables(count);
         int bucketIndex = findBucketIndex(key, true /* returnLast */);
 
-        if(bucketIndex != -1) {
-            long bucket = buckets[bucketIndex];
-            int bucketKey = extractKey(bucket);
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            // The same key has been found.
+            int oldValue = data.getValue(bucketIndex);
+            data.setValue(bucketIndex, value);
+            return oldValue;
+        }
 
-            if(bucketKey == key) {
-                // The same key has been found.
-                int oldValue = data.get(bucketIndex);
-                data.set(bucketIndex, value);
-                return oldValue;
-            }
-            else {
-                // A new entry must be added at the end of the bucket.
-                int dataIndex = appendData(key, value);
-                buckets[bucketIndex] = replaceNext(dataIndex, bucket);
+        appendEntry(bucketIndex, key, value);
+        return Integer.MIN_VALUE;
+    }
+
+    private void appendEntry(int lastBucketIndex, int key, int value) {
+        // The new entry is added at the end of the bucket chain
+        // found by findBucketIndex, or it starts a new chain.
+        int dataIndex = appendData(key, value);
+
+        if(lastBucketIndex != -1) {
+            buckets[lastBucketIndex] = replaceNext(dataIndex, buckets[lastBucketIndex]);
+
+            if(lastChainLength >= MAX_CHAIN_LENGTH) {
+                strengthenHashStrategy();
             }
         }
         else {
-            // No bucket is associated with the hash code yet.
-            int dataIndex = appendData(key, value);
             int keyHash = computeHash(key);
             table[keyHash] = dataIndex;
         }
+    }
+
+    public int indexOf(int key) {
+        // Returns the index of the entry having the key, or -1 if it is not found.
+        // Unlike get, a missing key can be told apart from a stored Integer.MIN_VALUE.
+        return findBucketIndex(key, false /* returnLast */);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int dataIndex = findBucketIndex(key, false /* returnLast */);
+
+        if(dataIndex != -1) {
+            return data.getValue(dataIndex);
+        }
+        else return defaultValue;
+    }
 
+    public int putIfAbsent(int key, int value) {
+        // Returns the value already associated with the key,
+        // or Integer.MIN_VALUE if the new value was added.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            return data.getValue(bucketIndex);
+        }
+
+        appendEntry(bucketIndex, key, value);
         return Integer.MIN_VALUE;
     }
 
+    public int addTo(int key, int delta) {
+        // Adds delta to the value associated with the key, or associates
+        // delta with it if it is not found. Returns the new value.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            int newValue = data.getValue(bucketIndex) + delta;
+            data.setValue(bucketIndex, newValue);
+            return newValue;
+        }
+
+        appendEntry(bucketIndex, key, delta);
+        return delta;
+    }
+
+    public int merge(int key, int value, IntBinaryOperator remappingFunction) {
+        // If the key is found its value is replaced by the result of
+        // remappingFunction(oldValue, value), otherwise value is associated with it.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            int newValue = remappingFunction.applyAsInt(data.getValue(bucketIndex), value);
+            data.setValue(bucketIndex, newValue);
+            return newValue;
+        }
+
+        appendEntry(bucketIndex, key, value);
+        return value;
+    }
+
+    public int computeIfAbsent(int key, IntUnaryOperator mappingFunction) {
+        // The mapping function is called only if the key is not found.
+        // It must not modify the map, because the bucket chain
+        // where the new entry is linked has already been found.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(key, true /* returnLast */);
+
+        if((bucketIndex != -1) && (extractKey(buckets[bucketIndex]) == key)) {
+            return data.getValue(bucketIndex);
+        }
+
+        int value = mappingFunction.applyAsInt(key);
+        appendEntry(bucketIndex, key, value);
+        return value;
+    }
+
+    public void putAll(int[] keys, int[] values) {
+        putAll(keys, values, 0, keys.length);
+    }
+
+    public void putAll(int[] keys, int[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) ||
+           (length > keys.length - offset) ||
+           (length > values.length - offset)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        // The arrays and the table are resized at most once,
+        // then the entries are added without any reallocation.
+        ensureCapacity(count + length);
+        int end = offset + length;
+
+        for(int i = offset; i < end; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
     public boolean containsKey(int key) {
         return findBucketIndex(key, false /* returnLast */) != -1;
     }
@@ -334,4 +597,63 @@ public class VariableIntHashMap extends AbstractMap<Integer, Integer> implements
 
         return false;
     }
+
+    public void writeTo(DataOutput output) throws IOException {
+        // Only the keys and values are written, the bucket chains
+        // are linked again when the table is rebuilt after reading.
+        StreamFormat.writeVersion(output, FORMAT_VERSION);
+        StreamFormat.writeHashStrategy(output, hashStrategy);
+        output.writeInt(hashStrategyChanges);
+        output.writeInt(count);
+        output.writeInt(table.length);
+        int[] keys = new int[count];
+
+        for(int i = 0; i < count; i++) {
+            keys[i] = extractKey(buckets[i]);
+        }
+
+        // The values are written in their encoded form.
+        StreamFormat.writeInts(output, keys, count);
+        data.writeTo(output);
+    }
+
+    public void readFrom(DataInput input) throws IOException {
+        // Replaces the entries of the map. The keys are hashed only to
+        // rebuild the table, without searching the chains as put does.
+        StreamFormat.readVersion(input, FORMAT_VERSION);
+        IntHashStrategy newHashStrategy = StreamFormat.readHashStrategy(input);
+        int newHashStrategyChanges = input.readInt();
+        int newCount = StreamFormat.readCount(input, Integer.MAX_VALUE);
+        int tableSize = StreamFormat.readTableSize(input);
+        int[] keys = StreamFormat.readInts(input, newCount, 0);
+        VariableIntArray newData = new VariableIntArray();
+        newData.readFrom(input);
+
+        if(newData.size() != newCount) {
+            throw new StreamCorruptedException("Invalid value count!");
+        }
+
+        data = newData;
+        buckets = new long[Math.max(newCount, DEFAULT_BUCKET_TABLE_SIZE)];
+
+        for(int i = 0; i < newCount; i++) {
+            buckets[i] = packValues(keys[i], -1);
+        }
+
+        hashStrategy = newHashStrategy;
+        hashStrategyChanges = newHashStrategyChanges;
+        count = newCount;
+        table = new int[tableSize];
+        rebuildTable(tableSize);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput output) throws IOException {
+        writeTo(output);
+    }
+
+    @Override
+    public void readExternal(ObjectInput input) throws IOException {
+        readFrom(input);
+    }
 }
@@ -30,10 +30,18 @@
 // (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections;
-import java.io.Serializable;
+import compactcollections.functions.IntIntIntConsumer;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
 import java.util.*;
+import java.util.function.IntBinaryOperator;
 
-public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integer>, Integer> implements Serializable {
+public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integer>, Integer> implements Externalizable {
     public static class KeyEntry implements Map.Entry<Integer, Integer> {
         private int key;
         private int value;
@@ -132,6 +140,18 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
     // A value of 4 seems to be the best in most cases.
     private static final int LOAD_FACTOR = 4;
 
+    // The length of a bucket chain above which the hash strategy is replaced
+    // by a stronger one. With a good hash function the chains contain a few
+    // entries, a much longer one means that many keys have the same hash code.
+    private static final int MAX_CHAIN_LENGTH = 32;
+
+    // The maximum number of times the hash strategy is replaced,
+    // avoids rehashing repeatedly when the keys can't be spread better.
+    private static final int MAX_HASH_STRATEGY_CHANGES = 4;
+
+    // The version of the layout written by writeTo.
+    private static final int FORMAT_VERSION = 1;
+
     private int count;                   // The total number of values in the map.
     private int[] table;                 // Start index of buckets.
     private int[] buckets;               // Next Table Index.
@@ -139,12 +159,30 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
     private VariableIntArray secondKeys; // The second keys, stored with variable-sizes integers.
     private VariableIntArray data;       // The values, stored with variable-sizes integers.
 
+    private IntHashStrategy hashStrategy; // Computes the hash code of the keys.
+    private int hashStrategyChanges;      // The number of times the hash strategy was replaced.
+    private int lastChainLength;          // The length of the chain found by the last search.
+
     public VariableIntPairHashMap() {
+        this(new IdentityIntHashStrategy());
+    }
+
+    public VariableIntPairHashMap(IntHashStrategy hashStrategy) {
+        this.hashStrategy = hashStrategy;
         resetToDefault();
     }
 
+    public VariableIntPairHashMap(int expectedSize) {
+        this(expectedSize, new IdentityIntHashStrategy());
+    }
+
+    public VariableIntPairHashMap(int expectedSize, IntHashStrategy hashStrategy) {
+        this(hashStrategy);
+        ensureCapacity(expectedSize);
+    }
+
     public VariableIntPairHashMap(Set<Entry<Entry<Integer, Integer>, Integer>> values) {
-        this();
+        this(values.size());
         for(Entry<Entry<Integer, Integer>, Integer> pair : values) {
             put(pair.getKey(), pair.getValue());
         }
@@ -181,19 +219,103 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
         return count;
     }
 
+    public IntHashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    private class EntryCursor implements IntPairIntCursor {
+        // The keys and values are decoded in lockstep, one group at a time,
+        // instead of searching the group of each entry in the three arrays.
+        private VariableIntArray.GroupDecoder firstKeyDecoder = firstKeys.new GroupDecoder();
+        private VariableIntArray.GroupDecoder secondKeyDecoder = secondKeys.new GroupDecoder();
+        private VariableIntArray.GroupDecoder dataDecoder = data.new GroupDecoder();
+        private int index = -1;   // The index of the current entry.
+        private int groupIndex;   // The index of the current entry in the decoded group.
+        private int groupCount;   // The number of entries in the decoded group.
+
+        @Override
+        public boolean advance() {
+            if(index >= count) {
+                return false;
+            }
+
+            index++;
+            groupIndex++;
+
+            if(index == count) {
+                return false;
+            }
+
+            if(groupIndex >= groupCount) {
+                groupCount = firstKeyDecoder.decodeGroup();
+                secondKeyDecoder.decodeGroup();
+                dataDecoder.decodeGroup();
+                groupIndex = 0;
+            }
+
+            return true;
+        }
+
+        boolean hasNext() {
+            return index + 1 < count;
+        }
+
+        @Override
+        public int firstKey() {
+            return firstKeyDecoder.values()[groupIndex];
+        }
+
+        @Override
+        public int secondKey() {
+            return secondKeyDecoder.values()[groupIndex];
+        }
+
+        @Override
+        public int value() {
+            return dataDecoder.values()[groupIndex];
+        }
+
+        @Override
+        public void reset() {
+            firstKeyDecoder.reset();
+            secondKeyDecoder.reset();
+            dataDecoder.reset();
+            index = -1;
+            groupIndex = 0;
+            groupCount = 0;
+        }
+    }
+
+    private class EntryIterator implements Iterator<Entry<Entry<Integer, Integer>, Integer>> {
+        private EntryCursor cursor = new EntryCursor();
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public Entry<Entry<Integer, Integer>, Integer> next() {
+            if(!cursor.advance()) {
+                throw new NoSuchElementException();
+            }
+
+            KeyEntry key = new KeyEntry(cursor.firstKey(), cursor.secondKey());
+            return new MapEntry(key, cursor.value());
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     @Override
     public Set<Entry<Entry<Integer, Integer>, Integer>> entrySet() {
         return new AbstractSet<Entry<Entry<Integer, Integer>, Integer>>() {
             @Override
             public Iterator<Entry<Entry<Integer, Integer>, Integer>> iterator() {
-                // Not the most efficient implementation, building
-                // the pair list could be avoided by using a custom iterator.
-                List<Entry<Entry<Integer, Integer>, Integer>> valuePairs =
-                    new ArrayList<Entry<Entry<Integer, Integer>, Integer>>(count);
-
-
-
-                return valuePairs.iterator();
+                return new EntryIterator();
             }
 
             @Override
@@ -203,6 +325,20 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
         };
     }
 
+    public IntPairIntCursor cursor() {
+        // The cursor visits the entries in the order they were added,
+        // without creating any objects while iterating.
+        return new EntryCursor();
+    }
+
+    public void forEachEntry(IntIntIntConsumer consumer) {
+        IntPairIntCursor cursor = new EntryCursor();
+
+        while(cursor.advance()) {
+            consumer.accept(cursor.firstKey(), cursor.secondKey(), cursor.value());
+        }
+    }
+
     private void resetToDefault() {
         table = new int[DEFAULT_TABLE_SIZE];
         Arrays.fill(table, -1);
@@ -235,26 +371,79 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
                 return; // Table shouldn't grow further.
             }
 
-            // Create a new table and rehash the bucket start keys
-            // into the new table. On conflict the buckets are chained.
-            table = new int[newTableSize];
-            Arrays.fill(table, -1);
+            rebuildTable(newTableSize);
+        }
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        // Resize the arrays and rehash the table only once, so that
+        // expectedSize entries can be added without any other resizing.
+        // The key and value arrays are sized for values requiring a single byte.
+        if(expectedSize > buckets.length) {
+            buckets = Arrays.copyOf(buckets, expectedSize);
+        }
+
+        firstKeys.ensureCapacity(expectedSize);
+        secondKeys.ensureCapacity(expectedSize);
+        data.ensureCapacity(expectedSize);
+
+        int tableSize = getTableSizeFor(expectedSize);
+
+        if(tableSize > table.length) {
+            rebuildTable(tableSize);
+        }
+    }
+
+    private int getTableSizeFor(int expectedSize) {
+        // The table grows when count / LOAD_FACTOR reaches its size,
+        // find the smallest size for which this doesn't happen.
+        int maxCount = (expectedSize - 1) / LOAD_FACTOR;
+        int tableSize = table.length;
 
-            for(int i = 0; i < count; i++) {
-                int keyHash = computePairHash(i);
-                buckets[i] = table[keyHash];
-                table[keyHash] = i;
+        while(tableSize <= maxCount) {
+            int newTableSize = getNextTableSize(tableSize);
+
+            if(newTableSize <= tableSize) {
+                break; // Table shouldn't grow further.
             }
+
+            tableSize = newTableSize;
+        }
+
+        return tableSize;
+    }
+
+    private void strengthenHashStrategy() {
+        // A very long bucket chain was created, which means that the keys
+        // are not spread well by the current hash strategy (for example,
+        // multiples of a large power of two with the identity strategy).
+        if(hashStrategyChanges < MAX_HASH_STRATEGY_CHANGES) {
+            hashStrategy = hashStrategy.getStrongerStrategy();
+            hashStrategyChanges++;
+            rebuildTable(table.length);
+        }
+    }
+
+    private void rebuildTable(int tableSize) {
+        // Create a new table and rehash the bucket start keys
+        // into the new table. On conflict the buckets are chained.
+        if(tableSize != table.length) {
+            table = new int[tableSize];
+        }
+
+        Arrays.fill(table, -1);
+
+        for(int i = 0; i < count; i++) {
+            int keyHash = computePairHash(i);
+            buckets[i] = table[keyHash];
+            table[keyHash] = i;
         }
     }
 
     private int computeHash(int firstKey, int secondKey) {
         // The table length should always be a power of two.
         assert((table.length & (table.length - 1)) == 0);
-        int hash = 23;
-        hash = hash * 31 + firstKey;
-        hash = hash * 31 + secondKey;
-        return hash & (table.length - 1);
+        return hashStrategy.hash(firstKey, secondKey) & (table.length - 1);
     }
 
     private int computePairHash(int pairIndex) {
@@ -272,6 +461,7 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
         int keyHash = computeHash(firstKey, secondKey);
         int bucketIndex = table[keyHash];
         int lastBucketIndex = bucketIndex;
+        int chainLength = 0;
 
         while(bucketIndex != -1) {
             if(pairIsKey(bucketIndex, firstKey, secondKey)) {
@@ -280,10 +470,15 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
             else {
                 lastBucketIndex = bucketIndex;
                 bucketIndex = buckets[bucketIndex];
+                chainLength++;
             }
         }
 
-        return returnLast ? lastBucketIndex : -1;
+        if(returnLast) {
+            lastChainLength = chainLength;
+            return lastBucketIndex;
+        }
+        else return -1;
     }
 
     public int get(int firstKey, int secondKey) {
@@ -307,31 +502,140 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
         // Check if the key is already in the table.
         // If it is, the new value is used.
         resizeTables(count);
-        int bucketIndex = findBucketIndex(firstKey, secondKey,
-                                          true /* returnLast */);
-        if(bucketIndex != -1) {
-            if(pairIsKey(bucketIndex, firstKey, secondKey)) {
-                // The same key has been found.
-                int oldValue = data.get(bucketIndex);
-                data.set(bucketIndex, value);
-                return oldValue;
-            }
-            else {
-                // A new entry must be added at the end of the bucket.
-                int dataIndex = appendData(firstKey, secondKey, value);
-                buckets[bucketIndex] = dataIndex;
+        int bucketIndex = findBucketIndex(firstKey, secondKey, true /* returnLast */);
+
+        if((bucketIndex != -1) && pairIsKey(bucketIndex, firstKey, secondKey)) {
+            // The same key has been found.
+            int oldValue = data.getValue(bucketIndex);
+            data.setValue(bucketIndex, value);
+            return oldValue;
+        }
+
+        appendEntry(bucketIndex, firstKey, secondKey, value);
+        return Integer.MIN_VALUE;
+    }
+
+    private void appendEntry(int lastBucketIndex, int firstKey, int secondKey, int value) {
+        // The new entry is added at the end of the bucket chain
+        // found by findBucketIndex, or it starts a new chain.
+        int dataIndex = appendData(firstKey, secondKey, value);
+
+        if(lastBucketIndex != -1) {
+            buckets[lastBucketIndex] = dataIndex;
+
+            if(lastChainLength >= MAX_CHAIN_LENGTH) {
+                strengthenHashStrategy();
             }
         }
         else {
-            // No bucket is associated with the hash code yet.
-            int dataIndex = appendData(firstKey, secondKey, value);
             int keyHash = computeHash(firstKey, secondKey);
             table[keyHash] = dataIndex;
         }
+    }
+
+    public int indexOf(int firstKey, int secondKey) {
+        // Returns the index of the entry having the key pair, or -1 if it is not found.
+        // Unlike get, a missing key pair can be told apart from a stored Integer.MIN_VALUE.
+        return findBucketIndex(firstKey, secondKey, false /* returnLast */);
+    }
+
+    public int getValueAt(int index) {
+        return data.getValue(index);
+    }
+
+    public int getOrDefault(int firstKey, int secondKey, int defaultValue) {
+        int dataIndex = findBucketIndex(firstKey, secondKey, false /* returnLast */);
+
+        if(dataIndex != -1) {
+            return data.getValue(dataIndex);
+        }
+        else return defaultValue;
+    }
+
+    public int putIfAbsent(int firstKey, int secondKey, int value) {
+        // Returns the value already associated with the key pair,
+        // or Integer.MIN_VALUE if the new value was added.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(firstKey, secondKey, true /* returnLast */);
+
+        if((bucketIndex != -1) && pairIsKey(bucketIndex, firstKey, secondKey)) {
+            return data.getValue(bucketIndex);
+        }
 
+        appendEntry(bucketIndex, firstKey, secondKey, value);
         return Integer.MIN_VALUE;
     }
 
+    public int addTo(int firstKey, int secondKey, int delta) {
+        // Adds delta to the value associated with the key pair, or associates
+        // delta with it if it is not found. Returns the new value.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(firstKey, secondKey, true /* returnLast */);
+
+        if((bucketIndex != -1) && pairIsKey(bucketIndex, firstKey, secondKey)) {
+            int newValue = data.getValue(bucketIndex) + delta;
+            data.setValue(bucketIndex, newValue);
+            return newValue;
+        }
+
+        appendEntry(bucketIndex, firstKey, secondKey, delta);
+        return delta;
+    }
+
+    public int merge(int firstKey, int secondKey, int value, IntBinaryOperator remappingFunction) {
+        // If the key pair is found its value is replaced by the result of
+        // remappingFunction(oldValue, value), otherwise value is associated with it.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(firstKey, secondKey, true /* returnLast */);
+
+        if((bucketIndex != -1) && pairIsKey(bucketIndex, firstKey, secondKey)) {
+            int newValue = remappingFunction.applyAsInt(data.getValue(bucketIndex), value);
+            data.setValue(bucketIndex, newValue);
+            return newValue;
+        }
+
+        appendEntry(bucketIndex, firstKey, secondKey, value);
+        return value;
+    }
+
+    public int computeIfAbsent(int firstKey, int secondKey, IntBinaryOperator mappingFunction) {
+        // The mapping function is called only if the key pair is not found.
+        // It must not modify the map, because the bucket chain
+        // where the new entry is linked has already been found.
+        resizeTables(count);
+        int bucketIndex = findBucketIndex(firstKey, secondKey, true /* returnLast */);
+
+        if((bucketIndex != -1) && pairIsKey(bucketIndex, firstKey, secondKey)) {
+            return data.getValue(bucketIndex);
+        }
+
+        int value = mappingFunction.applyAsInt(firstKey, secondKey);
+        appendEntry(bucketIndex, firstKey, secondKey, value);
+        return value;
+    }
+
+    public void putAll(int[] firstKeys, int[] secondKeys, int[] values) {
+        putAll(firstKeys, secondKeys, values, 0, firstKeys.length);
+    }
+
+    public void putAll(int[] firstKeys, int[] secondKeys, int[] values, int offset, int length) {
+        if((offset < 0) || (length < 0) ||
+           (length > firstKeys.length - offset) ||
+           (length > secondKeys.length - offset) ||
+           (length > values.length - offset)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range!");
+        }
+
+        // The arrays and the table are resized at most once,
+        // then the entries are added without any reallocation.
+        ensureCapacity(count + length);
+        int end = offset + length;
+
+        for(int i = offset; i < end; i++) {
+            put(firstKeys[i], secondKeys[i], values[i]);
+        }
+    }
+
     public boolean containsKey(int firstKey, int secondKey) {
         return findBucketIndex(firstKey, secondKey,
                                false /* returnLast */) != -1;
@@ -346,4 +650,60 @@ public class VariableIntPairHashMap extends AbstractMap<Map.Entry<Integer, Integ
 
         return false;
     }
+
+    public void writeTo(DataOutput output) throws IOException {
+        // Only the keys and values are written, the bucket chains
+        // are linked again when the table is rebuilt after reading.
+        StreamFormat.writeVersion(output, FORMAT_VERSION);
+        StreamFormat.writeHashStrategy(output, hashStrategy);
+        output.writeInt(hashStrategyChanges);
+        output.writeInt(count);
+        output.writeInt(table.length);
+        // The keys and values are written in their encoded form.
+        firstKeys.writeTo(output);
+        secondKeys.writeTo(output);
+        data.writeTo(output);
+    }
+
+    public void readFrom(DataInput input) throws IOException {
+        // Replaces the entries of the map. The keys are hashed only to
+        // rebuild the table, without searching the chains as put does.
+        StreamFormat.readVersion(input, FORMAT_VERSION);
+        IntHashStrategy newHashStrategy = StreamFormat.readHashStrategy(input);
+        int newHashStrategyChanges = input.readInt();
+        int newCount = StreamFormat.readCount(input, Integer.MAX_VALUE);
+        int tableSize = StreamFormat.readTableSize(input);
+        VariableIntArray newFirstKeys = new VariableIntArray();
+        VariableIntArray newSecondKeys = new VariableIntArray();
+        VariableIntArray newData = new VariableIntArray();
+        newFirstKeys.readFrom(input);
+        newSecondKeys.readFrom(input);
+        newData.readFrom(input);
+
+        if((newFirstKeys.size() != newCount) || (newSecondKeys.size() != newCount) ||
+           (newData.size() != newCount)) {
+            throw new StreamCorruptedException("Invalid value count!");
+        }
+
+        firstKeys = newFirstKeys;
+        secondKeys = newSecondKeys;
+        data = newData;
+        buckets = new int[Math.max(newCount, DEFAULT_BUCKET_TABLE_SIZE)];
+
+        hashStrategy = newHashStrategy;
+        hashStrategyChanges = newHashStrategyChanges;
+        count = newCount;
+        table = new int[tableSize];
+        rebuildTable(tableSize);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput output) throws IOException {
+        writeTo(output);
+    }
+
+    @Override
+    public void readExternal(ObjectInput input) throws IOException {
+        readFrom(input);
+    }
 }
@@ -0,0 +1,109 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+import java.nio.ByteOrder;
+
+// Decodes a group using SIMD instructions, similar to Stream VByte:
+// the 32 bytes following the header are loaded in a vector register and
+// a shuffle precomputed for the header moves the bytes of each value into
+// its 4 byte lane. The bytes that belong to the following values are removed
+// by shifting each lane left and back right (which also extends the sign
+// of the 1 byte values), then the section start value is added.
+// Requires the jdk.incubator.vector module, see GroupDecodeKernel.
+final class VectorGroupDecodeKernel extends GroupDecodeKernel {
+    private static final int GROUP_SIZE = VariableIntArray.GROUP_SIZE;
+    private static final VectorSpecies<Byte> BYTE_SPECIES = ByteVector.SPECIES_256;
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_256;
+
+    // For each header value, the shuffle moving the bytes of the values
+    // into the lanes and the shift amount of each lane.
+    private static final VectorShuffle<Byte>[] groupShuffle;
+    private static final IntVector[] groupShift;
+
+    static {
+        VariableIntArray.initializeLookupTables();
+        int groupCount = 1 << GROUP_SIZE;
+        @SuppressWarnings("unchecked")
+        VectorShuffle<Byte>[] shuffles = (VectorShuffle<Byte>[])new VectorShuffle<?>[groupCount];
+        groupShift = new IntVector[groupCount];
+
+        for(int i = 0; i < groupCount; i++) {
+            int[] byteIndices = new int[4 * GROUP_SIZE];
+            int[] shifts = new int[GROUP_SIZE];
+
+            for(int k = 0; k < GROUP_SIZE; k++) {
+                // The offsets in the table include the header,
+                // which is not part of the loaded vector.
+                int valueOffset = VariableIntArray.groupValueOffset[i][k] - 1;
+
+                for(int b = 0; b < 4; b++) {
+                    byteIndices[4 * k + b] = valueOffset + b;
+                }
+
+                shifts[k] = 32 - 8 * VariableIntArray.groupValueSize[i][k];
+            }
+
+            shuffles[i] = VectorShuffle.fromArray(BYTE_SPECIES, byteIndices, 0);
+            groupShift[i] = IntVector.fromArray(INT_SPECIES, shifts, 0);
+        }
+
+        groupShuffle = shuffles;
+    }
+
+    @Override
+    boolean isSupported() {
+        // The lanes are reinterpreted as little-endian integers. Without
+        // 256 bit vectors in hardware the operations are emulated (slow).
+        return (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) &&
+               (ByteVector.SPECIES_PREFERRED.vectorBitSize() >= BYTE_SPECIES.vectorBitSize());
+    }
+
+    @Override
+    int decodeGroup(byte[] data, int groupOffset, int sectionStartValue,
+                    int[] destination, int destinationOffset) {
+        int header = data[groupOffset] & 0xFF;
+        IntVector shift = groupShift[header];
+        IntVector values = ByteVector.fromArray(BYTE_SPECIES, data, groupOffset + 1)
+                                     .rearrange(groupShuffle[header])
+                                     .reinterpretAsInts();
+        values.lanewise(VectorOperators.LSHL, shift)
+              .lanewise(VectorOperators.ASHR, shift)
+              .add(sectionStartValue)
+              .intoArray(destination, destinationOffset);
+        return groupOffset + VariableIntArray.groupSize[header];
+    }
+}
@@ -0,0 +1,128 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.ConcurrentIntHashMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4096m"})
+public class ConcurrentIntHashMapBenchmark {
+    // The thread counts used by main, the number
+    // of threads can also be selected using the -t option.
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"1000000"})
+    public int size;
+
+    // The percentage of operations that are reads,
+    // the others are addTo (merge for the baseline).
+    @Param({"100", "90", "50"})
+    public int readPercent;
+
+    private ConcurrentIntHashMap map;
+    private ConcurrentHashMap<Integer, Integer> baselineMap;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        // Each thread generates its own keys,
+        // so the generator is not a shared bottleneck.
+        private int seed;
+
+        @Setup
+        public void setup() {
+            seed = (int)System.nanoTime() | 1;
+        }
+
+        int nextInt() {
+            // Xorshift generator, much cheaper than java.util.Random.
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            return seed & Integer.MAX_VALUE;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        map = new ConcurrentIntHashMap();
+        baselineMap = new ConcurrentHashMap<Integer, Integer>();
+
+        for(int i = 0; i < size; i++) {
+            map.put(i, i);
+            baselineMap.put(i, i);
+        }
+    }
+
+    @Benchmark
+    public int mixed(ThreadState state) {
+        int key = state.nextInt() % size;
+
+        if(state.nextInt() % 100 < readPercent) {
+            return map.get(key);
+        }
+        else return map.addTo(key, 1);
+    }
+
+    @Benchmark
+    public Integer mixedBaseline(ThreadState state) {
+        int key = state.nextInt() % size;
+
+        if(state.nextInt() % 100 < readPercent) {
+            return baselineMap.get(key);
+        }
+        else return baselineMap.merge(key, 1, Integer::sum);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // Runs the benchmark once for each thread count.
+        for(int threadCount : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                .include(ConcurrentIntHashMapBenchmark.class.getSimpleName())
+                .threads(threadCount)
+                .resultFormat(ResultFormatType.CSV)
+                .result("concurrent-benchmark-results-" + threadCount + ".csv")
+                .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.*;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+// Measures the hash strategies on key sets that cluster
+// with simple hash functions: strided IDs (multiples of 1024)
+// and pairs of small coordinates. The identity strategy relies
+// on the chain length guard to switch to a stronger strategy.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4096m"})
+public class HashStrategyBenchmark {
+    public enum Strategy {
+        IDENTITY,
+        MURMUR,
+        SEEDED
+    }
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"IDENTITY", "MURMUR", "SEEDED"})
+    public Strategy strategy;
+
+    private int[] stridedKeys;
+    private int[] firstKeys; // Coordinates of a square grid.
+    private int[] secondKeys;
+    private IntHashMap stridedMap;
+    private OpenIntHashMap openStridedMap;
+    private IntPairHashMap coordinateMap;
+
+    @Setup
+    public void setup() {
+        stridedKeys = KeyDistribution.shuffle(KeyDistribution.STRIDED.generate(size, 0), 59);
+        int side = (int)Math.sqrt(size);
+        firstKeys = new int[side * side];
+        secondKeys = new int[side * side];
+
+        for(int i = 0; i < side * side; i++) {
+            firstKeys[i] = i / side;
+            secondKeys[i] = i % side;
+        }
+
+        stridedMap = buildStridedMap();
+        openStridedMap = buildOpenStridedMap();
+        coordinateMap = buildCoordinateMap();
+    }
+
+    private IntHashStrategy createStrategy() {
+        switch(strategy) {
+            case MURMUR: return new MurmurIntHashStrategy();
+            case SEEDED: return new SeededIntHashStrategy();
+            default:     return new IdentityIntHashStrategy();
+        }
+    }
+
+    @Benchmark
+    public IntHashMap putStrided() {
+        return buildStridedMap();
+    }
+
+    @Benchmark
+    public long getStrided() {
+        long sum = 0;
+
+        for(int key : stridedKeys) {
+            sum += stridedMap.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public OpenIntHashMap putOpenStrided() {
+        return buildOpenStridedMap();
+    }
+
+    @Benchmark
+    public long getOpenStrided() {
+        long sum = 0;
+
+        for(int key : stridedKeys) {
+            sum += openStridedMap.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public IntPairHashMap putCoordinates() {
+        return buildCoordinateMap();
+    }
+
+    @Benchmark
+    public long getCoordinates() {
+        long sum = 0;
+
+        for(int i = 0; i < firstKeys.length; i++) {
+            sum += coordinateMap.get(firstKeys[i], secondKeys[i]);
+        }
+
+        return sum;
+    }
+
+    private IntHashMap buildStridedMap() {
+        IntHashMap newMap = new IntHashMap(createStrategy());
+
+        for(int key : stridedKeys) {
+            newMap.put(key, key);
+        }
+
+        return newMap;
+    }
+
+    private OpenIntHashMap buildOpenStridedMap() {
+        OpenIntHashMap newMap = new OpenIntHashMap(createStrategy());
+
+        for(int key : stridedKeys) {
+            newMap.put(key, key);
+        }
+
+        return newMap;
+    }
+
+    private IntPairHashMap buildCoordinateMap() {
+        IntPairHashMap newMap = new IntPairHashMap(createStrategy());
+
+        for(int i = 0; i < firstKeys.length; i++) {
+            newMap.put(firstKeys[i], secondKeys[i], i);
+        }
+
+        return newMap;
+    }
+}
@@ -0,0 +1,227 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.FrozenIntHashMap;
+import compactcollections.IntHashMap;
+import compactcollections.IntIntCursor;
+import compactcollections.functions.IntIntConsumer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4096m"})
+public class IntHashMapBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "STRIDED", "CLUSTERED"})
+    public KeyDistribution distribution;
+
+    private int[] keys;      // Keys in insertion order.
+    private int[] queryKeys; // The same keys, in random order.
+    private int[] values;
+    private IntHashMap map;
+    private FrozenIntHashMap frozenMap;
+    private HashMap<Integer, Integer> baselineMap;
+
+    @Setup
+    public void setup() {
+        keys = distribution.generate(size, 59);
+        queryKeys = KeyDistribution.shuffle(keys, 61);
+        values = new int[size];
+        Random random = new Random(67);
+
+        for(int i = 0; i < size; i++) {
+            values[i] = random.nextInt();
+        }
+
+        map = buildMap();
+        frozenMap = map.freeze();
+        baselineMap = buildBaselineMap();
+    }
+
+    @Benchmark
+    public IntHashMap put() {
+        return buildMap();
+    }
+
+    @Benchmark
+    public IntHashMap putAll() {
+        IntHashMap newMap = new IntHashMap();
+        newMap.putAll(keys, values);
+        return newMap;
+    }
+
+    @Benchmark
+    public HashMap<Integer, Integer> putBaseline() {
+        return buildBaselineMap();
+    }
+
+    @Benchmark
+    public long get() {
+        long sum = 0;
+
+        for(int key : queryKeys) {
+            sum += map.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long getFrozen() {
+        long sum = 0;
+
+        for(int key : queryKeys) {
+            sum += frozenMap.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public FrozenIntHashMap freeze() {
+        return map.freeze();
+    }
+
+    @Benchmark
+    public long getBaseline() {
+        long sum = 0;
+
+        for(int key : queryKeys) {
+            sum += baselineMap.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public void containsKey(Blackhole blackhole) {
+        for(int key : queryKeys) {
+            blackhole.consume(map.containsKey(key));
+        }
+    }
+
+    @Benchmark
+    public void containsKeyBaseline(Blackhole blackhole) {
+        for(int key : queryKeys) {
+            blackhole.consume(baselineMap.containsKey(key));
+        }
+    }
+
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+
+        for(int i = 0; i < map.size(); i++) {
+            sum += map.getKeyAt(i) + map.getValueAt(i);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateEntries() {
+        long sum = 0;
+
+        for(Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            sum += entry.getKey() + entry.getValue();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateCursor() {
+        long sum = 0;
+        IntIntCursor cursor = map.cursor();
+
+        while(cursor.advance()) {
+            sum += cursor.key() + cursor.value();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateForEach() {
+        final long[] sum = new long[1];
+
+        map.forEachEntry(new IntIntConsumer() {
+            @Override
+            public void accept(int key, int value) {
+                sum[0] += key + value;
+            }
+        });
+
+        return sum[0];
+    }
+
+    @Benchmark
+    public long iterateBaseline() {
+        long sum = 0;
+
+        for(Map.Entry<Integer, Integer> entry : baselineMap.entrySet()) {
+            sum += entry.getKey() + entry.getValue();
+        }
+
+        return sum;
+    }
+
+    private IntHashMap buildMap() {
+        IntHashMap newMap = new IntHashMap();
+
+        for(int i = 0; i < size; i++) {
+            newMap.put(keys[i], values[i]);
+        }
+
+        return newMap;
+    }
+
+    private HashMap<Integer, Integer> buildBaselineMap() {
+        HashMap<Integer, Integer> newMap = new HashMap<Integer, Integer>();
+
+        for(int i = 0; i < size; i++) {
+            newMap.put(keys[i], values[i]);
+        }
+
+        return newMap;
+    }
+}
@@ -0,0 +1,185 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.IntPairHashMap;
+import compactcollections.IntPairIntCursor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4096m"})
+public class IntPairHashMapBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "STRIDED", "CLUSTERED"})
+    public KeyDistribution distribution;
+
+    private int[] firstKeys;
+    private int[] secondKeys;
+    private int[] queryOrder; // Pair indices, in random order.
+    private int[] values;
+    private IntPairHashMap map;
+
+    // The baseline packs the key pair into a Long, which is
+    // the most compact option available with java.util.
+    private HashMap<Long, Integer> baselineMap;
+
+    @Setup
+    public void setup() {
+        firstKeys = distribution.generate(size, 59);
+        secondKeys = KeyDistribution.shuffle(distribution.generate(size, 71), 73);
+        queryOrder = KeyDistribution.shuffle(KeyDistribution.SEQUENTIAL.generate(size, 0), 61);
+        values = new int[size];
+        Random random = new Random(67);
+
+        for(int i = 0; i < size; i++) {
+            values[i] = random.nextInt();
+        }
+
+        map = buildMap();
+        baselineMap = buildBaselineMap();
+    }
+
+    private static long packKey(int firstKey, int secondKey) {
+        return ((long)secondKey << 32) | ((long)firstKey & 0xFFFFFFFFL);
+    }
+
+    @Benchmark
+    public IntPairHashMap put() {
+        return buildMap();
+    }
+
+    @Benchmark
+    public HashMap<Long, Integer> putBaseline() {
+        return buildBaselineMap();
+    }
+
+    @Benchmark
+    public long get() {
+        long sum = 0;
+
+        for(int index : queryOrder) {
+            sum += map.get(firstKeys[index], secondKeys[index]);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long getBaseline() {
+        long sum = 0;
+
+        for(int index : queryOrder) {
+            sum += baselineMap.get(packKey(firstKeys[index], secondKeys[index]));
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public void containsKey(Blackhole blackhole) {
+        for(int index : queryOrder) {
+            blackhole.consume(map.containsKey(firstKeys[index], secondKeys[index]));
+        }
+    }
+
+    @Benchmark
+    public void containsKeyBaseline(Blackhole blackhole) {
+        for(int index : queryOrder) {
+            blackhole.consume(baselineMap.containsKey(packKey(firstKeys[index],
+                                                              secondKeys[index])));
+        }
+    }
+
+    @Benchmark
+    public long iterateEntries() {
+        long sum = 0;
+
+        for(Map.Entry<Map.Entry<Integer, Integer>, Integer> entry : map.entrySet()) {
+            sum += entry.getKey().getKey() + entry.getValue();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateCursor() {
+        long sum = 0;
+        IntPairIntCursor cursor = map.cursor();
+
+        while(cursor.advance()) {
+            sum += cursor.firstKey() + cursor.value();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateBaseline() {
+        long sum = 0;
+
+        for(Map.Entry<Long, Integer> entry : baselineMap.entrySet()) {
+            sum += (int)(long)entry.getKey() + entry.getValue();
+        }
+
+        return sum;
+    }
+
+    private IntPairHashMap buildMap() {
+        IntPairHashMap newMap = new IntPairHashMap();
+
+        for(int i = 0; i < size; i++) {
+            newMap.put(firstKeys[i], secondKeys[i], values[i]);
+        }
+
+        return newMap;
+    }
+
+    private HashMap<Long, Integer> buildBaselineMap() {
+        HashMap<Long, Integer> newMap = new HashMap<Long, Integer>();
+
+        for(int i = 0; i < size; i++) {
+            newMap.put(packKey(firstKeys[i], secondKeys[i]), values[i]);
+        }
+
+        return newMap;
+    }
+}
@@ -0,0 +1,108 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import java.util.Random;
+
+public enum KeyDistribution {
+    // Keys 0, 1, 2, ... in increasing order.
+    SEQUENTIAL,
+
+    // Uniformly distributed random keys (may contain duplicates).
+    RANDOM,
+
+    // Multiples of 1024, a typical layout of structured IDs.
+    // Stresses hash functions that use only the lowest bits of the key.
+    STRIDED,
+
+    // Short runs of consecutive keys starting at random positions,
+    // similar to IDs allocated in blocks.
+    CLUSTERED;
+
+    // The number of consecutive keys in a CLUSTERED run.
+    private static final int CLUSTER_SIZE = 64;
+
+    public int[] generate(int count, long seed) {
+        Random random = new Random(seed);
+        int[] keys = new int[count];
+
+        switch(this) {
+            case SEQUENTIAL: {
+                for(int i = 0; i < count; i++) {
+                    keys[i] = i;
+                }
+                break;
+            }
+            case RANDOM: {
+                for(int i = 0; i < count; i++) {
+                    keys[i] = random.nextInt();
+                }
+                break;
+            }
+            case STRIDED: {
+                for(int i = 0; i < count; i++) {
+                    keys[i] = i * 1024;
+                }
+                break;
+            }
+            case CLUSTERED: {
+                int start = 0;
+
+                for(int i = 0; i < count; i++) {
+                    if(i % CLUSTER_SIZE == 0) {
+                        start = random.nextInt() & 0x7FFFFFC0;
+                    }
+
+                    keys[i] = start + (i % CLUSTER_SIZE);
+                }
+                break;
+            }
+        }
+
+        return keys;
+    }
+
+    public static int[] shuffle(int[] values, long seed) {
+        // Returns a copy of the values in random order, used to query
+        // the collections in a different order than the insertion one.
+        Random random = new Random(seed);
+        int[] shuffled = values.clone();
+
+        for(int i = shuffled.length - 1; i > 0; i--) {
+            int other = random.nextInt(i + 1);
+            int temp = shuffled[i];
+            shuffled[i] = shuffled[other];
+            shuffled[other] = temp;
+        }
+
+        return shuffled;
+    }
+}
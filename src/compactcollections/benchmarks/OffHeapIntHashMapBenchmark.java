@@ -0,0 +1,142 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.IntHashMap;
+import compactcollections.OffHeapIntHashMap;
+import org.openjdk.jmh.annotations.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8192m", "-XX:MaxDirectMemorySize=8192m"})
+public class OffHeapIntHashMapBenchmark {
+    public enum Placement {
+        ON_HEAP,  // IntHashMap, the arrays are in the Java heap.
+        OFF_HEAP  // OffHeapIntHashMap, the buffers are in native memory.
+    }
+
+    @Param({"10000000", "50000000"})
+    public int size;
+
+    @Param({"ON_HEAP", "OFF_HEAP"})
+    public Placement placement;
+
+    private int[] keys;      // Keys in insertion order.
+    private int[] queryKeys; // The same keys, in random order.
+    private int[] values;
+    private IntHashMap map;
+    private OffHeapIntHashMap offHeapMap;
+
+    @Setup
+    public void setup() {
+        keys = KeyDistribution.RANDOM.generate(size, 59);
+        queryKeys = KeyDistribution.shuffle(keys, 61);
+        values = new int[size];
+        Random random = new Random(67);
+
+        for(int i = 0; i < size; i++) {
+            values[i] = random.nextInt();
+        }
+
+        // Only the tested map is alive, so the heap
+        // contains the map only in the ON_HEAP case.
+        if(placement == Placement.ON_HEAP) {
+            map = new IntHashMap();
+            map.putAll(keys, values);
+        }
+        else {
+            offHeapMap = new OffHeapIntHashMap();
+            offHeapMap.putAll(keys, values, 0, size);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(offHeapMap != null) {
+            offHeapMap.close();
+        }
+    }
+
+    @Benchmark
+    public long get() {
+        long sum = 0;
+
+        if(placement == Placement.ON_HEAP) {
+            for(int key : queryKeys) {
+                sum += map.get(key);
+            }
+        }
+        else {
+            for(int key : queryKeys) {
+                sum += offHeapMap.get(key);
+            }
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int put() {
+        if(placement == Placement.ON_HEAP) {
+            IntHashMap newMap = new IntHashMap();
+
+            for(int i = 0; i < size; i++) {
+                newMap.put(keys[i], values[i]);
+            }
+
+            return newMap.size();
+        }
+        else {
+            OffHeapIntHashMap newMap = new OffHeapIntHashMap();
+
+            for(int i = 0; i < size; i++) {
+                newMap.put(keys[i], values[i]);
+            }
+
+            int newSize = newMap.size();
+            newMap.close();
+            return newSize;
+        }
+    }
+
+    @Benchmark
+    public void fullGc() {
+        // The duration of a full collection while the map is alive.
+        // The on-heap map must be marked and compacted every time,
+        // the off-heap map is a handful of small objects.
+        System.gc();
+    }
+}
@@ -0,0 +1,168 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.IntHashMap;
+import compactcollections.OpenIntHashMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Compares the open addressing layout of OpenIntHashMap
+// with the chained layout of IntHashMap on large maps,
+// where most lookups miss the CPU cache.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8192m"})
+public class OpenIntHashMapBenchmark {
+    @Param({"1000000", "10000000", "50000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "CLUSTERED"})
+    public KeyDistribution distribution;
+
+    private int[] keys;        // Keys in insertion order.
+    private int[] queryKeys;   // The same keys, in random order.
+    private int[] missingKeys; // Keys that are most likely not in the maps.
+    private IntHashMap chainedMap;
+    private OpenIntHashMap openMap;
+
+    @Setup
+    public void setup() {
+        keys = distribution.generate(size, 59);
+        queryKeys = KeyDistribution.shuffle(keys, 61);
+        missingKeys = new int[size];
+        Random random = new Random(67);
+
+        for(int i = 0; i < size; i++) {
+            missingKeys[i] = random.nextInt() | 0x40000000;
+        }
+
+        chainedMap = buildChainedMap();
+        openMap = buildOpenMap();
+    }
+
+    @Benchmark
+    public IntHashMap putChained() {
+        return buildChainedMap();
+    }
+
+    @Benchmark
+    public OpenIntHashMap putOpen() {
+        return buildOpenMap();
+    }
+
+    @Benchmark
+    public long getChained() {
+        long sum = 0;
+
+        for(int key : queryKeys) {
+            sum += chainedMap.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long getOpen() {
+        long sum = 0;
+
+        for(int key : queryKeys) {
+            sum += openMap.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public void getMissingChained(Blackhole blackhole) {
+        for(int key : missingKeys) {
+            blackhole.consume(chainedMap.containsKey(key));
+        }
+    }
+
+    @Benchmark
+    public void getMissingOpen(Blackhole blackhole) {
+        for(int key : missingKeys) {
+            blackhole.consume(openMap.containsKey(key));
+        }
+    }
+
+    @Benchmark
+    public long removeChained() {
+        // Removes half of the keys from a new map.
+        IntHashMap map = buildChainedMap();
+        long sum = 0;
+
+        for(int i = 0; i < size; i += 2) {
+            sum += map.remove(queryKeys[i]);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long removeOpen() {
+        // Removes half of the keys from a new map.
+        OpenIntHashMap map = buildOpenMap();
+        long sum = 0;
+
+        for(int i = 0; i < size; i += 2) {
+            sum += map.remove(queryKeys[i]);
+        }
+
+        return sum;
+    }
+
+    private IntHashMap buildChainedMap() {
+        IntHashMap newMap = new IntHashMap();
+
+        for(int key : keys) {
+            newMap.put(key, key);
+        }
+
+        return newMap;
+    }
+
+    private OpenIntHashMap buildOpenMap() {
+        OpenIntHashMap newMap = new OpenIntHashMap();
+
+        for(int key : keys) {
+            newMap.put(key, key);
+        }
+
+        return newMap;
+    }
+}
@@ -0,0 +1,201 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.PackedIntArray;
+import compactcollections.VariableIntArray;
+import org.openjdk.jmh.annotations.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Compares the frame of reference encoding of PackedIntArray
+// with the group variant encoding of VariableIntArray.
+// The main method reports the memory used by both arrays.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4096m"})
+public class PackedIntArrayBenchmark {
+    public enum ValueDistribution {
+        SMALL,       // Values in range [0, 100), 1 byte in VariableIntArray.
+        ELEVEN_BITS, // Values in range [0, 2048), 4 bytes in VariableIntArray.
+        OUTLIERS,    // Like ELEVEN_BITS, but 1% of the values are random integers.
+        RANDOM;      // Random integers, nothing can be saved.
+
+        int[] createValues(int size, Random random) {
+            int[] values = new int[size];
+
+            for(int i = 0; i < size; i++) {
+                if(this == SMALL) {
+                    values[i] = random.nextInt(100);
+                }
+                else if(this == RANDOM) {
+                    values[i] = random.nextInt();
+                }
+                else if((this == OUTLIERS) && (random.nextInt(100) == 0)) {
+                    values[i] = random.nextInt();
+                }
+                else values[i] = random.nextInt(2048);
+            }
+
+            return values;
+        }
+    }
+
+    // The number of values read at once by the range benchmarks.
+    private static final int RANGE_LENGTH = 4096;
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"SMALL", "ELEVEN_BITS", "OUTLIERS", "RANDOM"})
+    public ValueDistribution distribution;
+
+    private int[] values;
+    private int[] indices; // Random indices, the order in which the values are queried.
+    private VariableIntArray variableArray;
+    private PackedIntArray packedArray;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(61);
+        values = distribution.createValues(size, random);
+        indices = new int[size];
+
+        for(int i = 0; i < size; i++) {
+            indices[i] = random.nextInt(size);
+        }
+
+        variableArray = new VariableIntArray(values);
+        packedArray = new PackedIntArray(values);
+    }
+
+    @Benchmark
+    public VariableIntArray addVariable() {
+        return new VariableIntArray(values);
+    }
+
+    @Benchmark
+    public PackedIntArray addPacked() {
+        return new PackedIntArray(values);
+    }
+
+    @Benchmark
+    public long getVariable() {
+        long sum = 0;
+
+        for(int index : indices) {
+            sum += variableArray.getValue(index);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long getPacked() {
+        long sum = 0;
+
+        for(int index : indices) {
+            sum += packedArray.getValue(index);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long scanRangeVariable() {
+        long sum = 0;
+        int[] window = new int[RANGE_LENGTH];
+
+        for(int i = 0; i < size; i += RANGE_LENGTH) {
+            int length = Math.min(RANGE_LENGTH, size - i);
+            variableArray.get(i, window, 0, length);
+
+            for(int k = 0; k < length; k++) {
+                sum += window[k];
+            }
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long scanRangePacked() {
+        long sum = 0;
+        int[] window = new int[RANGE_LENGTH];
+
+        for(int i = 0; i < size; i += RANGE_LENGTH) {
+            int length = Math.min(RANGE_LENGTH, size - i);
+            packedArray.get(i, window, 0, length);
+
+            for(int k = 0; k < length; k++) {
+                sum += window[k];
+            }
+        }
+
+        return sum;
+    }
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+
+        for(int i = 0; i < 4; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        // Prints the number of bytes used for each value,
+        // measured as the growth of the heap after creating the array.
+        int size = 10000000;
+
+        for(ValueDistribution distribution : ValueDistribution.values()) {
+            int[] values = distribution.createValues(size, new Random(61));
+            long startMemory = getUsedMemory();
+            VariableIntArray variableArray = new VariableIntArray(values).trim();
+            long variableMemory = getUsedMemory();
+            PackedIntArray packedArray = new PackedIntArray(values).trim();
+            long packedMemory = getUsedMemory();
+
+            System.out.printf("%s: VariableIntArray %.2f bytes/value, PackedIntArray %.2f bytes/value%n",
+                              distribution, (double)(variableMemory - startMemory) / size,
+                              (double)(packedMemory - variableMemory) / size);
+
+            if((variableArray.size() < size) || (packedArray.size() != size)) {
+                throw new IllegalStateException("Invalid array size!");
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.SparseBitSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4096m"})
+public class SparseBitSetBenchmark {
+    // The number of bits that are set.
+    @Param({"10000", "1000000"})
+    public int count;
+
+    // The range in which the set bits are distributed.
+    // A large range with few set bits is the sparse case.
+    @Param({"1000000", "100000000"})
+    public int range;
+
+    private int[] indices;      // The bits that are set.
+    private int[] queryIndices; // Random bits, most are not set for large ranges.
+    private SparseBitSet set;
+    private BitSet baselineSet;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(59);
+        indices = new int[count];
+        queryIndices = new int[count];
+
+        for(int i = 0; i < count; i++) {
+            indices[i] = random.nextInt(range);
+            queryIndices[i] = random.nextInt(range);
+        }
+
+        set = buildSet();
+        baselineSet = buildBaselineSet();
+    }
+
+    @Benchmark
+    public SparseBitSet setBits() {
+        return buildSet();
+    }
+
+    @Benchmark
+    public BitSet setBitsBaseline() {
+        return buildBaselineSet();
+    }
+
+    @Benchmark
+    public void getSetBits(Blackhole blackhole) {
+        for(int index : indices) {
+            blackhole.consume(set.getBit(index));
+        }
+    }
+
+    @Benchmark
+    public void getSetBitsBaseline(Blackhole blackhole) {
+        for(int index : indices) {
+            blackhole.consume(baselineSet.get(index));
+        }
+    }
+
+    @Benchmark
+    public void getRandomBits(Blackhole blackhole) {
+        for(int index : queryIndices) {
+            blackhole.consume(set.getBit(index));
+        }
+    }
+
+    @Benchmark
+    public void getRandomBitsBaseline(Blackhole blackhole) {
+        for(int index : queryIndices) {
+            blackhole.consume(baselineSet.get(index));
+        }
+    }
+
+    private SparseBitSet buildSet() {
+        SparseBitSet newSet = new SparseBitSet();
+
+        for(int index : indices) {
+            newSet.setBit(index);
+        }
+
+        return newSet;
+    }
+
+    private BitSet buildBaselineSet() {
+        BitSet newSet = new BitSet();
+
+        for(int index : indices) {
+            newSet.set(index);
+        }
+
+        return newSet;
+    }
+}
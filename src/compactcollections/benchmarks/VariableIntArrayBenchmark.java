@@ -0,0 +1,266 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.IntCursor;
+import compactcollections.VariableIntArray;
+import org.openjdk.jmh.annotations.*;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4096m"})
+public class VariableIntArrayBenchmark {
+    public enum AccessPattern {
+        SEQUENTIAL,   // Indices 0, 1, 2, ...
+        RANDOM,       // Uniformly distributed random indices.
+        NEAR_PREVIOUS // Each index is close to the previous one.
+    }
+
+    // The maximum distance between two consecutive
+    // indices for the NEAR_PREVIOUS access pattern.
+    private static final int NEAR_DISTANCE = 16;
+
+    // The number of values read at once by the range benchmarks.
+    private static final int RANGE_LENGTH = 4096;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "NEAR_PREVIOUS"})
+    public AccessPattern accessPattern;
+
+    // Values are generated in the range [0, valueBound).
+    // Small values fit in the 1-byte variable-length encoding.
+    @Param({"100", "2147483647"})
+    public int valueBound;
+
+    private int[] values;
+    private int[] indices; // The order in which the values are queried.
+    private VariableIntArray array;
+    private ArrayList<Integer> baselineList;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(59);
+        values = new int[size];
+
+        for(int i = 0; i < size; i++) {
+            values[i] = random.nextInt(valueBound);
+        }
+
+        indices = new int[size];
+        int index = 0;
+
+        for(int i = 0; i < size; i++) {
+            switch(accessPattern) {
+                case SEQUENTIAL: {
+                    index = i;
+                    break;
+                }
+                case RANDOM: {
+                    index = random.nextInt(size);
+                    break;
+                }
+                case NEAR_PREVIOUS: {
+                    index += random.nextInt(2 * NEAR_DISTANCE + 1) - NEAR_DISTANCE;
+                    index = Math.min(Math.max(index, 0), size - 1);
+                    break;
+                }
+            }
+
+            indices[i] = index;
+        }
+
+        array = buildArray();
+        baselineList = buildBaselineList();
+    }
+
+    @Benchmark
+    public VariableIntArray add() {
+        return buildArray();
+    }
+
+    @Benchmark
+    public ArrayList<Integer> addBaseline() {
+        return buildBaselineList();
+    }
+
+    @Benchmark
+    public long get() {
+        long sum = 0;
+
+        for(int index : indices) {
+            sum += array.getValue(index);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long getBaseline() {
+        long sum = 0;
+
+        for(int index : indices) {
+            sum += baselineList.get(index);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long getArrayBaseline() {
+        // Plain int[], the lower bound for the query time.
+        long sum = 0;
+
+        for(int index : indices) {
+            sum += values[index];
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long scanGetValue() {
+        // The whole array is read in order using getValue,
+        // for comparison with the cursor and forEachValue.
+        long sum = 0;
+
+        for(int i = 0; i < size; i++) {
+            sum += array.getValue(i);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long scanCursor() {
+        long sum = 0;
+        IntCursor cursor = array.cursor();
+
+        while(cursor.advance()) {
+            sum += cursor.value();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long scanForEach() {
+        final long[] sum = new long[1];
+
+        array.forEachValue(new IntConsumer() {
+            @Override
+            public void accept(int value) {
+                sum[0] += value;
+            }
+        });
+
+        return sum[0];
+    }
+
+    @Benchmark
+    public long scanRange() {
+        // The array is read in windows of consecutive values.
+        long sum = 0;
+        int[] window = new int[RANGE_LENGTH];
+
+        for(int i = 0; i < size; i += RANGE_LENGTH) {
+            int length = Math.min(RANGE_LENGTH, size - i);
+            array.get(i, window, 0, length);
+
+            for(int k = 0; k < length; k++) {
+                sum += window[k];
+            }
+        }
+
+        return sum;
+    }
+
+    // The same benchmarks, using the vector kernel to decode the groups.
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx4096m", "--add-modules", "jdk.incubator.vector",
+                                      "-Dcompactcollections.vectorDecode=true"})
+    public long scanCursorVector() {
+        return scanCursor();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx4096m", "--add-modules", "jdk.incubator.vector",
+                                      "-Dcompactcollections.vectorDecode=true"})
+    public long scanRangeVector() {
+        return scanRange();
+    }
+
+    @Benchmark
+    public VariableIntArray addRange() {
+        VariableIntArray newArray = new VariableIntArray();
+        newArray.addValues(values, 0, size);
+        return newArray;
+    }
+
+    @Benchmark
+    public long scanArrayBaseline() {
+        long sum = 0;
+
+        for(int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+
+        return sum;
+    }
+
+    private VariableIntArray buildArray() {
+        VariableIntArray newArray = new VariableIntArray();
+
+        for(int i = 0; i < size; i++) {
+            newArray.addValue(values[i]);
+        }
+
+        return newArray;
+    }
+
+    private ArrayList<Integer> buildBaselineList() {
+        ArrayList<Integer> newList = new ArrayList<Integer>();
+
+        for(int i = 0; i < size; i++) {
+            newList.add(values[i]);
+        }
+
+        return newList;
+    }
+}
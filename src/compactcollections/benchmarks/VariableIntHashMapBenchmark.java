@@ -0,0 +1,167 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.benchmarks;
+import compactcollections.VariableIntHashMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4096m"})
+public class VariableIntHashMapBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "STRIDED", "CLUSTERED"})
+    public KeyDistribution distribution;
+
+    // Values are generated in the range [0, valueBound).
+    // Small values fit in the 1-byte variable-length encoding.
+    @Param({"100", "2147483647"})
+    public int valueBound;
+
+    private int[] keys;      // Keys in insertion order.
+    private int[] queryKeys; // The same keys, in random order.
+    private int[] values;
+    private VariableIntHashMap map;
+    private HashMap<Integer, Integer> baselineMap;
+
+    @Setup
+    public void setup() {
+        keys = distribution.generate(size, 59);
+        queryKeys = KeyDistribution.shuffle(keys, 61);
+        values = new int[size];
+        Random random = new Random(67);
+
+        for(int i = 0; i < size; i++) {
+            values[i] = random.nextInt(valueBound);
+        }
+
+        map = buildMap();
+        baselineMap = buildBaselineMap();
+    }
+
+    @Benchmark
+    public VariableIntHashMap put() {
+        return buildMap();
+    }
+
+    @Benchmark
+    public HashMap<Integer, Integer> putBaseline() {
+        return buildBaselineMap();
+    }
+
+    @Benchmark
+    public long get() {
+        long sum = 0;
+
+        for(int key : queryKeys) {
+            sum += map.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long getBaseline() {
+        long sum = 0;
+
+        for(int key : queryKeys) {
+            sum += baselineMap.get(key);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public void containsKey(Blackhole blackhole) {
+        for(int key : queryKeys) {
+            blackhole.consume(map.containsKey(key));
+        }
+    }
+
+    @Benchmark
+    public void containsKeyBaseline(Blackhole blackhole) {
+        for(int key : queryKeys) {
+            blackhole.consume(baselineMap.containsKey(key));
+        }
+    }
+
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+
+        for(int i = 0; i < map.size(); i++) {
+            sum += map.getKeyAt(i) + map.getValueAt(i);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateBaseline() {
+        long sum = 0;
+
+        for(Map.Entry<Integer, Integer> entry : baselineMap.entrySet()) {
+            sum += entry.getKey() + entry.getValue();
+        }
+
+        return sum;
+    }
+
+    private VariableIntHashMap buildMap() {
+        VariableIntHashMap newMap = new VariableIntHashMap();
+
+        for(int i = 0; i < size; i++) {
+            newMap.put(keys[i], values[i]);
+        }
+
+        return newMap;
+    }
+
+    private HashMap<Integer, Integer> buildBaselineMap() {
+        HashMap<Integer, Integer> newMap = new HashMap<Integer, Integer>();
+
+        for(int i = 0; i < size; i++) {
+            newMap.put(keys[i], values[i]);
+        }
+
+        return newMap;
+    }
+}
@@ -0,0 +1,150 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.tests;
+import compactcollections.ConcurrentIntHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentIntHashMapTest {
+    @Test
+    public void testPutGet() {
+        Random random = new Random(59);
+        ConcurrentIntHashMap map = new ConcurrentIntHashMap();
+        Map<Integer, Integer> inserted = new HashMap<Integer, Integer>();
+
+        for(int i = 0; i < 100000; i++) {
+            int key = random.nextInt(50000) - 25000;
+            int value = random.nextInt();
+            map.put(key, value);
+            inserted.put(key, value);
+        }
+
+        map.put(0, 3);
+        inserted.put(0, 3);
+        Assert.assertEquals(map.size(), inserted.size());
+
+        for(Map.Entry<Integer, Integer> entry : inserted.entrySet()) {
+            Assert.assertEquals(map.get((int)entry.getKey()), (int)entry.getValue());
+        }
+
+        Map<Integer, Integer> iterated = new HashMap<Integer, Integer>();
+
+        for(Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            iterated.put(entry.getKey(), entry.getValue());
+        }
+
+        Assert.assertEquals(iterated, inserted);
+        Assert.assertEquals(map.putIfAbsent(0, 5), 3);
+        Assert.assertEquals(map.get(25000), Integer.MIN_VALUE);
+        Assert.assertEquals(map.getOrDefault(25000, 7), 7);
+    }
+
+    @Test
+    public void testConcurrentAddTo() throws InterruptedException {
+        final ConcurrentIntHashMap map = new ConcurrentIntHashMap();
+        final int threadCount = 8;
+        final int keyCount = 10000;
+        Thread[] threads = new Thread[threadCount];
+
+        for(int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for(int j = 0; j < 10; j++) {
+                        for(int key = 0; key < keyCount; key++) {
+                            map.addTo(key, 1);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(map.size(), keyCount);
+
+        for(int key = 0; key < keyCount; key++) {
+            Assert.assertEquals(map.get(key), threadCount * 10);
+        }
+    }
+
+    @Test
+    public void testReadWhileGrowing() throws InterruptedException {
+        // Keys that were added must remain visible to readers
+        // while the segments are replaced by larger ones.
+        final ConcurrentIntHashMap map = new ConcurrentIntHashMap();
+        final AtomicInteger addedCount = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final int keyCount = 200000;
+        Thread[] readers = new Thread[4];
+
+        for(int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(getId());
+
+                    while(addedCount.get() < keyCount) {
+                        int added = addedCount.get();
+
+                        if(added > 0) {
+                            int key = random.nextInt(added) + 1;
+
+                            if(map.get(key) != -key) {
+                                failed.set(true);
+                            }
+                        }
+                    }
+                }
+            };
+            readers[i].start();
+        }
+
+        for(int key = 1; key <= keyCount; key++) {
+            map.put(key, -key);
+            addedCount.set(key);
+        }
+
+        for(Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertEquals(failed.get(), false);
+        Assert.assertEquals(map.size(), keyCount);
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.tests;
+import compactcollections.FrozenIntHashMap;
+import compactcollections.FrozenIntObjectHashMap;
+import compactcollections.IntHashMap;
+import compactcollections.IntObjectHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.*;
+
+public class FrozenIntHashMapTest {
+    @Test
+    public void testFreeze() {
+        Random random = new Random(59);
+        IntHashMap map = new IntHashMap();
+
+        for(int i = 0; i < 100000; i++) {
+            map.put(random.nextInt(), random.nextInt());
+        }
+
+        map.put(0, 1);
+        map.put(Integer.MIN_VALUE, 2);
+        FrozenIntHashMap frozenMap = map.freeze();
+        Assert.assertEquals(frozenMap.size(), map.size());
+
+        for(int i = 0; i < map.size(); i++) {
+            Assert.assertEquals(frozenMap.get(map.getKeyAt(i)), map.getValueAt(i));
+        }
+
+        for(int i = 0; i < 100000; i++) {
+            int key = random.nextInt();
+            Assert.assertEquals(frozenMap.containsKey(key), map.containsKey(key));
+        }
+
+        Map<Integer, Integer> iterated = new HashMap<Integer, Integer>();
+
+        for(Map.Entry<Integer, Integer> entry : frozenMap.entrySet()) {
+            iterated.put(entry.getKey(), entry.getValue());
+        }
+
+        Assert.assertEquals(iterated, new HashMap<Integer, Integer>(map));
+    }
+
+    @Test
+    public void testFreezeSmall() {
+        for(int size = 0; size < 20; size++) {
+            IntHashMap map = new IntHashMap();
+
+            for(int i = 0; i < size; i++) {
+                map.put(i * 3, i);
+            }
+
+            FrozenIntHashMap frozenMap = map.freeze();
+            Assert.assertEquals(frozenMap.size(), size);
+            Assert.assertEquals(frozenMap.get(-1), Integer.MIN_VALUE);
+
+            for(int i = 0; i < size; i++) {
+                Assert.assertEquals(frozenMap.get(i * 3), i);
+            }
+        }
+    }
+
+    @Test
+    public void testFreezeObject() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<String>();
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i, Integer.toString(i));
+        }
+
+        FrozenIntObjectHashMap<String> frozenMap = map.freeze();
+        Assert.assertEquals(frozenMap.size(), 10000);
+
+        for(int i = 0; i < 10000; i++) {
+            Assert.assertEquals(frozenMap.get(i), Integer.toString(i));
+        }
+
+        Assert.assertEquals(frozenMap.get(10000), null);
+    }
+}
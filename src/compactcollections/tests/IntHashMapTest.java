@@ -31,11 +31,18 @@
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections.tests;
 import compactcollections.IntHashMap;
+import compactcollections.IntIntCursor;
+import compactcollections.IdentityIntHashStrategy;
+import compactcollections.SeededIntHashStrategy;
+import compactcollections.VariableIntHashMap;
+import compactcollections.functions.IntIntConsumer;
+import compactcollections.functions.IntIntPredicate;
 import org.junit.Assert;
 import org.junit.Test;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.io.*;
+import java.util.*;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
 
 public class IntHashMapTest {
     @Test
@@ -79,4 +86,317 @@ public class IntHashMapTest {
             Assert.assertEquals(map.get(key), (int)values.get(i));
         }
     }
+    @Test
+    public void testRemove() {
+        Random random = new Random(59);
+        IntHashMap map = new IntHashMap();
+        Map<Integer, Integer> inserted = new HashMap<Integer, Integer>();
+
+        for(int i = 0; i < 10000; i++) {
+            int key = random.nextInt(20000);
+            map.put(key, i);
+            inserted.put(key, i);
+        }
+
+        for(int i = 0; i < 10000; i++) {
+            int key = random.nextInt(20000);
+            Integer expected = inserted.remove(key);
+            int value = map.remove(key);
+
+            if(expected != null) {
+                Assert.assertEquals(value, (int)expected);
+            }
+            else Assert.assertEquals(value, Integer.MIN_VALUE);
+        }
+
+        Assert.assertEquals(map.size(), inserted.size());
+
+        for(int key = 0; key < 20000; key++) {
+            Integer expected = inserted.get(key);
+
+            if(expected != null) {
+                Assert.assertEquals(map.get(key), (int)expected);
+            }
+            else Assert.assertFalse(map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void testRemoveIf() {
+        IntHashMap map = new IntHashMap();
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i, i + 1);
+        }
+
+        Assert.assertTrue(map.removeIf(new IntIntPredicate() {
+            @Override
+            public boolean test(int key, int value) {
+                return key % 3 == 0;
+            }
+        }));
+
+        Assert.assertEquals(map.size(), 10000 - 3334);
+
+        for(int i = 0; i < 10000; i++) {
+            if(i % 3 == 0) {
+                Assert.assertFalse(map.containsKey(i));
+            }
+            else Assert.assertEquals(map.get(i), i + 1);
+        }
+
+        // The order of the remaining entries is preserved.
+        Assert.assertEquals(map.getKeyAt(0), 1);
+        Assert.assertEquals(map.getKeyAt(1), 2);
+        Assert.assertEquals(map.getKeyAt(2), 4);
+    }
+    @Test
+    public void testStridedKeys() {
+        // All keys have the same lowest bits, with the identity strategy
+        // they are placed in the same bucket until the strategy is replaced.
+        IntHashMap map = new IntHashMap(new IdentityIntHashStrategy());
+        IntHashMap seededMap = new IntHashMap(new SeededIntHashStrategy(59));
+
+        for(int i = 0; i < 100000; i++) {
+            map.put(i * 1024, i);
+            seededMap.put(i * 1024, i);
+        }
+
+        // The long chain replaced the identity strategy, while
+        // the seeded strategy spreads the keys well enough.
+        Assert.assertFalse(map.getHashStrategy() instanceof IdentityIntHashStrategy);
+        Assert.assertTrue(seededMap.getHashStrategy() instanceof SeededIntHashStrategy);
+
+        for(int i = 0; i < 100000; i++) {
+            Assert.assertEquals(map.get(i * 1024), i);
+            Assert.assertEquals(seededMap.get(i * 1024), i);
+            Assert.assertFalse(map.containsKey(i * 1024 + 1));
+        }
+    }
+
+    @Test
+    public void testCursor() {
+        IntHashMap map = new IntHashMap();
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i * 3, i + 1);
+        }
+
+        IntIntCursor cursor = map.cursor();
+
+        for(int pass = 0; pass < 2; pass++) {
+            int count = 0;
+
+            while(cursor.advance()) {
+                Assert.assertEquals(cursor.key(), count * 3);
+                Assert.assertEquals(cursor.value(), count + 1);
+                count++;
+            }
+
+            Assert.assertEquals(count, 10000);
+            cursor.reset();
+        }
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        IntHashMap map = new IntHashMap();
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i, i + 1);
+        }
+
+        Iterator<Map.Entry<Integer, Integer>> iterator = map.entrySet().iterator();
+        int visited = 0;
+
+        while(iterator.hasNext()) {
+            Map.Entry<Integer, Integer> entry = iterator.next();
+            Assert.assertEquals((int)entry.getValue(), entry.getKey() + 1);
+            visited++;
+
+            if((entry.getKey() % 2) == 0) {
+                iterator.remove();
+            }
+        }
+
+        Assert.assertEquals(visited, 10000);
+        Assert.assertEquals(map.size(), 5000);
+
+        for(int i = 0; i < 10000; i++) {
+            Assert.assertEquals(map.containsKey(i), (i % 2) != 0);
+        }
+    }
+
+    @Test
+    public void testForEach() {
+        IntHashMap map = new IntHashMap();
+        final long[] sums = new long[2];
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i, i * 2);
+        }
+
+        map.forEachEntry(new IntIntConsumer() {
+            @Override
+            public void accept(int key, int value) {
+                Assert.assertEquals(value, key * 2);
+                sums[0] += key;
+                sums[1] += value;
+            }
+        });
+
+        Assert.assertEquals(sums[0], 49995000L);
+        Assert.assertEquals(sums[1], 99990000L);
+
+        // Map.forEach is still selected for lambdas with two parameters.
+        map.forEach((key, value) -> sums[0] -= key);
+        Assert.assertEquals(sums[0], 0L);
+    }
+
+    @Test
+    public void testAddTo() {
+        Random random = new Random(59);
+        IntHashMap map = new IntHashMap();
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+
+        for(int i = 0; i < 100000; i++) {
+            int key = random.nextInt(1000);
+            Integer count = counts.get(key);
+            int newCount = count != null ? count + 1 : 1;
+            counts.put(key, newCount);
+            Assert.assertEquals(map.addTo(key, 1), newCount);
+        }
+
+        Assert.assertEquals(map.size(), counts.size());
+
+        for(Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            Assert.assertEquals(map.get((int)entry.getKey()), (int)entry.getValue());
+        }
+    }
+
+    @Test
+    public void testSingleProbeOperations() {
+        IntHashMap map = new IntHashMap();
+        map.put(1, Integer.MIN_VALUE);
+
+        Assert.assertEquals(map.indexOf(1), 0);
+        Assert.assertEquals(map.indexOf(2), -1);
+        Assert.assertEquals(map.getValueAt(map.indexOf(1)), Integer.MIN_VALUE);
+        Assert.assertEquals(map.getOrDefault(2, 5), 5);
+
+        Assert.assertEquals(map.putIfAbsent(2, 10), Integer.MIN_VALUE);
+        Assert.assertEquals(map.putIfAbsent(2, 20), 10);
+        Assert.assertEquals(map.get(2), 10);
+
+        IntBinaryOperator max = new IntBinaryOperator() {
+            @Override
+            public int applyAsInt(int left, int right) {
+                return Math.max(left, right);
+            }
+        };
+
+        Assert.assertEquals(map.merge(2, 30, max), 30);
+        Assert.assertEquals(map.merge(2, 5, max), 30);
+        Assert.assertEquals(map.merge(3, 5, max), 5);
+
+        IntUnaryOperator square = new IntUnaryOperator() {
+            @Override
+            public int applyAsInt(int key) {
+                return key * key;
+            }
+        };
+
+        Assert.assertEquals(map.computeIfAbsent(4, square), 16);
+        Assert.assertEquals(map.computeIfAbsent(2, square), 30);
+        Assert.assertEquals(map.size(), 4);
+    }
+
+    @Test
+    public void testPutAll() {
+        Random random = new Random(59);
+        int[] keys = new int[100000];
+        int[] values = new int[100000];
+
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt();
+            values[i] = random.nextInt();
+        }
+
+        IntHashMap map = new IntHashMap(10);
+        map.put(keys[0], values[0]);
+        map.putAll(keys, values, 1, keys.length - 1);
+
+        IntHashMap expectedMap = new IntHashMap();
+
+        for(int i = 0; i < keys.length; i++) {
+            expectedMap.put(keys[i], values[i]);
+        }
+
+        Assert.assertEquals(map.size(), expectedMap.size());
+
+        for(int i = 0; i < keys.length; i++) {
+            Assert.assertEquals(map.get(keys[i]), expectedMap.get(keys[i]));
+        }
+
+        VariableIntHashMap variableMap = new VariableIntHashMap(10);
+        variableMap.put(keys[0], values[0]);
+        variableMap.putAll(keys, values, 1, keys.length - 1);
+        Assert.assertEquals(variableMap.size(), expectedMap.size());
+
+        for(int i = 0; i < keys.length; i++) {
+            Assert.assertEquals(variableMap.get(keys[i]), expectedMap.get(keys[i]));
+        }
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        Random random = new Random(97);
+        IntHashMap map = new IntHashMap(new SeededIntHashStrategy(7));
+        VariableIntHashMap variableMap = new VariableIntHashMap();
+
+        for(int i = 0; i < 100000; i++) {
+            int key = random.nextInt(1000000) * 1024;
+            int value = random.nextInt(1000);
+            map.put(key, value);
+            variableMap.put(key, value);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        map.writeTo(output);
+        variableMap.writeTo(output);
+        output.close();
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        IntHashMap readMap = new IntHashMap();
+        VariableIntHashMap readVariableMap = new VariableIntHashMap();
+        readMap.readFrom(input);
+        readVariableMap.readFrom(input);
+
+        Assert.assertEquals(readMap.size(), map.size());
+        Assert.assertEquals(readVariableMap.size(), variableMap.size());
+
+        for(int i = 0; i < map.size(); i++) {
+            int key = map.getKeyAt(i);
+            Assert.assertEquals(readMap.get(key), map.getValueAt(i));
+            Assert.assertEquals(readMap.getKeyAt(i), key);
+            Assert.assertEquals(readVariableMap.get(key), map.getValueAt(i));
+        }
+
+        // The maps can still be modified after they were read.
+        readMap.put(1, 2);
+        readVariableMap.put(1, 2);
+        Assert.assertEquals(readMap.get(1), 2);
+        Assert.assertEquals(readVariableMap.get(1), 2);
+
+        // Externalizable uses the same format.
+        ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutput = new ObjectOutputStream(objectBytes);
+        objectOutput.writeObject(map);
+        objectOutput.close();
+
+        ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(objectBytes.toByteArray()));
+        IntHashMap objectMap = (IntHashMap)objectInput.readObject();
+        Assert.assertEquals(objectMap, map);
+    }
 }
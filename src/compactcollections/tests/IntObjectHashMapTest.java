@@ -0,0 +1,138 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.tests;
+import compactcollections.IntObjectHashMap;
+import compactcollections.functions.IntObjectConsumer;
+import compactcollections.functions.IntObjectPredicate;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.*;
+
+public class IntObjectHashMapTest {
+    @Test
+    public void testPutGet() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<String>();
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i, Integer.toString(i));
+        }
+
+        for(int i = 0; i < 10000; i++) {
+            Assert.assertEquals(map.get(i), Integer.toString(i));
+        }
+
+        Assert.assertNull(map.get(10000));
+    }
+
+    @Test
+    public void testRemove() {
+        Random random = new Random(59);
+        IntObjectHashMap<String> map = new IntObjectHashMap<String>();
+        Map<Integer, String> inserted = new HashMap<Integer, String>();
+
+        for(int i = 0; i < 10000; i++) {
+            int key = random.nextInt();
+            map.put(key, Integer.toString(i));
+            inserted.put(key, Integer.toString(i));
+        }
+
+        List<Integer> keys = new ArrayList<Integer>(inserted.keySet());
+
+        for(int i = 0; i < keys.size(); i += 2) {
+            int key = keys.get(i);
+            Assert.assertEquals(map.remove(key), inserted.remove(key));
+            Assert.assertNull(map.remove(key));
+        }
+
+        Assert.assertEquals(map.size(), inserted.size());
+
+        for(int i = 0; i < keys.size(); i++) {
+            int key = keys.get(i);
+            Assert.assertEquals(map.get(key), inserted.get(key));
+        }
+    }
+
+    @Test
+    public void testRemoveIf() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<String>();
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i, Integer.toString(i));
+        }
+
+        map.removeIf(new IntObjectPredicate<String>() {
+            @Override
+            public boolean test(int key, String value) {
+                return value.endsWith("7");
+            }
+        });
+
+        Assert.assertEquals(map.size(), 9000);
+
+        for(int i = 0; i < 10000; i++) {
+            if(i % 10 == 7) {
+                Assert.assertNull(map.get(i));
+            }
+            else Assert.assertEquals(map.get(i), Integer.toString(i));
+        }
+
+        // A predicate of a supertype of the values is accepted.
+        map.removeIf(new IntObjectPredicate<Object>() {
+            @Override
+            public boolean test(int key, Object value) {
+                return key < 5000;
+            }
+        });
+
+        Assert.assertEquals(map.size(), 4500);
+    }
+
+    @Test
+    public void testForEach() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<String>();
+        final int[] visited = new int[1];
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i, Integer.toString(i));
+        }
+
+        map.forEachEntry(new IntObjectConsumer<String>() {
+            @Override
+            public void accept(int key, String value) {
+                Assert.assertEquals(value, Integer.toString(key));
+                visited[0]++;
+            }
+        });
+
+        Assert.assertEquals(visited[0], 10000);
+    }
+}
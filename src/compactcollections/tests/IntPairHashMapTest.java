@@ -30,9 +30,15 @@
 // (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections.tests;
+import compactcollections.IntHashStrategy;
 import compactcollections.IntPairHashMap;
+import compactcollections.IntPairIntCursor;
+import compactcollections.MurmurIntHashStrategy;
+import compactcollections.SeededIntHashStrategy;
+import compactcollections.VariableIntPairHashMap;
 import org.junit.Assert;
 import org.junit.Test;
+import java.io.*;
 import java.util.*;
 
 public class IntPairHashMapTest {
@@ -71,4 +77,155 @@ public class IntPairHashMapTest {
             Assert.assertEquals(map.get(entry.getKey()), entry.getValue());
         }
     }
+    @Test
+    public void testHashStrategies() {
+        IntHashStrategy[] strategies = new IntHashStrategy[] {
+            new MurmurIntHashStrategy(), new SeededIntHashStrategy()
+        };
+
+        for(IntHashStrategy strategy : strategies) {
+            IntPairHashMap map = new IntPairHashMap(strategy);
+
+            for(int i = 0; i < 300; i++) {
+                for(int j = 0; j < 300; j++) {
+                    map.put(i, j, i * j);
+                }
+            }
+
+            Assert.assertEquals(map.size(), 300 * 300);
+
+            for(int i = 0; i < 300; i++) {
+                for(int j = 0; j < 300; j++) {
+                    Assert.assertEquals(map.get(i, j), i * j);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCursor() {
+        IntPairHashMap map = new IntPairHashMap();
+
+        for(int i = 0; i < 100; i++) {
+            for(int j = 0; j < 100; j++) {
+                map.put(i, j, i * j);
+            }
+        }
+
+        IntPairIntCursor cursor = map.cursor();
+        int count = 0;
+
+        while(cursor.advance()) {
+            Assert.assertEquals(cursor.firstKey(), count / 100);
+            Assert.assertEquals(cursor.secondKey(), count % 100);
+            Assert.assertEquals(cursor.value(), cursor.firstKey() * cursor.secondKey());
+            count++;
+        }
+
+        Assert.assertEquals(count, 10000);
+    }
+
+    @Test
+    public void testAddTo() {
+        IntPairHashMap map = new IntPairHashMap();
+
+        for(int i = 0; i < 1000; i++) {
+            for(int j = 0; j < 100; j++) {
+                map.addTo(i % 10, j, j);
+            }
+        }
+
+        Assert.assertEquals(map.size(), 1000);
+
+        for(int i = 0; i < 10; i++) {
+            for(int j = 0; j < 100; j++) {
+                Assert.assertEquals(map.get(i, j), j * 100);
+                Assert.assertEquals(map.getValueAt(map.indexOf(i, j)), j * 100);
+            }
+        }
+
+        Assert.assertEquals(map.indexOf(10, 0), -1);
+        Assert.assertEquals(map.getOrDefault(10, 0, -1), -1);
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        Random random = new Random(101);
+        IntPairHashMap map = new IntPairHashMap(new MurmurIntHashStrategy());
+        VariableIntPairHashMap variableMap = new VariableIntPairHashMap();
+
+        for(int i = 0; i < 100000; i++) {
+            int firstKey = random.nextInt(1000);
+            int secondKey = random.nextInt(1000);
+            int value = random.nextInt();
+            map.put(firstKey, secondKey, value);
+            variableMap.put(firstKey, secondKey, value);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        map.writeTo(output);
+        variableMap.writeTo(output);
+        output.close();
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        IntPairHashMap readMap = new IntPairHashMap();
+        VariableIntPairHashMap readVariableMap = new VariableIntPairHashMap();
+        readMap.readFrom(input);
+        readVariableMap.readFrom(input);
+
+        Assert.assertEquals(readMap.size(), map.size());
+        Assert.assertEquals(readVariableMap.size(), variableMap.size());
+        IntPairIntCursor cursor = map.cursor();
+
+        while(cursor.advance()) {
+            Assert.assertEquals(readMap.get(cursor.firstKey(), cursor.secondKey()), cursor.value());
+            Assert.assertEquals(readVariableMap.get(cursor.firstKey(), cursor.secondKey()), cursor.value());
+        }
+
+        readMap.put(-1, -1, 5);
+        readVariableMap.put(-1, -1, 5);
+        Assert.assertEquals(readMap.get(-1, -1), 5);
+        Assert.assertEquals(readVariableMap.get(-1, -1), 5);
+    }
+    @Test
+    public void testVariableEntrySet() {
+        Random random = new Random(127);
+        IntPairHashMap map = new IntPairHashMap();
+        VariableIntPairHashMap variableMap = new VariableIntPairHashMap();
+
+        for(int i = 0; i < 10005; i++) {
+            int firstKey = random.nextInt(100);
+            int secondKey = random.nextInt(100);
+            int value = random.nextInt(10) == 0 ? random.nextInt() : random.nextInt(100);
+            map.put(firstKey, secondKey, value);
+            variableMap.put(firstKey, secondKey, value);
+        }
+
+        // The entry sets are compared by AbstractMap.equals.
+        Assert.assertEquals(variableMap.entrySet().size(), map.size());
+        Assert.assertTrue(variableMap.equals(map));
+        Assert.assertTrue(map.equals(variableMap));
+
+        IntPairIntCursor cursor = variableMap.cursor();
+        int count = 0;
+
+        for(int pass = 0; pass < 2; pass++) {
+            while(cursor.advance()) {
+                Assert.assertEquals(map.get(cursor.firstKey(), cursor.secondKey()), cursor.value());
+                count++;
+            }
+
+            Assert.assertFalse(cursor.advance());
+            cursor.reset();
+        }
+
+        Assert.assertEquals(count, 2 * map.size());
+        Iterator<Map.Entry<Map.Entry<Integer, Integer>, Integer>> iterator = variableMap.entrySet().iterator();
+
+        while(iterator.hasNext()) {
+            Map.Entry<Map.Entry<Integer, Integer>, Integer> entry = iterator.next();
+            Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
 }
@@ -0,0 +1,122 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.tests;
+import compactcollections.IntHashMap;
+import compactcollections.IntPairHashMap;
+import compactcollections.MappedIntHashMap;
+import compactcollections.MappedIntPairHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+public class MappedIntHashMapTest {
+    private static File createTempFile() throws IOException {
+        File file = File.createTempFile("compactcollections", ".map");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testWriteOpen() throws IOException {
+        Random random = new Random(83);
+        IntHashMap map = new IntHashMap();
+
+        for(int i = 0; i < 100000; i++) {
+            map.put(random.nextInt(1000000) * 1024, random.nextInt());
+        }
+
+        File file = createTempFile();
+        MappedIntHashMap.write(map, file);
+        MappedIntHashMap mappedMap = MappedIntHashMap.open(file);
+        Assert.assertEquals(mappedMap.size(), map.size());
+
+        for(int i = 0; i < map.size(); i++) {
+            int key = map.getKeyAt(i);
+            Assert.assertEquals(mappedMap.get(key), map.getValueAt(i));
+            Assert.assertEquals(mappedMap.getKeyAt(i), key);
+            Assert.assertEquals(mappedMap.indexOf(key), i);
+        }
+
+        Assert.assertFalse(mappedMap.containsKey(1));
+        Assert.assertEquals(mappedMap.get(1), Integer.MIN_VALUE);
+        Assert.assertEquals(mappedMap.getOrDefault(1, 5), 5);
+        mappedMap.close();
+    }
+
+    @Test
+    public void testWriteOpenPairs() throws IOException {
+        Random random = new Random(89);
+        IntPairHashMap map = new IntPairHashMap();
+
+        for(int i = 0; i < 100000; i++) {
+            map.put(random.nextInt(1000), random.nextInt(1000), random.nextInt());
+        }
+
+        File file = createTempFile();
+        MappedIntPairHashMap.write(map, file);
+        final MappedIntPairHashMap mappedMap = MappedIntPairHashMap.open(file);
+        Assert.assertEquals(mappedMap.size(), map.size());
+
+        for(int i = 0; i < map.size(); i++) {
+            int firstKey = mappedMap.getFirstKeyAt(i);
+            int secondKey = mappedMap.getSecondKeyAt(i);
+            Assert.assertEquals(mappedMap.get(firstKey, secondKey), map.get(firstKey, secondKey));
+            Assert.assertEquals(mappedMap.getValueAt(i), map.getValueAt(i));
+        }
+
+        Assert.assertFalse(mappedMap.containsKey(-1, -1));
+        Assert.assertEquals(mappedMap.get(-1, -1), Integer.MIN_VALUE);
+        mappedMap.close();
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File file = createTempFile();
+        MappedIntHashMap.write(new IntHashMap(), file);
+        MappedIntHashMap mappedMap = MappedIntHashMap.open(file);
+        Assert.assertTrue(mappedMap.isEmpty());
+        Assert.assertEquals(mappedMap.get(0), Integer.MIN_VALUE);
+        mappedMap.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+        File file = createTempFile();
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[64]);
+        output.close();
+        MappedIntHashMap.open(file);
+    }
+}
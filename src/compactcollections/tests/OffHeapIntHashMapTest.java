@@ -0,0 +1,85 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.tests;
+import compactcollections.IntHashMap;
+import compactcollections.OffHeapIntHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.*;
+
+public class OffHeapIntHashMapTest {
+    @Test
+    public void testPutGet() {
+        OffHeapIntHashMap map = new OffHeapIntHashMap();
+
+        for(int i = 0; i < 100000; i++) {
+            map.put(i, i + 1);
+        }
+
+        for(int i = 0; i < 100000; i++) {
+            Assert.assertEquals(map.get(i), i + 1);
+        }
+
+        Assert.assertEquals(map.size(), 100000);
+        Assert.assertEquals(map.get(-1), Integer.MIN_VALUE);
+        map.close();
+    }
+
+    @Test
+    public void testPutGetRandom() {
+        Random random = new Random(59);
+        OffHeapIntHashMap map = new OffHeapIntHashMap();
+        IntHashMap expectedMap = new IntHashMap();
+
+        for(int i = 0; i < 100000; i++) {
+            int key = random.nextInt(50000) * 1024;
+            int value = random.nextInt();
+
+            if(random.nextBoolean()) {
+                Assert.assertEquals(map.put(key, value), expectedMap.put(key, value));
+            }
+            else Assert.assertEquals(map.addTo(key, value), expectedMap.addTo(key, value));
+        }
+
+        Assert.assertEquals(map.size(), expectedMap.size());
+
+        for(int i = 0; i < expectedMap.size(); i++) {
+            Assert.assertEquals(map.get(expectedMap.getKeyAt(i)), expectedMap.getValueAt(i));
+            Assert.assertEquals(map.getKeyAt(i), expectedMap.getKeyAt(i));
+        }
+
+        map.clear();
+        Assert.assertEquals(map.size(), 0);
+        Assert.assertEquals(map.containsKey(expectedMap.getKeyAt(0)), false);
+        map.close();
+    }
+}
@@ -0,0 +1,136 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.tests;
+import compactcollections.OpenIntHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.*;
+
+public class OpenIntHashMapTest {
+    @Test
+    public void testPutGet() {
+        OpenIntHashMap map = new OpenIntHashMap();
+
+        for(int i = 0; i < 100000; i++) {
+            map.put(i, i + 1);
+        }
+
+        Assert.assertEquals(map.size(), 100000);
+
+        for(int i = 0; i < 100000; i++) {
+            Assert.assertEquals(map.get(i), i + 1);
+        }
+
+        Assert.assertEquals(map.get(100000), Integer.MIN_VALUE);
+    }
+
+    @Test
+    public void testPutGetRemoveRandom() {
+        Random random = new Random(59);
+        OpenIntHashMap map = new OpenIntHashMap();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+        for(int i = 0; i < 200000; i++) {
+            // Use a small key range, so that keys are often
+            // replaced and removed (including the 0 key).
+            int key = random.nextInt(50000) - 1000;
+            int value = random.nextInt();
+
+            if(random.nextInt(3) == 0) {
+                Integer previousValue = expected.remove(key);
+                int removedValue = map.remove(key);
+                Assert.assertEquals(removedValue, previousValue != null ?
+                                                  previousValue : Integer.MIN_VALUE);
+            }
+            else {
+                expected.put(key, value);
+                map.put(key, value);
+            }
+        }
+
+        Assert.assertEquals(map.size(), expected.size());
+
+        for(int key = -1000; key < 49000; key++) {
+            Integer value = expected.get(key);
+
+            if(value != null) {
+                Assert.assertEquals(map.get(key), (int)value);
+            }
+            else Assert.assertFalse(map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void testIterateSlots() {
+        OpenIntHashMap map = new OpenIntHashMap();
+        long expectedSum = 0;
+
+        for(int i = 0; i < 10000; i++) {
+            map.put(i * 1024, i);
+            expectedSum += i;
+        }
+
+        long sum = 0;
+        int used = 0;
+
+        for(int slot = 0; slot < map.getSlotCount(); slot++) {
+            if(map.isSlotUsed(slot)) {
+                Assert.assertEquals(map.getKeyAt(slot), map.getValueAt(slot) * 1024);
+                sum += map.getValueAt(slot);
+                used++;
+            }
+        }
+
+        Assert.assertEquals(used, 10000);
+        Assert.assertEquals(sum, expectedSum);
+        Assert.assertEquals(new HashMap<Integer, Integer>(map), map);
+    }
+
+    @Test
+    public void testPutAll() {
+        int[] keys = new int[100000];
+        int[] values = new int[100000];
+
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = i * 7;
+            values[i] = i;
+        }
+
+        OpenIntHashMap map = new OpenIntHashMap(keys.length);
+        map.putAll(keys, values);
+        Assert.assertEquals(map.size(), keys.length);
+
+        for(int i = 0; i < keys.length; i++) {
+            Assert.assertEquals(map.get(keys[i]), values[i]);
+        }
+    }
+}
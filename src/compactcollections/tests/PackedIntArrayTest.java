@@ -0,0 +1,185 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.tests;
+import compactcollections.IntCursor;
+import compactcollections.PackedIntArray;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+public class PackedIntArrayTest {
+    @Test
+    public void testAddGet() {
+        PackedIntArray array = new PackedIntArray();
+
+        for(int i = 0; i < 1000000; i++) {
+            array.addValue(i + 1);
+        }
+
+        for(int i = 0; i < 1000000; i++) {
+            Assert.assertEquals(array.getValue(i), i + 1);
+        }
+    }
+
+    @Test
+    public void testRandomAddGet() {
+        // Mix sections of small values, values with outliers and random values.
+        Random random = new Random(149);
+        PackedIntArray array = new PackedIntArray();
+        int[] values = new int[1000003];
+
+        for(int i = 0; i < values.length; i++) {
+            int section = i / 64;
+
+            if(section % 3 == 0) {
+                values[i] = random.nextInt(1 << (section % 33 == 32 ? 30 : section % 33));
+            }
+            else if(section % 3 == 1) {
+                values[i] = random.nextInt(20) == 0 ? random.nextInt() : 1000 + random.nextInt(2048);
+            }
+            else values[i] = random.nextInt();
+
+            array.addValue(values[i]);
+        }
+
+        Assert.assertEquals(array.size(), values.length);
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(array.getValue(i), values[i]);
+        }
+
+        int[] readValues = new int[values.length];
+        array.get(0, readValues, 0, values.length);
+        Assert.assertTrue(Arrays.equals(readValues, values));
+    }
+
+    @Test
+    public void testSet() {
+        Random random = new Random(151);
+        PackedIntArray array = new PackedIntArray();
+        int[] values = new int[100005];
+
+        for(int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(50) == 0 ? random.nextInt() : random.nextInt(100);
+            array.addValue(values[i]);
+        }
+
+        for(int i = 0; i < 200000; i++) {
+            // Some of the values don't fit in the bits of the section.
+            int index = random.nextInt(values.length);
+            values[index] = random.nextInt(20) == 0 ? random.nextInt() : random.nextInt(100);
+            array.setValue(index, values[index]);
+
+            if(i % 1000 == 0) {
+                int checkIndex = random.nextInt(values.length);
+                Assert.assertEquals(array.getValue(checkIndex), values[checkIndex]);
+            }
+
+            if(i % 25000 == 0) {
+                // Reading a range writes the edited values first,
+                // the sections containing them are encoded again.
+                int[] readValues = new int[values.length];
+                array.get(0, readValues, 0, values.length);
+                Assert.assertTrue(Arrays.equals(readValues, values));
+            }
+        }
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(array.getValue(i), values[i]);
+        }
+
+        array.trim();
+        array.addValue(5);
+        Assert.assertEquals(array.getValue(values.length), 5);
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(array.getValue(i), values[i]);
+        }
+    }
+
+    @Test
+    public void testCursor() {
+        Random random = new Random(157);
+        PackedIntArray array = new PackedIntArray();
+        int[] values = new int[10007];
+
+        for(int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(i % 9 == 0 ? Integer.MAX_VALUE : 100);
+            array.addValue(values[i]);
+        }
+
+        IntCursor cursor = array.cursor();
+
+        for(int pass = 0; pass < 2; pass++) {
+            int index = 0;
+
+            while(cursor.advance()) {
+                Assert.assertEquals(cursor.value(), values[index]);
+                index++;
+            }
+
+            Assert.assertEquals(index, values.length);
+            cursor.reset();
+        }
+
+        Iterator<Integer> iterator = array.iterator();
+        int index = 0;
+
+        while(iterator.hasNext()) {
+            Assert.assertEquals((int)iterator.next(), values[index]);
+            index++;
+        }
+
+        Assert.assertEquals(index, values.length);
+        final int[] forEachIndex = new int[1];
+
+        array.forEachValue(value -> {
+            Assert.assertEquals(value, values[forEachIndex[0]]);
+            forEachIndex[0]++;
+        });
+
+        Assert.assertEquals(forEachIndex[0], values.length);
+
+        for(int i = 0; i < 1000; i++) {
+            int readIndex = random.nextInt(values.length);
+            int readLength = random.nextInt(values.length - readIndex + 1);
+            int[] readValues = new int[readLength + 10];
+            array.get(readIndex, readValues, 5, readLength);
+
+            for(int k = 0; k < readLength; k++) {
+                Assert.assertEquals(readValues[5 + k], values[readIndex + k]);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+// Copyright (c) 2013 Gratian Lup. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+// * Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above
+// copyright notice, this list of conditions and the following
+// disclaimer in the documentation and/or other materials provided
+// with the distribution.
+//
+// * The name "CompactCollections" must not be used to endorse or promote
+// products derived from this software without prior written permission.
+//
+// * Products derived from this software may not be called "CompactCollections" nor
+// may "CompactCollections" appear in their names without prior written
+// permission of the author.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
+package compactcollections.tests;
+import compactcollections.SortedIntArrays;
+import compactcollections.VariableIntArray;
+import compactcollections.VariableIntEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class SortedIntArraysTest {
+    private static int[] createValues(Random random, int count, int maxGap) {
+        // Sorted values, some of them repeated.
+        int[] values = new int[count];
+        int value = random.nextInt(1000) - 500;
+
+        for(int i = 0; i < count; i++) {
+            value += random.nextInt(maxGap);
+            values[i] = value;
+        }
+
+        return values;
+    }
+
+    private static VariableIntArray createArray(int[] values) {
+        return new VariableIntArray(values, VariableIntEncoding.ONE_OR_FOUR_BYTES, true);
+    }
+
+    private static TreeSet<Integer> toSet(int[] values) {
+        TreeSet<Integer> set = new TreeSet<Integer>();
+
+        for(int value : values) {
+            set.add(value);
+        }
+
+        return set;
+    }
+
+    private static void assertValues(VariableIntArray array, TreeSet<Integer> expected) {
+        Assert.assertTrue(array.isSorted());
+        Assert.assertEquals(array.size(), expected.size());
+        int index = 0;
+
+        for(int value : expected) {
+            Assert.assertEquals(array.getValue(index), value);
+            index++;
+        }
+    }
+
+    @Test
+    public void testIntersectUnionDifference() {
+        Random random = new Random(167);
+
+        for(int i = 0; i < 50; i++) {
+            // Lists of very different lengths and densities.
+            int[] firstValues = createValues(random, random.nextInt(20000), 2 + random.nextInt(20));
+            int[] secondValues = createValues(random, random.nextInt(i % 2 == 0 ? 200 : 20000),
+                                              2 + random.nextInt(2000));
+            VariableIntArray first = createArray(firstValues);
+            VariableIntArray second = createArray(secondValues);
+
+            TreeSet<Integer> intersection = toSet(firstValues);
+            intersection.retainAll(toSet(secondValues));
+            assertValues(SortedIntArrays.intersect(first, second), intersection);
+            assertValues(SortedIntArrays.intersect(second, first), intersection);
+
+            TreeSet<Integer> union = toSet(firstValues);
+            union.addAll(toSet(secondValues));
+            assertValues(SortedIntArrays.union(first, second), union);
+
+            TreeSet<Integer> difference = toSet(firstValues);
+            difference.removeAll(toSet(secondValues));
+            assertValues(SortedIntArrays.difference(first, second), difference);
+        }
+    }
+
+    @Test
+    public void testIntersectMany() {
+        Random random = new Random(173);
+
+        for(int i = 0; i < 20; i++) {
+            int arrayCount = 1 + random.nextInt(10);
+            VariableIntArray[] arrays = new VariableIntArray[arrayCount];
+            TreeSet<Integer> intersection = null;
+
+            for(int k = 0; k < arrayCount; k++) {
+                int[] values = createValues(random, 1000 + random.nextInt(50000), 2 + random.nextInt(4));
+                arrays[k] = createArray(values);
+
+                if(intersection == null) {
+                    intersection = toSet(values);
+                }
+                else intersection.retainAll(toSet(values));
+            }
+
+            assertValues(SortedIntArrays.intersect(arrays), intersection);
+        }
+    }
+
+    @Test
+    public void testLimits() {
+        // Extreme values, edited values and empty arrays.
+        int[] values = {Integer.MIN_VALUE, Integer.MIN_VALUE, -1, 0, 5, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        VariableIntArray first = createArray(values);
+        VariableIntArray second = createArray(Arrays.copyOf(values, values.length));
+        VariableIntArray empty = createArray(new int[0]);
+        assertValues(SortedIntArrays.intersect(first, second), toSet(values));
+        assertValues(SortedIntArrays.intersect(first, second, first), toSet(values));
+        assertValues(SortedIntArrays.union(first, empty), toSet(values));
+        assertValues(SortedIntArrays.intersect(first, empty), new TreeSet<Integer>());
+        assertValues(SortedIntArrays.difference(first, second), new TreeSet<Integer>());
+
+        second.setValue(4, 3);
+        TreeSet<Integer> difference = new TreeSet<Integer>();
+        difference.add(5);
+        assertValues(SortedIntArrays.difference(first, second), difference);
+
+        try {
+            SortedIntArrays.intersect(first, new VariableIntArray(values));
+            Assert.fail();
+        }
+        catch(UnsupportedOperationException e) {
+            // Expected, the array is not sorted.
+        }
+    }
+}
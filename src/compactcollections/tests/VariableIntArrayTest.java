@@ -30,12 +30,31 @@
 // (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 // OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE
 package compactcollections.tests;
+import compactcollections.IntCursor;
+import compactcollections.MappedVariableIntArray;
 import compactcollections.VariableIntArray;
+import compactcollections.VariableIntArrayReader;
+import compactcollections.VariableIntArrayWriter;
+import compactcollections.VariableIntEncoding;
 import org.junit.Assert;
 import org.junit.Test;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.StreamCorruptedException;
+import java.io.DataInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.function.IntConsumer;
 
 public class VariableIntArrayTest {
     @Test
@@ -127,4 +146,678 @@ public class VariableIntArrayTest {
             Assert.assertEquals(array.getValue(i), i + 1);
         }
     }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        Random random = new Random(103);
+        VariableIntArray array = new VariableIntArray();
+        int[] values = new int[100005];
+
+        for(int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(1000);
+            array.addValue(values[i]);
+        }
+
+        // Some of the edited values don't fit in their location
+        // and are written to the array before it is saved.
+        for(int i = 0; i < values.length; i += 100) {
+            values[i] = random.nextInt();
+            array.setValue(i, values[i]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        array.writeTo(output);
+        output.close();
+
+        VariableIntArray readArray = new VariableIntArray();
+        readArray.addValue(1);
+        readArray.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(readArray.size(), values.length);
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(readArray.getValue(i), values[i]);
+        }
+
+        readArray.addValue(7);
+        Assert.assertEquals(readArray.getValue(values.length), 7);
+
+        // A failed read leaves the array unchanged.
+        byte[] truncatedBytes = Arrays.copyOf(bytes.toByteArray(), 1000);
+        byte[] corruptedBytes = bytes.toByteArray();
+        corruptedBytes[4]++;
+
+        try {
+            readArray.readFrom(new DataInputStream(new ByteArrayInputStream(truncatedBytes)));
+            Assert.fail();
+        }
+        catch(EOFException e) {
+            // Expected.
+        }
+
+        try {
+            readArray.readFrom(new DataInputStream(new ByteArrayInputStream(corruptedBytes)));
+            Assert.fail();
+        }
+        catch(StreamCorruptedException e) {
+            // Expected.
+        }
+
+        Assert.assertEquals(readArray.size(), values.length + 1);
+        Assert.assertEquals(readArray.getValue(values.length), 7);
+        Assert.assertEquals(readArray.getValue(0), values[0]);
+    }
+    @Test
+    public void testWriteReadChannel() throws IOException {
+        Random random = new Random(107);
+        VariableIntArray array = new VariableIntArray();
+        int[] values = new int[100003];
+
+        for(int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(i % 3 == 0 ? Integer.MAX_VALUE : 100);
+            array.addValue(values[i]);
+        }
+
+        File file = File.createTempFile("compactcollections", ".array");
+        file.deleteOnExit();
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        array.writeTo(output.getChannel());
+        output.close();
+
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        FileChannel channel = input.getChannel();
+        VariableIntArray readArray = new VariableIntArray();
+        readArray.readFrom(channel);
+        Assert.assertEquals(channel.position(), channel.size());
+        input.close();
+
+        Assert.assertEquals(readArray.size(), values.length);
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(readArray.getValue(i), values[i]);
+        }
+
+        // The channel and the stream formats are the same.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream streamOutput = new DataOutputStream(bytes);
+        array.writeTo(streamOutput);
+        streamOutput.close();
+
+        ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+        array.writeTo(Channels.newChannel(channelBytes));
+        Assert.assertTrue(Arrays.equals(channelBytes.toByteArray(), bytes.toByteArray()));
+
+        // A failed read leaves the array unchanged.
+        VariableIntArray failedArray = new VariableIntArray();
+        failedArray.addValue(1);
+        byte[] corruptedBytes = bytes.toByteArray();
+        corruptedBytes[4]++;
+
+        try {
+            failedArray.readFrom(Channels.newChannel(new ByteArrayInputStream(corruptedBytes)));
+            Assert.fail();
+        }
+        catch(StreamCorruptedException e) {
+            // Expected.
+        }
+
+        try {
+            failedArray.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray(), 0, 1000)));
+            Assert.fail();
+        }
+        catch(EOFException e) {
+            // Expected.
+        }
+
+        Assert.assertEquals(failedArray.size(), 1);
+        Assert.assertEquals(failedArray.getValue(0), 1);
+    }
+    @Test
+    public void testMapped() throws IOException {
+        Random random = new Random(109);
+        VariableIntArray array = new VariableIntArray();
+        int[] values = new int[100005];
+
+        for(int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(i % 5 == 0 ? Integer.MAX_VALUE : 100) - 50;
+            array.addValue(values[i]);
+        }
+
+        File file = File.createTempFile("compactcollections", ".array");
+        file.deleteOnExit();
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        array.writeTo(output.getChannel());
+        output.close();
+
+        MappedVariableIntArray mappedArray = MappedVariableIntArray.open(file);
+        Assert.assertEquals(mappedArray.size(), values.length);
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(mappedArray.getValue(i), values[i]);
+        }
+
+        for(int i = 0; i < 100000; i++) {
+            int index = random.nextInt(values.length);
+            Assert.assertEquals(mappedArray.getValue(index), values[index]);
+        }
+
+        mappedArray.close();
+    }
+    private static int[] writeReadStream(int[] values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        VariableIntArrayWriter writer = new VariableIntArrayWriter(bytes);
+        writer.addValues(values);
+        Assert.assertEquals(writer.size(), (long)values.length);
+        writer.close();
+
+        VariableIntArrayReader reader = new VariableIntArrayReader(new ByteArrayInputStream(bytes.toByteArray()));
+        int[] readValues = new int[values.length];
+        int count = 0;
+
+        // Mix single values and bulk reads of different lengths.
+        while(count < values.length) {
+            if(count % 3 == 0) {
+                Assert.assertTrue(reader.advance());
+                readValues[count++] = reader.value();
+            }
+            else count += reader.read(readValues, count, Math.min(values.length - count, count % 100 + 1));
+        }
+
+        Assert.assertFalse(reader.advance());
+        Assert.assertEquals(reader.read(new int[1], 0, 1), -1);
+        reader.close();
+        return readValues;
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        Random random = new Random(113);
+
+        for(int length : new int[] { 0, 1, 63, 64, 65, 100003 }) {
+            int[] values = new int[length];
+
+            for(int i = 0; i < length; i++) {
+                values[i] = i % 7 == 0 ? random.nextInt() : random.nextInt(200) - 100;
+            }
+
+            Assert.assertTrue(Arrays.equals(writeReadStream(values), values));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testStreamTruncated() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        VariableIntArrayWriter writer = new VariableIntArrayWriter(bytes);
+
+        for(int i = 0; i < 1000; i++) {
+            writer.addValue(i * 1000);
+        }
+
+        writer.close();
+        byte[] truncatedBytes = Arrays.copyOf(bytes.toByteArray(), 500);
+        VariableIntArrayReader reader = new VariableIntArrayReader(new ByteArrayInputStream(truncatedBytes));
+
+        while(reader.advance()) {
+            // Fails when the end of the stream is reached.
+        }
+    }
+    @Test
+    public void testCursor() {
+        Random random = new Random(131);
+        final VariableIntArray array = new VariableIntArray();
+        final int[] values = new int[100005];
+
+        for(int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(i % 9 == 0 ? Integer.MAX_VALUE : 100);
+            array.addValue(values[i]);
+        }
+
+        for(int i = 0; i < values.length; i += 50) {
+            values[i] = random.nextInt();
+            array.setValue(i, values[i]);
+        }
+
+        IntCursor cursor = array.cursor();
+
+        for(int pass = 0; pass < 2; pass++) {
+            int index = 0;
+
+            while(cursor.advance()) {
+                Assert.assertEquals(cursor.value(), values[index]);
+                index++;
+            }
+
+            Assert.assertEquals(index, values.length);
+            Assert.assertFalse(cursor.advance());
+            cursor.reset();
+        }
+
+        Iterator<Integer> iterator = array.iterator();
+        int index = 0;
+
+        while(iterator.hasNext()) {
+            Assert.assertEquals((int)iterator.next(), values[index]);
+            index++;
+        }
+
+        Assert.assertEquals(index, values.length);
+        final int[] forEachIndex = new int[1];
+
+        array.forEachValue(new IntConsumer() {
+            @Override
+            public void accept(int value) {
+                Assert.assertEquals(value, values[forEachIndex[0]]);
+                forEachIndex[0]++;
+            }
+        });
+
+        Assert.assertEquals(forEachIndex[0], values.length);
+
+        // Iterable.forEach is still selected for lambdas.
+        array.forEach(value -> forEachIndex[0]--);
+        Assert.assertEquals(forEachIndex[0], 0);
+        Assert.assertFalse(new VariableIntArray().cursor().advance());
+    }
+    @Test
+    public void testRange() {
+        Random random = new Random(137);
+        VariableIntArray array = new VariableIntArray();
+        int[] values = new int[10005];
+
+        for(int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(100);
+        }
+
+        array.addValues(values, 0, 5000);
+        array.addValues(values, 5000, values.length - 5000);
+        Assert.assertEquals(array.size(), values.length);
+
+        for(int i = 0; i < 1000; i++) {
+            // Replace a random range (possibly extending the array),
+            // some of the new values don't fit in their locations.
+            int index = random.nextInt(values.length);
+            int length = random.nextInt(200);
+            int[] newValues = new int[length];
+
+            for(int k = 0; k < length; k++) {
+                newValues[k] = random.nextInt(10) == 0 ? random.nextInt() : random.nextInt(100);
+            }
+
+            array.setRange(index, newValues, 0, length);
+
+            if(index + length > values.length) {
+                values = Arrays.copyOf(values, index + length);
+            }
+
+            System.arraycopy(newValues, 0, values, index, length);
+            Assert.assertEquals(array.size(), values.length);
+
+            // Read a random range into the middle of a larger array.
+            int readIndex = random.nextInt(values.length);
+            int readLength = random.nextInt(values.length - readIndex + 1);
+            int[] readValues = new int[readLength + 10];
+            array.get(readIndex, readValues, 5, readLength);
+
+            for(int k = 0; k < readLength; k++) {
+                Assert.assertEquals(readValues[5 + k], values[readIndex + k]);
+            }
+        }
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(array.getValue(i), values[i]);
+        }
+    }
+
+    @Test
+    public void testFourWidths() throws IOException {
+        Random random = new Random(139);
+        VariableIntArray array = new VariableIntArray(VariableIntEncoding.ONE_TO_FOUR_BYTES);
+        VariableIntArray defaultArray = new VariableIntArray();
+        int[] values = new int[100005];
+
+        for(int i = 0; i < values.length; i++) {
+            // Mix deltas of every size, most of them needing 2 or 3 bytes.
+            int bound = i % 7 == 0 ? Integer.MAX_VALUE : (i % 3 == 0 ? 100 : 1 << 20);
+            values[i] = random.nextInt(bound) - (bound / 2);
+            array.addValue(values[i]);
+            defaultArray.addValue(values[i]);
+        }
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(array.getValue(i), values[i]);
+        }
+
+        // Some of the new values require more bytes than the old ones.
+        for(int i = 0; i < values.length; i += 11) {
+            values[i] = random.nextInt(1 << (8 * (random.nextInt(4) + 1) - 2));
+            array.setValue(i, values[i]);
+        }
+
+        int[] readValues = new int[values.length];
+        array.get(0, readValues, 0, values.length);
+        Assert.assertTrue(Arrays.equals(readValues, values));
+
+        for(int i = 0; i < 100000; i++) {
+            int index = random.nextInt(values.length);
+            Assert.assertEquals(array.getValue(index), values[index]);
+        }
+
+        IntCursor cursor = array.cursor();
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertTrue(cursor.advance());
+            Assert.assertEquals(cursor.value(), values[i]);
+        }
+
+        Assert.assertFalse(cursor.advance());
+
+        // The encoding is saved with the array and smaller than the default one.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        array.writeTo(new DataOutputStream(bytes));
+        ByteArrayOutputStream defaultBytes = new ByteArrayOutputStream();
+        defaultArray.writeTo(new DataOutputStream(defaultBytes));
+        Assert.assertTrue(bytes.size() < defaultBytes.size());
+
+        VariableIntArray readArray = new VariableIntArray();
+        readArray.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(readArray.getEncoding(), VariableIntEncoding.ONE_TO_FOUR_BYTES);
+        Assert.assertEquals(readArray.size(), values.length);
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(readArray.getValue(i), values[i]);
+        }
+
+        File file = File.createTempFile("compactcollections", ".array");
+        file.deleteOnExit();
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        array.writeTo(output.getChannel());
+        output.close();
+
+        MappedVariableIntArray mappedArray = MappedVariableIntArray.open(file);
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(mappedArray.getValue(i), values[i]);
+        }
+
+        mappedArray.close();
+    }
+
+    private static int findBound(int[] values, int value, boolean upper) {
+        // The index of the first value larger than (or equal to) value.
+        int index = 0;
+
+        while((index < values.length) && (upper ? values[index] <= value : values[index] < value)) {
+            index++;
+        }
+
+        return index;
+    }
+
+    @Test
+    public void testSorted() throws IOException {
+        Random random = new Random(163);
+        int[] values = new int[100005];
+        int value = -1000000;
+
+        for(int i = 0; i < values.length; i++) {
+            // Mostly small gaps, with some duplicates and some large gaps.
+            value += random.nextInt(10) == 0 ? random.nextInt(100000) : random.nextInt(5);
+            values[i] = value;
+        }
+
+        VariableIntArray array = new VariableIntArray(values, VariableIntEncoding.ONE_OR_FOUR_BYTES, true);
+        Assert.assertTrue(array.isSorted());
+        Assert.assertEquals(array.size(), values.length);
+
+        for(int i = 0; i < 100000; i++) {
+            int index = random.nextInt(values.length);
+            Assert.assertEquals(array.getValue(index), values[index]);
+        }
+
+        int[] readValues = new int[values.length];
+        array.get(0, readValues, 0, values.length);
+        Assert.assertTrue(Arrays.equals(readValues, values));
+
+        for(int i = 0; i < 1000; i++) {
+            int readIndex = random.nextInt(values.length);
+            int readLength = random.nextInt(Math.min(500, values.length - readIndex + 1));
+            int[] rangeValues = new int[readLength];
+            array.get(readIndex, rangeValues, 0, readLength);
+            Assert.assertTrue(Arrays.equals(rangeValues, Arrays.copyOfRange(values, readIndex, readIndex + readLength)));
+        }
+
+        IntCursor cursor = array.cursor();
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertTrue(cursor.advance());
+            Assert.assertEquals(cursor.value(), values[i]);
+        }
+
+        for(int i = 0; i < 2000; i++) {
+            int searchValue = values[0] - 10 + random.nextInt(values[values.length - 1] - values[0] + 20);
+            int lowerBound = findBound(values, searchValue, false);
+            int upperBound = findBound(values, searchValue, true);
+
+            Assert.assertEquals(array.lowerBound(searchValue), lowerBound);
+            Assert.assertEquals(array.upperBound(searchValue), upperBound);
+            Assert.assertEquals(array.containsValue(searchValue), Arrays.binarySearch(values, searchValue) >= 0);
+
+            if(array.containsValue(searchValue)) {
+                Assert.assertEquals(array.getValue(array.indexOfValue(searchValue)), searchValue);
+                Assert.assertEquals(array.indexOfValue(searchValue), lowerBound);
+            }
+            else Assert.assertEquals(array.indexOfValue(searchValue), -1);
+        }
+
+        // Sorted ID sets are much smaller than an int array.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        array.writeTo(new DataOutputStream(bytes));
+        Assert.assertTrue(bytes.size() < values.length * 2);
+
+        // Values can be modified and added only if they remain sorted.
+        try {
+            array.addValue(values[values.length - 1] - 1);
+            Assert.fail();
+        }
+        catch(IllegalArgumentException e) {
+            // Expected.
+        }
+
+        try {
+            array.setValue(1000, values[1001] + 1);
+            Assert.fail();
+        }
+        catch(IllegalArgumentException e) {
+            // Expected.
+        }
+
+        for(int i = 1; i < values.length - 1; i += 7) {
+            values[i] = values[i - 1] + (values[i + 1] - values[i - 1]) / 2;
+            array.setValue(i, values[i]);
+        }
+
+        int[] rangeValues = {values[199], values[199], values[199]};
+        array.setRange(200, rangeValues, 0, rangeValues.length);
+        System.arraycopy(rangeValues, 0, values, 200, rangeValues.length);
+        Assert.assertEquals(array.lowerBound(values[199]), array.indexOfValue(values[199]));
+
+        VariableIntArray readArray = new VariableIntArray();
+        ByteArrayOutputStream editedBytes = new ByteArrayOutputStream();
+        array.writeTo(new DataOutputStream(editedBytes));
+        readArray.readFrom(new DataInputStream(new ByteArrayInputStream(editedBytes.toByteArray())));
+        Assert.assertTrue(readArray.isSorted());
+
+        for(int i = 0; i < 20; i++) {
+            value += random.nextInt(1000);
+            values = Arrays.copyOf(values, values.length + 1);
+            values[values.length - 1] = value;
+            array.addValue(value);
+            readArray.addValue(value);
+        }
+
+        for(int i = 0; i < values.length; i++) {
+            Assert.assertEquals(array.getValue(i), values[i]);
+            Assert.assertEquals(readArray.getValue(i), values[i]);
+        }
+    }
+
+    @Test
+    public void testWideningSet() {
+        // Most edited values don't fit in their location, the sections
+        // containing them are encoded again when the edits are written.
+        Random random = new Random(179);
+
+        for(VariableIntEncoding encoding : VariableIntEncoding.values()) {
+            int[] values = new int[200003];
+            VariableIntArray array = new VariableIntArray(encoding);
+
+            for(int i = 0; i < values.length; i++) {
+                values[i] = random.nextInt(100);
+                array.addValue(values[i]);
+            }
+
+            for(int i = 0; i < 50000; i++) {
+                int index = random.nextInt(values.length);
+                int value = random.nextInt(4) == 0 ? random.nextInt(100) : random.nextInt();
+                values[index] = value;
+                array.setValue(index, value);
+
+                if(i % 10000 == 0) {
+                    Assert.assertEquals(array.getValue(index), value);
+                }
+            }
+
+            // Edits in the first and the last section.
+            values[0] = Integer.MIN_VALUE;
+            array.setValue(0, Integer.MIN_VALUE);
+            values[values.length - 5] = Integer.MAX_VALUE;
+            array.setValue(values.length - 5, Integer.MAX_VALUE);
+
+            int[] readValues = new int[values.length];
+            array.get(0, readValues, 0, values.length);
+            Assert.assertTrue(Arrays.equals(readValues, values));
+
+            for(int i = 0; i < 10000; i++) {
+                int index = random.nextInt(values.length);
+                Assert.assertEquals(array.getValue(index), values[index]);
+            }
+        }
+    }
+
+    @Test
+    public void testInsertRemove() {
+        Random random = new Random(181);
+
+        for(VariableIntEncoding encoding : VariableIntEncoding.values()) {
+            List<Integer> values = new ArrayList<Integer>();
+            VariableIntArray array = new VariableIntArray(encoding);
+
+            for(int i = 0; i < 3000; i++) {
+                int index = random.nextInt(values.size() + 1);
+                int value = random.nextInt(3) == 0 ? random.nextInt() : random.nextInt(100);
+                array.insertValue(index, value);
+                values.add(index, value);
+
+                if(i % 3 == 0) {
+                    index = random.nextInt(values.size());
+                    Assert.assertEquals(array.removeValue(index), (int)values.remove(index));
+                }
+
+                if((i % 100 == 0) && (values.size() > 0)) {
+                    index = random.nextInt(values.size());
+                    array.setValue(index, i);
+                    values.set(index, i);
+                }
+            }
+
+            Assert.assertEquals(array.size(), values.size());
+            Assert.assertEquals(array, values);
+
+            array.add(0, 5);
+            values.add(0, 5);
+            Assert.assertEquals((int)array.remove(array.size() - 1), (int)values.remove(values.size() - 1));
+            Assert.assertEquals(array, values);
+        }
+
+        // The sections after the index are encoded again one at a time,
+        // the values move between sections and the incomplete group.
+        for(VariableIntEncoding encoding : VariableIntEncoding.values()) {
+            int[] values = new int[50000];
+
+            for(int i = 0; i < values.length; i++) {
+                values[i] = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(100);
+            }
+
+            VariableIntArray array = new VariableIntArray(values, encoding);
+
+            for(int i = 0; i < 200; i++) {
+                int index = random.nextInt(values.length);
+
+                // The first value of a section is modified in place,
+                // the section start value remains the old one.
+                int sectionStart = index - (index % 64);
+                values[sectionStart] = random.nextInt(100);
+                array.setValue(sectionStart, values[sectionStart]);
+
+                if(i % 2 == 0) {
+                    int value = random.nextInt();
+                    array.insertValue(index, value);
+                    values = Arrays.copyOf(values, values.length + 1);
+                    System.arraycopy(values, index, values, index + 1, values.length - index - 1);
+                    values[index] = value;
+                }
+                else {
+                    Assert.assertEquals(array.removeValue(index), values[index]);
+                    System.arraycopy(values, index + 1, values, index, values.length - index - 1);
+                    values = Arrays.copyOf(values, values.length - 1);
+                }
+
+                if(i % 20 == 0) {
+                    int[] readValues = new int[values.length];
+                    array.get(0, readValues, 0, values.length);
+                    Assert.assertTrue(Arrays.equals(readValues, values));
+                }
+            }
+
+            for(int i = 0; i < values.length; i++) {
+                Assert.assertEquals(array.getValue(i), values[i]);
+            }
+        }
+
+        // The last value of a section is taken from the next one
+        // after a value is removed, not from its start value.
+        VariableIntArray editedArray = new VariableIntArray();
+
+        for(int i = 0; i < 200; i++) {
+            editedArray.addValue(5);
+        }
+
+        editedArray.setValue(64, 10);
+        editedArray.removeValue(0);
+        Assert.assertEquals(editedArray.getValue(63), 10);
+        Assert.assertEquals(editedArray.getValue(64), 5);
+
+        // Sorted arrays accept only values between their neighbors.
+        VariableIntArray array = new VariableIntArray(new int[] {1, 3, 5, 7}, VariableIntEncoding.ONE_OR_FOUR_BYTES, true);
+        array.insertValue(2, 4);
+        Assert.assertEquals(array.removeValue(0), 1);
+        Assert.assertEquals(array, Arrays.asList(3, 4, 5, 7));
+
+        try {
+            array.insertValue(1, 6);
+            Assert.fail();
+        }
+        catch(IllegalArgumentException e) {
+            // Expected.
+        }
+
+        for(int i = 0; i < 1000; i++) {
+            array.insertValue(array.size() - 1, 7);
+        }
+
+        array.removeValue(500);
+        Assert.assertEquals(array.size(), 1003);
+        Assert.assertEquals(array.lowerBound(7), 3);
+        Assert.assertEquals(array.indexOfValue(4), 1);
+    }
 }